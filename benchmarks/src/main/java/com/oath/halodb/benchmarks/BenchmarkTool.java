@@ -35,6 +35,9 @@ public class BenchmarkTool {
 
     private static final int recordSize = 1024;
 
+    private static final int[] concurrentWriterThreads = {1, 2, 4, 8, 16, 32};
+    private static final int numberOfWritesPerRun = 10_000_000;
+
     private static final int seed = 100;
     private static final Random random = new Random(seed);
 
@@ -69,7 +72,8 @@ public class BenchmarkTool {
             case FILL_RANDOM: createDB(db, false);break;
             case READ_RANDOM: readRandom(db, numberOfReadThreads);break;
             case RANDOM_UPDATE: update(db);break;
-            case READ_AND_UPDATE: updateWithReads(db);
+            case READ_AND_UPDATE: updateWithReads(db);break;
+            case CONCURRENT_FILL_RANDOM: concurrentFill(db);
         }
 
         db.close();
@@ -124,6 +128,51 @@ public class BenchmarkTool {
         System.out.println("Size of database " + db.size());
     }
 
+    /**
+     * Writes the same number of records with an increasing number of writer threads
+     * to show how put throughput scales with concurrent writers.
+     */
+    private static void concurrentFill(StorageEngine db) throws InterruptedException {
+        for (int noOfThreads : concurrentWriterThreads) {
+            int writesPerThread = numberOfWritesPerRun / noOfThreads;
+            Thread[] writers = new Thread[noOfThreads];
+            Histogram[] histograms = new Histogram[noOfThreads];
+
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < noOfThreads; i++) {
+                final Random rand = new Random(seed + i);
+                final RandomDataGenerator generator = new RandomDataGenerator(seed + i);
+                final Histogram histogram = new Histogram(TimeUnit.SECONDS.toNanos(10), 3);
+                histograms[i] = histogram;
+                writers[i] = new Thread(() -> {
+                    for (int j = 0; j < writesPerThread; j++) {
+                        byte[] key = longToBytes(rand.nextInt(numberOfRecords));
+                        byte[] value = generator.getData(recordSize);
+                        long s = System.nanoTime();
+                        db.put(key, value);
+                        histogram.recordValue(System.nanoTime() - s);
+                    }
+                });
+                writers[i].start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            long time = Math.max(1, System.currentTimeMillis() - start);
+
+            Histogram latencyHistogram = new Histogram(TimeUnit.SECONDS.toNanos(10), 3);
+            for (Histogram histogram : histograms) {
+                latencyHistogram.add(histogram);
+            }
+
+            long writes = (long)writesPerThread * noOfThreads;
+            System.out.printf("%sThreads: %d, writes: %d, time: %d ms, writes per second: %d, write rate: %d MB/sec, 99th percentile latency: %d ns\n",
+                              printDate(), noOfThreads, writes, time, writes * 1000 / time,
+                              writes * recordSize * 1000 / time / 1024 / 1024, latencyHistogram.getValueAtPercentile(99.0));
+        }
+        System.out.println("Size of database " + db.size());
+    }
+
     private static void readRandom(StorageEngine db, int threads) {
         Read[] reads = new Read[numberOfReadThreads];
 
@@ -11,6 +11,7 @@ public enum Benchmarks {
     FILL_RANDOM,
     READ_RANDOM,
     RANDOM_UPDATE,
-    READ_AND_UPDATE;
+    READ_AND_UPDATE,
+    CONCURRENT_FILL_RANDOM;
 
 }
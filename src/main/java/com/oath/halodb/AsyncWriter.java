@@ -0,0 +1,212 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Applies puts and deletes submitted by {@link HaloDB#putAsync(byte[], byte[])} and
+ * {@link HaloDB#deleteAsync(byte[])}.
+ *
+ * Requests are queued on a lock-free ring buffer which is drained by a single writer thread.
+ * The writer thread applies everything it finds in the queue as one batch, i.e. with a single write
+ * to each file and, depending on the configured {@link Durability}, a single flush, and then completes
+ * the futures of all requests in the batch.
+ *
+ * A batch is closed once it holds {@link HaloDBOptions#getAsyncWriteBatchSizeBytes()} bytes of records. If the
+ * queue runs dry before that the writer waits up to {@link HaloDBOptions#getAsyncWriteLingerMicros()} for more
+ * requests, so that a burst of small writes is appended to the data file with a single write call.
+ */
+class AsyncWriter {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncWriter.class);
+
+    private static final long idleWaitNanos = 1_000_000;
+    private static final long queueFullWaitNanos = 10_000;
+
+    private final HaloDBInternal dbInternal;
+    private final Durability durability;
+    private final int batchSizeBytes;
+    private final long lingerNanos;
+    private final MpscRingBuffer<PendingWrite> queue;
+
+    private final WriterThread writerThread;
+
+    private volatile boolean isRunning = true;
+    private volatile boolean isWriterWaiting = false;
+
+    // producers which have checked isRunning but haven't yet queued their request.
+    private final AtomicInteger activeSubmitters = new AtomicInteger(0);
+
+    AsyncWriter(HaloDBInternal dbInternal, HaloDBOptions options) {
+        this.dbInternal = dbInternal;
+        this.durability = options.getAsyncWriteDurability();
+        this.batchSizeBytes = options.getAsyncWriteBatchSizeBytes();
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(options.getAsyncWriteLingerMicros());
+        this.queue = new MpscRingBuffer<>(options.getAsyncWriteQueueSize());
+        this.writerThread = new WriterThread();
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues a put, or a delete if value is null. Blocks while the queue is full.
+     */
+    CompletableFuture<Void> submit(byte[] key, byte[] value) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        PendingWrite write = new PendingWrite(key, value, future);
+
+        activeSubmitters.incrementAndGet();
+        try {
+            if (!isRunning) {
+                future.completeExceptionally(new HaloDBException("DB is closed"));
+                return future;
+            }
+
+            while (!queue.offer(write)) {
+                // queue is full, wait for the writer thread to catch up.
+                wakeUpWriter();
+                LockSupport.parkNanos(queueFullWaitNanos);
+            }
+        } finally {
+            activeSubmitters.decrementAndGet();
+        }
+
+        if (isWriterWaiting) {
+            wakeUpWriter();
+        }
+        return future;
+    }
+
+    /**
+     * Stops accepting new requests and waits until all queued requests have been applied.
+     */
+    void close() {
+        isRunning = false;
+        wakeUpWriter();
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while waiting for the async writer thread to stop", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void wakeUpWriter() {
+        LockSupport.unpark(writerThread);
+    }
+
+    private class WriterThread extends Thread {
+
+        WriterThread() {
+            super("AsyncWriterThread");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            logger.info("Starting async writer thread ...");
+            List<PendingWrite> writes = new ArrayList<>();
+            int batchBytes = 0;
+            long lingerDeadline = 0;
+            boolean isLingering = false;
+            while (true) {
+                PendingWrite write;
+                while (batchBytes < batchSizeBytes && (write = queue.poll()) != null) {
+                    writes.add(write);
+                    batchBytes += write.size();
+                }
+
+                if (!writes.isEmpty()) {
+                    if (batchBytes < batchSizeBytes && lingerNanos > 0 && isRunning) {
+                        if (!isLingering) {
+                            lingerDeadline = System.nanoTime() + lingerNanos;
+                            isLingering = true;
+                        }
+                        long remaining = lingerDeadline - System.nanoTime();
+                        if (remaining > 0) {
+                            LockSupport.parkNanos(this, Math.min(remaining, idleWaitNanos));
+                            continue;
+                        }
+                    }
+
+                    apply(writes);
+                    writes.clear();
+                    batchBytes = 0;
+                    isLingering = false;
+                    continue;
+                }
+
+                if (!isRunning && activeSubmitters.get() == 0 && queue.isEmpty()) {
+                    break;
+                }
+
+                isWriterWaiting = true;
+                if (queue.isEmpty()) {
+                    LockSupport.parkNanos(this, idleWaitNanos);
+                }
+                isWriterWaiting = false;
+            }
+            logger.info("Async writer thread stopped.");
+        }
+
+        private void apply(List<PendingWrite> pendingWrites) {
+            WriteBatch batch = new WriteBatch();
+            List<PendingWrite> writes = new ArrayList<>(pendingWrites.size());
+            for (PendingWrite write : pendingWrites) {
+                if (write.key.length > Byte.MAX_VALUE) {
+                    // the batch would be rejected as a whole, failing the writes of other callers.
+                    write.future.completeExceptionally(new HaloDBException("key length cannot exceed " + Byte.MAX_VALUE));
+                    continue;
+                }
+
+                writes.add(write);
+                if (write.value != null) {
+                    batch.put(write.key, write.value);
+                }
+                else {
+                    batch.delete(write.key);
+                }
+            }
+
+            try {
+                dbInternal.write(batch, durability);
+            } catch (Throwable t) {
+                logger.error("Error while applying a batch of " + writes.size() + " async writes", t);
+                HaloDBException e = t instanceof HaloDBException ? (HaloDBException)t : new HaloDBException("Async write failed.", t);
+                writes.forEach(w -> w.future.completeExceptionally(e));
+                return;
+            }
+
+            writes.forEach(w -> w.future.complete(null));
+        }
+    }
+
+    private static class PendingWrite {
+        final byte[] key;
+
+        // null for deletes.
+        final byte[] value;
+
+        final CompletableFuture<Void> future;
+
+        PendingWrite(byte[] key, byte[] value, CompletableFuture<Void> future) {
+            this.key = key;
+            this.value = value;
+            this.future = future;
+        }
+
+        int size() {
+            return value != null ? Utils.getRecordSize(key.length, value.length) : TombstoneEntry.TOMBSTONE_ENTRY_HEADER_SIZE + key.length;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Takes fsyncs off the write path. A background thread fsyncs the files written to every
+ * backgroundSyncIntervalMillis, or earlier once flushDataSizeBytes have been written, and publishes
+ * the sequence number up to which all writes are durable. Writes are therefore lost in a crash
+ * only if they completed within roughly one interval before it.
+ *
+ * Without a background thread, callers waiting for their writes to become durable sync the files themselves.
+ */
+class BackgroundSyncer {
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundSyncer.class);
+
+    private final HaloDBInternal dbInternal;
+    private final long intervalNanos;
+    private final long syncDataSizeBytes;
+
+    private final AtomicLong unSyncedData = new AtomicLong(0);
+
+    // all writes with a sequence number up to this one are durable.
+    private volatile long durableSequenceNumber = 0;
+
+    // serializes sync rounds of the background thread and of callers syncing themselves.
+    private final Object syncLock = new Object();
+
+    private final Thread syncerThread;
+    private volatile boolean isRunning = false;
+
+    BackgroundSyncer(HaloDBInternal dbInternal, HaloDBOptions options) {
+        this.dbInternal = dbInternal;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(options.getBackgroundSyncIntervalMillis());
+        this.syncDataSizeBytes = options.getFlushDataSizeBytes();
+        if (options.isBackgroundSyncEnabled()) {
+            syncerThread = new Thread(this::run, "BackgroundSyncerThread");
+            syncerThread.setDaemon(true);
+        } else {
+            syncerThread = null;
+        }
+    }
+
+    void start() {
+        if (syncerThread != null) {
+            isRunning = true;
+            syncerThread.start();
+        }
+    }
+
+    /**
+     * Syncs writes completed before this call and stops the background thread.
+     */
+    void close() throws IOException {
+        if (syncerThread == null || !isRunning) {
+            return;
+        }
+
+        isRunning = false;
+        LockSupport.unpark(syncerThread);
+        try {
+            syncerThread.join();
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while waiting for the background syncer thread to stop", e);
+            Thread.currentThread().interrupt();
+        }
+        sync();
+    }
+
+    /**
+     * To be called after data has been written, wakes up the background thread once enough
+     * data has been written since the last sync.
+     */
+    void dataWritten(long bytes) {
+        if (syncerThread != null && syncDataSizeBytes != -1 && unSyncedData.addAndGet(bytes) > syncDataSizeBytes) {
+            LockSupport.unpark(syncerThread);
+        }
+    }
+
+    long getDurableSequenceNumber() {
+        return durableSequenceNumber;
+    }
+
+    /**
+     * Returns once all writes with a sequence number up to the given one are durable. Waits for the
+     * background thread, which is woken up right away, or syncs on the calling thread if there is none.
+     */
+    void awaitDurable(long sequenceNumber) throws IOException, InterruptedException {
+        if (durableSequenceNumber >= sequenceNumber) {
+            return;
+        }
+
+        if (syncerThread == null) {
+            sync();
+            return;
+        }
+
+        synchronized (this) {
+            // once stopped all writes have been synced by close().
+            while (durableSequenceNumber < sequenceNumber && isRunning) {
+                LockSupport.unpark(syncerThread);
+                wait(TimeUnit.NANOSECONDS.toMillis(intervalNanos) + 1);
+            }
+        }
+
+        if (durableSequenceNumber < sequenceNumber) {
+            // the background thread failed.
+            sync();
+        }
+    }
+
+    private void run() {
+        while (isRunning) {
+            LockSupport.parkNanos(this, intervalNanos);
+            if (!isRunning) {
+                break;
+            }
+            try {
+                sync();
+            } catch (IOException e) {
+                logger.error("Error while syncing files in the background, will retry.", e);
+            } catch (Throwable t) {
+                logger.error("Background syncer thread stopped with an error", t);
+                isRunning = false;
+            }
+        }
+
+        // release waiters, close() syncs once more.
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private void sync() throws IOException {
+        synchronized (syncLock) {
+            unSyncedData.set(0);
+            long sequenceNumber = dbInternal.syncFiles();
+            if (sequenceNumber > durableSequenceNumber) {
+                durableSequenceNumber = sequenceNumber;
+            }
+        }
+
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+}
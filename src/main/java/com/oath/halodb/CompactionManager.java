@@ -225,6 +225,10 @@ class CompactionManager {
                 return;
             }
 
+            // writers which reserved space before the file was sealed might not have published their records yet.
+            fileToCompact.awaitPendingWrites();
+            fileToCompact.advise(FileAdvisor.Advice.SEQUENTIAL);
+
             FileChannel readFrom =  fileToCompact.getChannel();
             IndexFile.IndexFileIterator iterator = fileToCompact.getIndexFile().newIterator();
             long recordsCopied = 0, recordsScanned = 0;
@@ -269,7 +273,8 @@ class CompactionManager {
                     int valueOffset = Utils.getValueOffset(currentWriteFileOffset, key);
                     InMemoryIndexMetaData newMetaData = new InMemoryIndexMetaData(
                         currentWriteFile.getFileId(), valueOffset,
-                        currentRecordMetaData.getValueSize(), indexFileEntry.getSequenceNumber()
+                        currentRecordMetaData.getValueSize(), indexFileEntry.getSequenceNumber(),
+                        currentRecordMetaData.getInlineValue()
                     );
 
                     boolean updated = dbInternal.getInMemoryIndex().replace(key, currentRecordMetaData, newMetaData);
@@ -288,14 +293,19 @@ class CompactionManager {
 
             if (recordsCopied > 0) {
                 // After compaction we will delete the stale file.
-                // To prevent data loss in the event of a crash we need to ensure that copied data has hit the disk.
+                // To prevent data loss in the event of a crash we need to ensure that copied data,
+                // and the buffered index entries pointing to it, have hit the disk.
                 currentWriteFile.flushToDisk();
+                currentWriteFile.getIndexFile().flushToDisk();
             }
 
             numberOfRecordsCopied += recordsCopied;
             numberOfRecordsScanned += recordsScanned;
             sizeOfFilesDeleted += fileToCompact.getSize();
 
+            // the file is deleted next, but pinned readers keep its pages cached until they release it.
+            fileToCompact.advise(FileAdvisor.Advice.DONTNEED);
+
             logger.debug("Scanned {} records in file {} and copied {} records to {}.datac", recordsScanned, idOfFileToCompact, recordsCopied, getCurrentWriteFileId());
         }
 
@@ -317,6 +327,10 @@ class CompactionManager {
         if (currentWriteFile != null) {
             currentWriteFile.flushToDisk();
             currentWriteFile.getIndexFile().flushToDisk();
+            // no more records will be copied to the file.
+            currentWriteFile.mapForReading();
+            // copied records are cached because they were written, not because they are read.
+            currentWriteFile.advise(FileAdvisor.Advice.DONTNEED);
         }
         currentWriteFile = dbInternal.createHaloDBFile(HaloDBFile.FileType.COMPACTED_FILE);
         dbInternal.getDbDirectory().syncMetaData();
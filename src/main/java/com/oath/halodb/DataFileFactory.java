@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Takes file system work off the write path when the current write file is rolled over.
+ *
+ * A background thread keeps the next data file, together with its index file, already created and
+ * its directory entry synced, so that rolling over only swaps the current write file. The pre-created
+ * files have names which aren't those of data and index files, and are renamed when taken into use. The
+ * same thread flushes sealed files to disk once the writes pending on them complete.
+ *
+ * Not thread safe, callers must hold the rollOverLock.
+ */
+class DataFileFactory {
+    private static final Logger logger = LoggerFactory.getLogger(DataFileFactory.class);
+
+    private final DBDirectory dbDirectory;
+    private final HaloDBOptions options;
+    private final IntSupplier fileIds;
+
+    private final ExecutorService executor;
+
+    private Future<HaloDBFile> nextFile;
+
+    private static final Pattern NEXT_FILE_NAME =
+        Pattern.compile("([0-9]+)(" + Pattern.quote(HaloDBFile.DATA_FILE_NAME) + "|" + Pattern.quote(IndexFile.INDEX_FILE_NAME) + ")");
+
+    DataFileFactory(DBDirectory dbDirectory, HaloDBOptions options, IntSupplier fileIds) {
+        this.dbDirectory = dbDirectory;
+        this.options = options;
+        this.fileIds = fileIds;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DataFileFactoryThread");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the pre-created data file, or creates one if it isn't available, and starts
+     * creating the file which will be returned by the next call.
+     */
+    HaloDBFile next() throws IOException {
+        HaloDBFile file = null;
+        if (nextFile != null) {
+            try {
+                file = nextFile.get();
+            } catch (ExecutionException e) {
+                logger.warn("Pre-creating data file failed, creating it on the write path.", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the next data file", e);
+            }
+            nextFile = null;
+        }
+
+        if (file == null) {
+            file = HaloDBFile.create(dbDirectory, fileIds.getAsInt(), options, HaloDBFile.FileType.DATA_FILE);
+            dbDirectory.syncMetaData();
+        } else {
+            file.takeIntoUse();
+        }
+        nextFile = executor.submit(this::createNext);
+        return file;
+    }
+
+    /**
+     * Seals the file, it will be flushed to disk by the background thread once pending writes complete.
+     */
+    void seal(HaloDBFile file) throws IOException {
+        file.seal(executor);
+    }
+
+    /**
+     * Waits for pending flushes of sealed files and deletes the pre-created file if it was never used.
+     */
+    void close() throws IOException {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+                logger.error("Data file factory thread did not stop");
+            }
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while waiting for the data file factory thread to stop", e);
+            Thread.currentThread().interrupt();
+        }
+
+        if (nextFile != null) {
+            try {
+                HaloDBFile unused = nextFile.get();
+                logger.debug("Deleting unused data file {}", unused.getName());
+                unused.delete();
+            } catch (ExecutionException | InterruptedException e) {
+                // file wasn't created.
+            }
+            nextFile = null;
+        }
+    }
+
+    private HaloDBFile createNext() throws IOException {
+        HaloDBFile file = HaloDBFile.createNext(dbDirectory, fileIds.getAsInt(), options);
+        dbDirectory.syncMetaData();
+        return file;
+    }
+
+    /**
+     * Cleans up pre-created files left behind by a crash, must be called before data files are opened.
+     * The rename of a file taken into use might not have been synced, so a file is renamed if it holds
+     * data or if its data file was renamed already. Files which were never used are deleted.
+     */
+    static void recoverNextFiles(DBDirectory dbDirectory) throws IOException {
+        File[] files = dbDirectory.getPath().toFile().listFiles(f -> f.getName().endsWith(HaloDBFile.NEXT_FILE_SUFFIX));
+        if (files == null) {
+            return;
+        }
+
+        for (File next : files) {
+            String name = next.getName().substring(0, next.getName().length() - HaloDBFile.NEXT_FILE_SUFFIX.length());
+            Matcher matcher = NEXT_FILE_NAME.matcher(name);
+            if (!matcher.matches()) {
+                continue;
+            }
+            Path dataFile = dbDirectory.getPath().resolve(matcher.group(1) + HaloDBFile.DATA_FILE_NAME);
+            Path nextDataFile = dbDirectory.getPath().resolve(dataFile.getFileName() + HaloDBFile.NEXT_FILE_SUFFIX);
+            boolean used = Files.exists(dataFile) || (Files.exists(nextDataFile) && Files.size(nextDataFile) > 0);
+            if (used) {
+                logger.info("Renaming data file {} which was taken into use", next.getName());
+                Files.move(next.toPath(), dbDirectory.getPath().resolve(name), StandardCopyOption.ATOMIC_MOVE);
+            }
+            else {
+                logger.info("Deleting unused data file {}", next.getName());
+                Files.deleteIfExists(next.toPath());
+            }
+        }
+        dbDirectory.syncMetaData();
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+/**
+ * How far a write must have progressed before it is acknowledged.
+ */
+public enum Durability {
+
+    /**
+     * Data has been written to the file, i.e. it is in the OS page cache
+     * and will survive a process crash but not an OS crash or power failure.
+     */
+    WRITTEN,
+
+    /**
+     * File data has been forced to the storage device but file metadata, such as
+     * the last modification time, might not have been updated (fdatasync).
+     */
+    FLUSHED,
+
+    /**
+     * Both file data and metadata have been forced to the storage device (fsync).
+     */
+    FSYNCED
+}
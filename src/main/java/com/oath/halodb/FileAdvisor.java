@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileDescriptor;
+import java.lang.reflect.Field;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Tells the kernel how files are going to be accessed with posix_fadvise(2) and madvise(2), so
+ * that scans by compaction and iterators don't evict the pages read by gets from the page cache.
+ *
+ * Advice is only given on Linux. If libc or the file descriptor of a channel can't be accessed
+ * the methods do nothing and return false.
+ */
+final class FileAdvisor {
+    private static final Logger logger = LoggerFactory.getLogger(FileAdvisor.class);
+
+    // same values for posix_fadvise and madvise on Linux.
+    enum Advice {
+        NORMAL(0), RANDOM(1), SEQUENTIAL(2), WILLNEED(3), DONTNEED(4);
+
+        private final int value;
+
+        Advice(int value) {
+            this.value = value;
+        }
+    }
+
+    private static final boolean available;
+    private static final Field descriptorField;
+
+    static {
+        boolean registered = false;
+        Field field = null;
+        if (Platform.isLinux()) {
+            try {
+                Native.register(Platform.C_LIBRARY_NAME);
+                field = FileDescriptor.class.getDeclaredField("fd");
+                field.setAccessible(true);
+                registered = true;
+            } catch (Throwable t) {
+                logger.warn("Unable to access libc, file access advice is disabled", t);
+            }
+        }
+        available = registered;
+        descriptorField = field;
+    }
+
+    private static native int posix_fadvise(int fd, long offset, long length, int advice);
+
+    private static native int madvise(Pointer address, long length, int advice);
+
+    private FileAdvisor() {
+    }
+
+    static boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Advises on the region of length bytes from offset of the file, a length of 0 means up to the end
+     * of the file. The channel must be kept open for the duration of the call.
+     */
+    static boolean advise(FileChannel channel, long offset, long length, Advice advice) {
+        if (!available) {
+            return false;
+        }
+
+        int fd = getFileDescriptor(channel);
+        if (fd < 0) {
+            return false;
+        }
+        // posix_fadvise returns the error number instead of setting errno.
+        int error = posix_fadvise(fd, offset, length, advice.value);
+        if (error != 0) {
+            logger.debug("posix_fadvise {} failed with error {}", advice, error);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Advises on the whole mapping. The buffer must not be unmapped for the duration of the call.
+     */
+    static boolean advise(MappedByteBuffer buffer, Advice advice) {
+        if (!available || buffer.capacity() == 0) {
+            return false;
+        }
+
+        try {
+            if (madvise(Native.getDirectBufferPointer(buffer), buffer.capacity(), advice.value) != 0) {
+                logger.debug("madvise {} failed", advice);
+                return false;
+            }
+            return true;
+        } catch (RuntimeException e) {
+            logger.debug("madvise {} failed", advice, e);
+            return false;
+        }
+    }
+
+    private static int getFileDescriptor(FileChannel channel) {
+        try {
+            Field channelField = channel.getClass().getDeclaredField("fd");
+            channelField.setAccessible(true);
+            FileDescriptor descriptor = (FileDescriptor) channelField.get(channel);
+            return descriptor != null ? descriptorField.getInt(descriptor) : -1;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Unable to get the file descriptor of {}", channel.getClass().getName(), e);
+            return -1;
+        }
+    }
+}
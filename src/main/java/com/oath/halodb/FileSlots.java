@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense numbering of data files which the compact index stores in 3 bytes instead of the 4 byte file id.
+ *
+ * A file gets a slot when an index entry first refers to it and gives it back once it is deleted, at which
+ * point no entry refers to it. Slots given back are only reused once all others have been handed out.
+ */
+class FileSlots {
+
+    static final int MAX_SLOTS = 1 << 24;
+
+    private final Map<Integer, Integer> slotsByFileId = new ConcurrentHashMap<>();
+
+    // replaced when it grows. Slots are read under the segment lock of the entry, which orders the
+    // read after the write of the slot.
+    private volatile int[] fileIds = new int[1024];
+
+    private int nextSlot = 0;
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    /**
+     * Returns the slot of the file, assigning one if it doesn't have one.
+     */
+    int slotOf(int fileId) {
+        Integer slot = slotsByFileId.get(fileId);
+        return slot != null ? slot : assign(fileId);
+    }
+
+    int fileIdOf(int slot) {
+        return fileIds[slot];
+    }
+
+    synchronized void release(int fileId) {
+        Integer slot = slotsByFileId.remove(fileId);
+        if (slot != null) {
+            freeSlots.addLast(slot);
+        }
+    }
+
+    private synchronized int assign(int fileId) {
+        Integer existing = slotsByFileId.get(fileId);
+        if (existing != null) {
+            return existing;
+        }
+
+        int slot;
+        if (nextSlot < MAX_SLOTS) {
+            slot = nextSlot++;
+        } else if (!freeSlots.isEmpty()) {
+            slot = freeSlots.removeFirst();
+        } else {
+            throw new IllegalStateException("All " + MAX_SLOTS + " file slots of the compact index are in use");
+        }
+        setFileId(slot, fileId);
+        slotsByFileId.put(fileId, slot);
+        return slot;
+    }
+
+    private void setFileId(int slot, int fileId) {
+        if (slot >= fileIds.length) {
+            fileIds = Arrays.copyOf(fileIds, Math.min(MAX_SLOTS, Math.max(slot + 1, fileIds.length * 2)));
+        }
+        fileIds[slot] = fileId;
+    }
+
+    /**
+     * Slots of the files, by file id.
+     */
+    synchronized Map<Integer, Integer> getSlots() {
+        return new HashMap<>(slotsByFileId);
+    }
+
+    /**
+     * Restores the slots of an index which outlived the process. Must be called before the index is used.
+     */
+    synchronized void restore(Map<Integer, Integer> slots) {
+        slots.forEach((fileId, slot) -> {
+            setFileId(slot, fileId);
+            slotsByFileId.put(fileId, slot);
+            nextSlot = Math.max(nextSlot, slot + 1);
+        });
+        Set<Integer> used = new HashSet<>(slots.values());
+        for (int slot = 0; slot < nextSlot; slot++) {
+            if (!used.contains(slot)) {
+                freeSlots.addLast(slot);
+            }
+        }
+    }
+}
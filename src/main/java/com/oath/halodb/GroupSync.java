@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Merges flushes of a file requested by concurrent writers into a single force().
+ *
+ * Writes are counted once they complete. A writer which wants its write to be durable notes the
+ * count and, unless a flush which started after its write has already completed, flushes the file
+ * on behalf of all writes counted so far. Writers which queued up behind that flush find their
+ * writes covered by it and return without flushing again.
+ */
+class GroupSync {
+
+    interface Flusher {
+        void flush(Durability durability) throws IOException;
+    }
+
+    private final Flusher flusher;
+
+    private final AtomicLong completedWrites = new AtomicLong(0);
+
+    // number of completed writes covered by the last force(false) or force(true), and by the last force(true).
+    private volatile long flushedWrites = 0;
+    private volatile long fsyncedWrites = 0;
+
+    GroupSync(Flusher flusher) {
+        this.flusher = flusher;
+    }
+
+    /**
+     * To be called after data has been written to the file.
+     */
+    void writeCompleted() {
+        completedWrites.incrementAndGet();
+    }
+
+    /**
+     * Returns once all writes completed before this call are durable to the given level.
+     */
+    void sync(Durability durability) throws IOException {
+        if (durability == Durability.WRITTEN) {
+            return;
+        }
+
+        long target = completedWrites.get();
+        if (syncedWrites(durability) >= target) {
+            return;
+        }
+
+        synchronized (this) {
+            if (syncedWrites(durability) >= target) {
+                return;
+            }
+
+            long covered = completedWrites.get();
+            try {
+                flusher.flush(durability);
+            } catch (ClosedByInterruptException e) {
+                throw e;
+            } catch (ClosedChannelException e) {
+                // files are flushed before they are closed.
+            }
+
+            flushedWrites = covered;
+            if (durability == Durability.FSYNCED) {
+                fsyncedWrites = covered;
+            }
+        }
+    }
+
+    private long syncedWrites(Durability durability) {
+        return durability == Durability.FSYNCED ? fsyncedWrites : flushedWrites;
+    }
+}
@@ -9,7 +9,13 @@ import com.google.common.annotations.VisibleForTesting;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public final class HaloDB {
 
@@ -40,6 +46,121 @@ public final class HaloDB {
         }
     }
 
+    /**
+     * Returns the value of the key, loading it with the loader and storing it if the key is not present.
+     * Concurrent gets of a key which is being loaded wait for that load instead of calling the loader
+     * again. Returns null, without storing anything, if the loader returns null. Such keys are remembered
+     * for {@link HaloDBOptions#setLoaderMissingKeyExpiryMillis(long)}. An exception thrown by the loader
+     * is rethrown, wrapped in a {@link HaloDBException}, to all callers waiting for the load.
+     */
+    public byte[] getOrLoad(byte[] key, ValueLoader loader) throws HaloDBException {
+        try {
+            return dbInternal.getOrLoad(key, loader);
+        } catch (IOException e) {
+            throw new HaloDBException("Lookup failed.", e);
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #get(byte[])}. The key is looked up in the index on the calling thread
+     * and the value is read on one of {@link HaloDBOptions#setNumberOfReadThreads(int)} read threads, so the
+     * calling thread doesn't block on disk reads. The future completes with null if the key is not present,
+     * or exceptionally with a {@link HaloDBException} if the read failed or too many reads are queued.
+     * Without read threads the value is read on the calling thread.
+     */
+    public CompletableFuture<byte[]> getAsync(byte[] key) {
+        return dbInternal.getAsync(key);
+    }
+
+    /**
+     * Reads the value into the buffer without allocating an array for it. The buffer is cleared, the value
+     * is read into it and the buffer is flipped, so that it holds exactly the value. Returns the size of the
+     * value, or -1 if the key is not present. If the value is larger than the capacity of the buffer the
+     * buffer is not modified and the size of the value is returned, which is larger than the capacity.
+     */
+    public int get(byte[] key, ByteBuffer buffer) throws HaloDBException {
+        try {
+            return dbInternal.get(key, buffer, 1);
+        } catch (IOException e) {
+            throw new HaloDBException("Lookup failed.", e);
+        }
+    }
+
+    /**
+     * Reads the value into a direct buffer owned by the calling thread and passes it to the consumer.
+     * The buffer is reused by the next read of the thread, it must not be used after the consumer returns.
+     * Returns false, without calling the consumer, if the key is not present.
+     */
+    public boolean get(byte[] key, Consumer<ByteBuffer> consumer) throws HaloDBException {
+        try {
+            return dbInternal.get(key, consumer);
+        } catch (IOException e) {
+            throw new HaloDBException("Lookup failed.", e);
+        }
+    }
+
+    /**
+     * Whether the key is present. Served from the in-memory index, without reading the value.
+     */
+    public boolean contains(byte[] key) {
+        return dbInternal.contains(key);
+    }
+
+    /**
+     * Whether all the keys are present, see {@link #contains(byte[])}.
+     */
+    public boolean containsAll(Collection<byte[]> keys) {
+        return dbInternal.containsAll(keys);
+    }
+
+    /**
+     * Returns the keys which are present, in iteration order, see {@link #contains(byte[])}.
+     */
+    public List<byte[]> filterExisting(Collection<byte[]> keys) {
+        return dbInternal.filterExisting(keys);
+    }
+
+    /**
+     * Size of the value of the key, or -1 if the key is not present. Served from the in-memory index.
+     */
+    public int valueSize(byte[] key) {
+        return dbInternal.valueSize(key);
+    }
+
+    /**
+     * Returns length bytes of the value starting at offset, fewer if the value ends before offset + length,
+     * or null if the key is not present. Only the requested bytes are read, which is cheaper than reading a
+     * large value to look at a part of it.
+     */
+    public byte[] getRange(byte[] key, int offset, int length) throws HaloDBException {
+        try {
+            return dbInternal.getRange(key, offset, length, 1);
+        } catch (IOException e) {
+            throw new HaloDBException("Lookup failed.", e);
+        }
+    }
+
+    /**
+     * Opens a channel which reads the value as it is read from, or returns null if the key is not present.
+     * The channel returns the value as it was when opened, even if the key is updated or deleted afterwards.
+     * It must be closed, until then the data file holding the value is not deleted by compaction.
+     */
+    public ReadableByteChannel newValueChannel(byte[] key) throws HaloDBException {
+        return dbInternal.newValueChannel(key, 1);
+    }
+
+    /**
+     * Returns the values of the keys, in the same order, with null for keys which are not present.
+     * Reads are sorted by file and offset, and values stored close to each other are read together.
+     */
+    public List<byte[]> multiGet(List<byte[]> keys) throws HaloDBException {
+        try {
+            return dbInternal.multiGet(keys);
+        } catch (IOException e) {
+            throw new HaloDBException("Lookup failed.", e);
+        }
+    }
+
     public boolean put(byte[] key, byte[] value) throws HaloDBException {
         try {
             return dbInternal.put(key, value);
@@ -48,6 +169,17 @@ public final class HaloDB {
         }
     }
 
+    /**
+     * Returns once the record is durable to the level requested by writeOptions.
+     */
+    public boolean put(byte[] key, byte[] value, WriteOptions writeOptions) throws HaloDBException {
+        try {
+            return dbInternal.put(key, value, writeOptions);
+        } catch (IOException e) {
+            throw new HaloDBException("Store to db failed.", e);
+        }
+    }
+
     public void delete(byte[] key) throws HaloDBException {
         try {
             dbInternal.delete(key);
@@ -56,6 +188,75 @@ public final class HaloDB {
         }
     }
 
+    /**
+     * Returns once the delete is durable to the level requested by writeOptions.
+     */
+    public void delete(byte[] key, WriteOptions writeOptions) throws HaloDBException {
+        try {
+            dbInternal.delete(key, writeOptions);
+        } catch (IOException e) {
+            throw new HaloDBException("Delete operation failed.", e);
+        }
+    }
+
+    /**
+     * Applies all the puts and deletes in the batch, in order, with a single write to each file.
+     * When sync writes are enabled the whole batch is synced to disk at once.
+     *
+     * A batch is not atomic. Concurrent readers can see some of its operations before the others,
+     * a batch which doesn't fit in the current data file is split across files, and after a crash
+     * any subset of its operations might have survived. Only an invalid key rejects the whole batch
+     * before anything is written.
+     */
+    public void write(WriteBatch batch) throws HaloDBException {
+        try {
+            dbInternal.write(batch);
+        } catch (IOException e) {
+            throw new HaloDBException("Batch write failed.", e);
+        }
+    }
+
+    /**
+     * Queues the put to be applied by a background writer thread, which applies queued writes
+     * in batches. The returned future completes once the record is durable to the level set by
+     * {@link HaloDBOptions#setAsyncWriteDurability(Durability)}, or exceptionally with a
+     * {@link HaloDBException} if the write failed. Blocks only if the queue is full.
+     */
+    public CompletableFuture<Void> putAsync(byte[] key, byte[] value) {
+        return dbInternal.putAsync(key, value);
+    }
+
+    /**
+     * Asynchronous version of {@link #delete(byte[])}, see {@link #putAsync(byte[], byte[])}.
+     */
+    public CompletableFuture<Void> deleteAsync(byte[] key) {
+        return dbInternal.deleteAsync(key);
+    }
+
+    /**
+     * Returns once all writes completed before this call have been fsynced. With
+     * {@link HaloDBOptions#setBackgroundSyncIntervalMillis(long)} set this waits for the
+     * background syncer, which is woken up right away, otherwise the files are synced on the calling thread.
+     */
+    public void awaitDurable() throws HaloDBException {
+        try {
+            dbInternal.awaitDurable();
+        } catch (IOException e) {
+            throw new HaloDBException("Sync failed.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HaloDBException("Interrupted while waiting for sync.", e);
+        }
+    }
+
+    /**
+     * Sequence number up to which all writes have been fsynced by the background syncer or by
+     * {@link #awaitDurable()}.
+     */
+    public long getDurableSequenceNumber() {
+        return dbInternal.getDurableSequenceNumber();
+    }
+
     public void close() throws HaloDBException {
         try {
             dbInternal.close();
@@ -115,6 +316,16 @@ public final class HaloDB {
         return dbInternal.isCompactionComplete();
     }
 
+    @VisibleForTesting
+    boolean isPageCacheWarmupComplete() {
+        return dbInternal.isPageCacheWarmupComplete();
+    }
+
+    @VisibleForTesting
+    long getPageCacheWarmupBytes() {
+        return dbInternal.getPageCacheWarmupBytes();
+    }
+
     @VisibleForTesting
     boolean isTombstoneFilesMerging() {
         return dbInternal.isTombstoneFilesMerging();
@@ -17,7 +17,16 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.BiFunction;
 import java.util.regex.Matcher;
 
@@ -31,9 +40,26 @@ class HaloDBFile {
     private static final Logger logger = LoggerFactory.getLogger(HaloDBFile.class);
 
     private volatile int writeOffset;
+    private static final AtomicIntegerFieldUpdater<HaloDBFile> writeOffsetUpdater =
+        AtomicIntegerFieldUpdater.newUpdater(HaloDBFile.class, "writeOffset");
+
+    // writes which have reserved space but are yet to be published to the in-memory index.
+    private final AtomicInteger pendingWrites = new AtomicInteger(0);
+    private volatile boolean sealed = false;
+    private final AtomicBoolean flushedAfterSeal = new AtomicBoolean(false);
+
+    // the db holds one reference as long as the file is part of it, readers pin the file with
+    // acquire() while reading. Once all references are released the file is closed.
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile boolean deleteOnRelease = false;
+    private volatile Executor flushExecutor;
+    private static final long PENDING_WRITE_WAIT_NANOS = 10_000;
+
+    private static final int REPAIR_SCAN_BUFFER_SIZE = 1024 * 1024;
 
     private FileChannel channel;
-    private final File backingFile;
+    // renamed once, when a pre-created file is taken into use.
+    private File backingFile;
     private final DBDirectory dbDirectory;
     private final int fileId;
 
@@ -41,10 +67,18 @@ class HaloDBFile {
 
     private final HaloDBOptions options;
 
-    private long unFlushedData = 0;
+    private final AtomicLong unFlushedData = new AtomicLong(0);
+
+    private final GroupSync groupSync = new GroupSync(this::force);
+
+    // set once the file is no longer written to, if memory mapped reads are enabled.
+    private volatile MappedFile mappedFile;
+    private boolean closed = false;
 
     static final String DATA_FILE_NAME = ".data";
     static final String COMPACTED_DATA_FILE_NAME = ".datac";
+    // suffix of the files pre-created for the next rollover, which don't match the data and index file patterns.
+    static final String NEXT_FILE_SUFFIX = ".next";
 
     private final FileType fileType;
 
@@ -70,6 +104,15 @@ class HaloDBFile {
     }
 
     int readFromFile(long position, ByteBuffer destinationBuffer) throws IOException {
+        MappedFile mapped = mappedFile;
+        if (mapped != null) {
+            int read = mapped.read(position, destinationBuffer);
+            if (read != -1) {
+                return read;
+            }
+            // unmapped as the file is being closed, the channel read will fail.
+        }
+
         long currentPosition = position;
         int bytesRead;
         do {
@@ -110,22 +153,205 @@ class HaloDBFile {
         return record;
     }
 
+    /**
+     * Reserves space for the record at the end of the file and writes the record and its index file entry.
+     * Multiple threads can write to the file concurrently, each to the region it reserved.
+     *
+     * Returns null if the file has been sealed or if the record doesn't fit in the file. Otherwise the write
+     * is still pending when this method returns and the caller must call {@link #completeWrite()} once the
+     * record has been published to the in-memory index.
+     */
     InMemoryIndexMetaData writeRecord(Record record) throws IOException {
-        writeToChannel(record.serialize());
+        List<InMemoryIndexMetaData> metaData = writeRecords(Collections.singletonList(record));
+        return metaData != null ? metaData.get(0) : null;
+    }
+
+    /**
+     * Same as {@link #writeRecord(Record)} but reserves contiguous space for all the records and writes them
+     * with a single write to the data file and a single write to the index file. Records are serialized into
+     * the calling thread's {@link WriteBuffer}. Returns null if the records
+     * don't fit in the file. If sync writes are enabled the data file is flushed to disk once for all records.
+     */
+    List<InMemoryIndexMetaData> writeRecords(List<Record> records) throws IOException {
+        int size = 0;
+        for (Record record : records) {
+            size += record.getRecordSize();
+        }
+
+        int recordOffset = reserveSpace(size);
+        if (recordOffset == -1) {
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer = WriteBuffer.get(size);
+            List<IndexFileEntry> indexFileEntries = new ArrayList<>(records.size());
+            List<InMemoryIndexMetaData> metaData = new ArrayList<>(records.size());
+            for (Record record : records) {
+                record.serialize(buffer);
+
+                int recordSize = record.getRecordSize();
+                indexFileEntries.add(new IndexFileEntry(
+                    record.getKey(), recordSize,
+                    recordOffset, record.getSequenceNumber(),
+                    Versions.CURRENT_INDEX_FILE_VERSION, -1
+                ));
+                int valueOffset = Utils.getValueOffset(recordOffset, record.getKey());
+                metaData.add(new InMemoryIndexMetaData(
+                    fileId, valueOffset, record.getValue().length, record.getSequenceNumber(), inlineValue(record.getValue())
+                ));
+                recordOffset += recordSize;
+            }
+            buffer.flip();
+
+            writeToChannel(buffer, recordOffset - size);
+            indexFile.write(indexFileEntries);
+            return metaData;
+        }
+        catch (IOException e) {
+            completeWrite();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the value if it is small enough to be stored in the in-memory index, null otherwise.
+     */
+    byte[] inlineValue(byte[] value) {
+        int inlineValueSize = options.getInlineValueSize();
+        return inlineValueSize > 0 && value.length <= inlineValueSize ? value : null;
+    }
+
+    /**
+     * Atomically bumps the write offset by size bytes and returns the offset at which the caller may write,
+     * or -1 if the file is sealed or has no room left. An empty file accepts a record of any size.
+     * A successful reservation registers a pending write.
+     */
+    private int reserveSpace(int size) throws IOException {
+        pendingWrites.incrementAndGet();
+        while (!sealed) {
+            int offset = writeOffset;
+            if (offset != 0 && offset + (long)size > options.getMaxFileSize()) {
+                break;
+            }
+            if (writeOffsetUpdater.compareAndSet(this, offset, offset + size)) {
+                return offset;
+            }
+        }
+
+        // we might have raced with seal() and be the last pending write.
+        completeWrite();
+        return -1;
+    }
+
+    /**
+     * Marks a write started by {@link #writeRecord(Record)} or {@link #writeRecords(List)} as complete.
+     * If the file has been sealed and this was the last pending write the file is flushed to disk.
+     */
+    void completeWrite() throws IOException {
+        if (pendingWrites.decrementAndGet() == 0 && sealed) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Stops further writes to this file. The file is flushed to disk once all pending writes complete.
+     */
+    void seal() throws IOException {
+        seal(null);
+    }
+
+    /**
+     * Same as {@link #seal()} but the flush runs on flushExecutor instead of the thread which
+     * completes the last pending write.
+     */
+    void seal(Executor flushExecutor) throws IOException {
+        this.flushExecutor = flushExecutor;
+        sealed = true;
+        if (pendingWrites.get() == 0) {
+            scheduleFlush();
+        }
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Waits for writes which reserved space in this file before it was sealed.
+     * Must not be called by a thread with a pending write to this file.
+     */
+    void awaitPendingWrites() {
+        while (pendingWrites.get() != 0) {
+            LockSupport.parkNanos(PENDING_WRITE_WAIT_NANOS);
+        }
+    }
+
+    private void scheduleFlush() throws IOException {
+        Executor executor = flushExecutor;
+        if (executor == null) {
+            flushSealedFile();
+            return;
+        }
+
+        executor.execute(() -> {
+            try {
+                flushSealedFile();
+            } catch (IOException e) {
+                logger.error("Error while flushing sealed file " + getName(), e);
+            }
+        });
+    }
 
-        int recordSize = record.getRecordSize();
-        int recordOffset = writeOffset;
-        writeOffset += recordSize;
+    private void flushSealedFile() throws IOException {
+        if (flushedAfterSeal.compareAndSet(false, true)) {
+            flushToDisk();
+            indexFile.releaseWriteBuffer();
+            indexFile.flushToDisk();
+            mapForReading();
+        }
+    }
 
-        IndexFileEntry indexFileEntry = new IndexFileEntry(
-            record.getKey(), recordSize,
-            recordOffset, record.getSequenceNumber(),
-            Versions.CURRENT_INDEX_FILE_VERSION, -1
-        );
-        indexFile.write(indexFileEntry);
+    /**
+     * If memory mapped reads are enabled, maps the file so that reads copy from the mapping instead
+     * of reading from the channel. Must only be called once the file is no longer written to.
+     */
+    synchronized void mapForReading() throws IOException {
+        if (!options.isUseMemoryMappedReads() || mappedFile != null || closed) {
+            return;
+        }
 
-        int valueOffset = Utils.getValueOffset(recordOffset, record.getKey());
-        return new InMemoryIndexMetaData(fileId, valueOffset, record.getValue().length, record.getSequenceNumber());
+        long size = channel.size();
+        if (size > 0) {
+            mappedFile = MappedFile.map(channel, size);
+            if (options.isUseFileAdvice()) {
+                mappedFile.advise(FileAdvisor.Advice.RANDOM);
+            }
+        }
+    }
+
+    /**
+     * If file advice is enabled, tells the kernel how the file is going to be read, see {@link FileAdvisor}.
+     * Data files are read at random by gets, scans advise SEQUENTIAL and restore RANDOM once done.
+     */
+    void advise(FileAdvisor.Advice advice) {
+        if (!options.isUseFileAdvice() || !acquire()) {
+            return;
+        }
+        try {
+            FileAdvisor.advise(channel, 0, 0, advice);
+            MappedFile mapped = mappedFile;
+            // pages are dropped from the page cache through the channel.
+            if (mapped != null && advice != FileAdvisor.Advice.DONTNEED) {
+                mapped.advise(advice);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    boolean isMemoryMapped() {
+        return mappedFile != null;
     }
 
     void rebuildIndexFile() throws IOException {
@@ -146,12 +372,63 @@ class HaloDBFile {
             indexFile.write(indexFileEntry);
             offset += record.getRecordSize();
         }
+        indexFile.flush();
+    }
+
+    /**
+     * Index file entries are buffered before they are written, therefore after a crash the index file might
+     * be missing the entries of records at the end of the data file. As concurrent writers append entries in
+     * the order in which their writes complete, the file can also hold entries of records which follow one
+     * whose entry is missing. Appends the missing entries, reading the records from the first one without an
+     * entry up to the first corrupted one, and returns their number.
+     */
+    int repairIndexFileTail() throws IOException {
+        long[] indexedRecords = indexFile.truncateAfterLastValidEntry();
+        int endOffset = Ints.checkedCast(channel.size());
+
+        // skip the records which have an entry and are not preceded by one without.
+        int offset = 0, next = 0;
+        while (next < indexedRecords.length && (int) (indexedRecords[next] >>> 32) == offset) {
+            offset += (int) indexedRecords[next++];
+        }
+
+        int count = 0;
+        while (offset < endOffset) {
+            while (next < indexedRecords.length && (int) (indexedRecords[next] >>> 32) < offset) {
+                next++;
+            }
+            if (next < indexedRecords.length && (int) (indexedRecords[next] >>> 32) == offset) {
+                offset += (int) indexedRecords[next++];
+                continue;
+            }
+
+            Record record = readValidRecord(offset);
+            if (record == null) {
+                logger.warn("Found a corrupted record at offset {} in file {} while repairing its index file", offset, getName());
+                break;
+            }
+            indexFile.write(new IndexFileEntry(
+                record.getKey(), record.getRecordSize(),
+                offset, record.getSequenceNumber(),
+                Versions.CURRENT_INDEX_FILE_VERSION, -1
+            ));
+            count++;
+            offset += record.getRecordSize();
+        }
+
+        if (count > 0) {
+            indexFile.flushToDisk();
+            logger.info("Added {} missing entries to the index file of {}", count, getName());
+        }
+        return count;
     }
 
     /**
      * Copies to a temporary file those records whose computed checksum matches the stored one and then atomically
      * rename the temp file to the current file.
-     * Records in the file which occur after a corrupted record are discarded.
+     * Since writers append to the file concurrently a crash can leave a hole, i.e. a region which was reserved but
+     * not completely written, followed by valid records. When a corrupted record is found we therefore scan
+     * forward for the next valid record and continue copying from there.
      * Index file is also recreated.
      * This method is called if we detect an unclean shutdown.
      */
@@ -159,19 +436,27 @@ class HaloDBFile {
         HaloDBFile repairFile = createRepairFile();
 
         logger.info("Repairing file {}.", getName());
-        HaloDBFileIterator iterator = new HaloDBFileIterator();
-        int count = 0;
-        while (iterator.hasNext()) {
-            Record record = iterator.next();
-            // if the header is corrupted iterator will return null.
-            if (record != null && record.verifyChecksum()) {
-                repairFile.writeRecord(record);
+        int endOffset = Ints.checkedCast(channel.size());
+        int offset = 0, count = 0;
+        while (offset < endOffset) {
+            Record record = readValidRecord(offset);
+            if (record != null) {
+                if (repairFile.writeRecord(record) == null) {
+                    throw new IOException("Record at " + offset + " in file " + getName() + " doesn't fit in repair file");
+                }
+                repairFile.completeWrite();
                 count++;
+                offset += record.getRecordSize();
+                continue;
             }
-            else {
-                logger.info("Found a corrupted record after copying {} records", count);
+
+            int next = findNextValidRecord(offset + 1, endOffset);
+            if (next == -1) {
+                logger.info("Found a corrupted record at offset {} after copying {} records", offset, count);
                 break;
             }
+            logger.info("Skipped {} corrupted bytes at offset {} after copying {} records", next - offset, offset, count);
+            offset = next;
         }
         logger.info("Recovered {} records from file {} with size {}. Size after repair {}.", count, getName(), getSize(), repairFile.getSize());
         repairFile.flushToDisk();
@@ -184,6 +469,48 @@ class HaloDBFile {
         return openForReading(dbDirectory, getPath().toFile(), fileType, options);
     }
 
+    /**
+     * Returns the record at offset if both its header and checksum are valid, null otherwise.
+     */
+    private Record readValidRecord(int offset) {
+        try {
+            Record record = readRecord(offset);
+            return record.verifyChecksum() ? record : null;
+        } catch (IOException | HaloDBException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Scans the file from offset for the first position which holds a valid record.
+     * Returns -1 if there is none.
+     */
+    private int findNextValidRecord(int offset, int endOffset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(REPAIR_SCAN_BUFFER_SIZE);
+        int position = offset;
+        while (position + Record.Header.HEADER_SIZE <= endOffset) {
+            buffer.clear();
+            int read = readFromFile(position, buffer);
+            for (int i = 0; i + Record.Header.HEADER_SIZE <= read; i++) {
+                if (mightBeHeader(buffer, i, endOffset - (position + i)) && readValidRecord(position + i) != null) {
+                    return position + i;
+                }
+            }
+            // headers can straddle two reads.
+            position += Math.max(1, read - Record.Header.HEADER_SIZE + 1);
+        }
+
+        return -1;
+    }
+
+    private static boolean mightBeHeader(ByteBuffer buffer, int index, int remaining) {
+        byte keySize = buffer.get(index + Record.Header.KEY_SIZE_OFFSET);
+        int valueSize = buffer.getInt(index + Record.Header.VALUE_SIZE_OFFSET);
+        long sequenceNumber = buffer.getLong(index + Record.Header.SEQUENCE_NUMBER_OFFSET);
+        return keySize > 0 && valueSize > 0 && sequenceNumber > 0
+               && Record.Header.HEADER_SIZE + keySize + (long)valueSize <= remaining;
+    }
+
     private HaloDBFile createRepairFile() throws IOException {
         File repairFile = dbDirectory.getPath().resolve(getName()+".repair").toFile();
         while (!repairFile.createNewFile()) {
@@ -197,24 +524,19 @@ class HaloDBFile {
         return new HaloDBFile(fileId, repairFile, dbDirectory, indexFile, fileType, channel, options);
     }
 
-    private long writeToChannel(ByteBuffer[] buffers) throws IOException {
-        long toWrite = 0;
-        for (ByteBuffer buffer : buffers) {
-            toWrite += buffer.remaining();
+    private void writeToChannel(ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
         }
 
-        long written = 0;
-        while (written < toWrite) {
-            written += channel.write(buffers);
-        }
+        groupSync.writeCompleted();
 
-        unFlushedData += written;
-
-        if (options.isSyncWrite() || (options.getFlushDataSizeBytes() != -1 && unFlushedData > options.getFlushDataSizeBytes())) {
+        long unFlushed = unFlushedData.addAndGet(written);
+        if (options.isInlineFlushEnabled() && unFlushed > options.getFlushDataSizeBytes()
+            && unFlushedData.compareAndSet(unFlushed, 0)) {
             flushToDisk();
-            unFlushedData = 0;
         }
-        return written;
     }
 
     void flushToDisk() throws IOException {
@@ -222,6 +544,28 @@ class HaloDBFile {
             channel.force(true);
     }
 
+    /**
+     * Makes all writes completed before this call durable to the given level. Concurrent
+     * callers are served by a single force(), see {@link GroupSync}.
+     */
+    void flushToDisk(Durability durability) throws IOException {
+        groupSync.sync(durability);
+    }
+
+    private void force(Durability durability) throws IOException {
+        switch (durability) {
+            case FSYNCED:
+                flushToDisk();
+                break;
+            case FLUSHED:
+                if (channel != null && channel.isOpen())
+                    channel.force(false);
+                break;
+            default:
+                // data was written to the file channel, nothing more to do.
+        }
+    }
+
     long getWriteOffset() {
         return writeOffset;
     }
@@ -256,7 +600,10 @@ class HaloDBFile {
         IndexFile indexFile = new IndexFile(fileId, dbDirectory, options);
         indexFile.open();
 
-        return new HaloDBFile(fileId, filename, dbDirectory, indexFile, fileType, channel, options);
+        HaloDBFile file = new HaloDBFile(fileId, filename, dbDirectory, indexFile, fileType, channel, options);
+        file.advise(FileAdvisor.Advice.RANDOM);
+        file.mapForReading();
+        return file;
     }
 
     static HaloDBFile create(DBDirectory dbDirectory, int fileId, HaloDBOptions options, FileType fileType) throws IOException {
@@ -269,14 +616,48 @@ class HaloDBFile {
             file = toFile.apply(dbDirectory, fileId);
         }
 
+        // the file isn't preallocated with setLength() as the end of the data written
+        // is taken to be the size of the file, e.g. when it is opened for reading.
         FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
-        //TODO: setting the length might improve performance.
-        //file.setLength(max_);
 
         IndexFile indexFile = new IndexFile(fileId, dbDirectory, options);
         indexFile.create();
 
-        return new HaloDBFile(fileId, file, dbDirectory, indexFile, fileType, channel, options);
+        HaloDBFile haloDBFile = new HaloDBFile(fileId, file, dbDirectory, indexFile, fileType, channel, options);
+        haloDBFile.advise(FileAdvisor.Advice.RANDOM);
+        return haloDBFile;
+    }
+
+    /**
+     * Creates a data file, with its index file, under names which are ignored when the db is opened
+     * until the file is taken into use with {@link #takeIntoUse()}.
+     */
+    static HaloDBFile createNext(DBDirectory dbDirectory, int fileId, HaloDBOptions options) throws IOException {
+        File file = getNextDataFile(dbDirectory, fileId);
+        while (getDataFile(dbDirectory, fileId).exists() || !file.createNewFile()) {
+            // file already exists try another one.
+            fileId++;
+            file = getNextDataFile(dbDirectory, fileId);
+        }
+
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+
+        IndexFile indexFile = new IndexFile(fileId, dbDirectory, options);
+        indexFile.createNext();
+
+        return new HaloDBFile(fileId, file, dbDirectory, indexFile, FileType.DATA_FILE, channel, options);
+    }
+
+    /**
+     * Renames a file created with {@link #createNext} to the names of a data file and its index file.
+     * Must be called before anything is written to the file, so that a non-empty pre-created file found
+     * on open is known to have been taken into use.
+     */
+    void takeIntoUse() throws IOException {
+        File file = getDataFile(dbDirectory, fileId);
+        Files.move(backingFile.toPath(), file.toPath(), ATOMIC_MOVE);
+        backingFile = file;
+        indexFile.takeIntoUse();
     }
 
     HaloDBFileIterator newIterator() throws IOException {
@@ -284,6 +665,13 @@ class HaloDBFile {
     }
 
     void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            if (mappedFile != null) {
+                // waits for reads in progress.
+                mappedFile.unmap();
+            }
+        }
         if (channel != null) {
             channel.close();
         }
@@ -292,6 +680,49 @@ class HaloDBFile {
         }
     }
 
+    /**
+     * Pins the file so that it is not closed while being read from. Returns false if the file has
+     * already been closed because it was deleted, in which case it must not be released.
+     */
+    boolean acquire() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a pin taken with acquire(). The last reader to release a deleted file closes and deletes it.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            try {
+                if (deleteOnRelease) {
+                    delete();
+                } else {
+                    close();
+                }
+            } catch (IOException e) {
+                logger.error("Error while closing released file {}", getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Releases the reference of the db. The file is deleted right away, or by the last reader to release it.
+     */
+    void deleteWhenReleased() throws IOException {
+        deleteOnRelease = true;
+        if (references.decrementAndGet() == 0) {
+            delete();
+        }
+    }
+
     void delete() throws IOException {
         close();
         if (backingFile != null)
@@ -313,6 +744,10 @@ class HaloDBFile {
         return dbDirectory.getPath().resolve(fileId + DATA_FILE_NAME).toFile();
     }
 
+    private static File getNextDataFile(DBDirectory dbDirectory, int fileId) {
+        return dbDirectory.getPath().resolve(fileId + DATA_FILE_NAME + NEXT_FILE_SUFFIX).toFile();
+    }
+
     private static File getCompactedDataFile(DBDirectory dbDirectory, int fileId) {
         return dbDirectory.getPath().resolve(fileId + COMPACTED_DATA_FILE_NAME).toFile();
     }
@@ -6,9 +6,12 @@
 package com.oath.halodb;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.primitives.Ints;
 
 import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.Striped;
+import com.oath.halodb.histo.EstimatedHistogram;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -25,11 +28,15 @@ import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.*;
@@ -37,6 +44,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 class HaloDBInternal {
 
@@ -56,6 +65,9 @@ class HaloDBInternal {
     HaloDBOptions options;
 
     private InMemoryIndex inMemoryIndex;
+    private MappedIndex mappedIndex;
+    // null unless the index is compact.
+    private FileSlots fileSlots;
 
     private final Map<Integer, Integer> staleDataPerFileMap = new ConcurrentHashMap<>();
 
@@ -69,16 +81,59 @@ class HaloDBInternal {
 
     private FileLock dbLock;
 
-    private final Lock writeLock = new ReentrantLock();
+    // Writers to the same key are serialized by the key's stripe, writers to different keys
+    // append to the current write file concurrently.
+    private final Striped<Lock> keyLocks = Striped.lock(noOfKeyLockStripes);
+    private static final int noOfKeyLockStripes = 1024;
+
+    // syncs and close wait for the writes which are in progress.
+    private final WritesInProgress writesInProgress = new WritesInProgress();
+
+    // held while the current write file is rolled over.
+    private final Lock rollOverLock = new ReentrantLock();
+
+    // held while writing to or rolling over the current tombstone file.
+    private final Lock tombstoneLock = new ReentrantLock();
 
     private static final int maxReadAttempts = 5;
 
+    // values of a multiGet which are at most this far apart in a file are read with a single read.
+    private static final int multiGetMaxGap = 4 * 1024;
+    private static final int multiGetMaxReadSize = 1024 * 1024;
+
+    // values up to this size are read into a per thread buffer by get with a consumer.
+    private static final int maxPooledReadBufferSize = 1024 * 1024;
+
     private AtomicLong noOfTombstonesCopiedDuringOpen;
     private AtomicLong noOfTombstonesFoundDuringOpen;
-    private volatile long nextSequenceNumber;
+    private final AtomicLong nextSequenceNumber = new AtomicLong();
 
     private volatile boolean isTombstoneFilesMerging = false;
 
+    // created when the first async write is submitted.
+    private volatile AsyncWriter asyncWriter;
+
+    // guarded by rollOverLock.
+    private DataFileFactory dataFileFactory;
+
+    private BackgroundSyncer backgroundSyncer;
+
+    // null if the value cache is disabled.
+    private ValueCache valueCache;
+
+    private final ThreadLocal<ByteBuffer> readBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(4 * 1024));
+
+    // reads files for getAsync and multiGet, null if numberOfReadThreads is 0.
+    private ReadExecutor readExecutor;
+
+    private HotReadLog hotReadLog;
+    private PageCacheWarmer pageCacheWarmer;
+
+    private SingleFlightLoader singleFlightLoader;
+
+    // the write file at the time of the previous syncFiles() call.
+    private int lastSyncedWriteFileId = -1;
+
     private HaloDBInternal() {}
 
     static HaloDBInternal open(File directory, HaloDBOptions options) throws HaloDBException, IOException {
@@ -90,8 +145,18 @@ class HaloDBInternal {
             dbInternal.dbLock = dbInternal.getLock();
             dbInternal.options = options;
 
+            DataFileFactory.recoverNextFiles(dbInternal.dbDirectory);
             int maxFileId = dbInternal.buildReadFileMap();
             dbInternal.nextFileId = new AtomicInteger(maxFileId + 10);
+            dbInternal.dataFileFactory = new DataFileFactory(dbInternal.dbDirectory, options, dbInternal::getNextFileId);
+            dbInternal.backgroundSyncer = new BackgroundSyncer(dbInternal, options);
+            if (options.getValueCacheSize() > 0) {
+                dbInternal.valueCache = new ValueCache(options.getValueCacheSize());
+            }
+            if (options.getNumberOfReadThreads() > 0) {
+                dbInternal.readExecutor = new ReadExecutor(options.getNumberOfReadThreads(), options.getReadQueueSize());
+            }
+            dbInternal.singleFlightLoader = new SingleFlightLoader(dbInternal, options.getLoaderMissingKeyExpiryMillis());
 
             dbInternal.noOfTombstonesCopiedDuringOpen = new AtomicLong(0);
             dbInternal.noOfTombstonesFoundDuringOpen = new AtomicLong(0);
@@ -102,7 +167,8 @@ class HaloDBInternal {
                 throw new IllegalArgumentException("File size cannot be changed after db was created. Current size " + dbMetaData.getMaxFileSize());
             }
 
-            if (dbMetaData.isOpen() || dbMetaData.isIOError()) {
+            boolean wasShutdownCleanly = !dbMetaData.isOpen() && !dbMetaData.isIOError();
+            if (!wasShutdownCleanly) {
                 logger.info("DB was not shutdown correctly last time. Files may not be consistent, repairing them.");
                 // open flag is true, this might mean that the db was not cleanly closed the last time.
                 dbInternal.repairFiles();
@@ -115,18 +181,25 @@ class HaloDBInternal {
 
             dbInternal.compactionManager = new CompactionManager(dbInternal);
 
+            if (options.isUseCompactIndex()) {
+                dbInternal.fileSlots = new FileSlots();
+            }
+            if (options.isUseMappedIndex()) {
+                dbInternal.mappedIndex = MappedIndex.open(dbInternal.dbDirectory, wasShutdownCleanly);
+            }
             dbInternal.inMemoryIndex = new InMemoryIndex(
                 options.getNumberOfRecords(), options.isUseMemoryPool(),
-                options.getFixedKeySize(), options.getMemoryPoolChunkSize()
+                options.getFixedKeySize(), options.getMemoryPoolChunkSize(), options.getInlineValueSize(),
+                dbInternal.fileSlots, dbInternal.mappedIndex
             );
 
-            long maxSequenceNumber = dbInternal.buildInMemoryIndex();
+            long maxSequenceNumber = dbInternal.buildInMemoryIndex(wasShutdownCleanly);
             if (maxSequenceNumber == -1L) {
-                dbInternal.nextSequenceNumber = 1;
+                dbInternal.nextSequenceNumber.set(1);
                 logger.info("Didn't find any existing records; initializing max sequence number to 1");
             } else {
-                dbInternal.nextSequenceNumber = maxSequenceNumber + 100;
-                logger.info("Found max sequence number {}, now starting from {}", maxSequenceNumber, dbInternal.nextSequenceNumber);
+                dbInternal.nextSequenceNumber.set(maxSequenceNumber + 100);
+                logger.info("Found max sequence number {}, now starting from {}", maxSequenceNumber, dbInternal.nextSequenceNumber.get());
             }
 
             if (!options.isCompactionDisabled()) {
@@ -136,6 +209,18 @@ class HaloDBInternal {
                 logger.warn("Compaction is disabled in HaloDBOption. This should happen only in tests");
             }
 
+            dbInternal.backgroundSyncer.start();
+
+            if (options.getHotReadLogSize() > 0) {
+                dbInternal.hotReadLog = new HotReadLog(options.getHotReadLogSize());
+                List<HotReadLog.HotRead> hotReads = HotReadLog.loadFromFile(dbInternal.dbDirectory);
+                dbInternal.hotReadLog.start(dbInternal.dbDirectory, options.getHotReadLogStoreIntervalMillis());
+                if (!hotReads.isEmpty()) {
+                    dbInternal.pageCacheWarmer = new PageCacheWarmer(dbInternal, hotReads, options);
+                    dbInternal.pageCacheWarmer.start();
+                }
+            }
+
             // merge tombstone files at background if clean up set to true
             if (options.isCleanUpTombstonesDuringOpen()) {
                 dbInternal.isTombstoneFilesMerging = true;
@@ -158,14 +243,40 @@ class HaloDBInternal {
     }
 
     synchronized void close() throws IOException {
-        writeLock.lock();
+        if (asyncWriter != null && !isClosing) {
+            // apply all queued async writes before closing files.
+            asyncWriter.close();
+        }
+        if (!isClosing) {
+            backgroundSyncer.close();
+            if (readExecutor != null) {
+                // completes queued reads while the files are still open.
+                readExecutor.close();
+            }
+            if (pageCacheWarmer != null) {
+                pageCacheWarmer.close();
+            }
+        }
+
+        rollOverLock.lock();
         try {
             if (isClosing) {
                 // instance already closed.
                 return;
             }
             isClosing = true;
+            if (currentWriteFile != null) {
+                currentWriteFile.seal();
+            }
+        } finally {
+            rollOverLock.unlock();
+        }
 
+        // wait for writes which are in progress, new writes will fail as the current files are sealed.
+        writesInProgress.await();
+
+        tombstoneLock.lock();
+        try {
             try {
                 if(!compactionManager.stopCompactionThread(true))
                     setIOErrorFlag();
@@ -183,14 +294,13 @@ class HaloDBInternal {
                 }
             }
 
-            if (options.isCleanUpInMemoryIndexOnClose())
-                inMemoryIndex.close();
-
             if (currentWriteFile != null) {
                 currentWriteFile.flushToDisk();
                 currentWriteFile.getIndexFile().flushToDisk();
                 currentWriteFile.close();
             }
+            // waits for flushes of previously sealed files.
+            dataFileFactory.close();
             if (currentTombstoneFile != null) {
                 currentTombstoneFile.flushToDisk();
                 currentTombstoneFile.close();
@@ -199,6 +309,38 @@ class HaloDBInternal {
             for (HaloDBFile file : readFileMap.values()) {
                 file.close();
             }
+            if (valueCache != null) {
+                valueCache.close();
+            }
+            if (hotReadLog != null) {
+                try {
+                    hotReadLog.close(dbDirectory);
+                } catch (IOException e) {
+                    // only used to warm up the page cache.
+                    logger.error("Error while storing recently read values", e);
+                }
+            }
+            if (options.isUseIndexCheckpoint()) {
+                try {
+                    IndexCheckpoint.write(dbDirectory, inMemoryIndex, nextSequenceNumber.get() - 1, options.getInlineValueSize());
+                } catch (IOException e) {
+                    // the next open scans the index files instead.
+                    logger.error("Error while writing index checkpoint", e);
+                    IndexCheckpoint.delete(dbDirectory);
+                }
+            }
+
+            if (mappedIndex != null) {
+                // releasing the segments writes the mapped memory to the files.
+                inMemoryIndex.close();
+                try {
+                    mappedIndex.close(nextSequenceNumber.get() - 1);
+                } catch (IOException e) {
+                    // the next open rebuilds the index.
+                    logger.error("Error while closing mapped index", e);
+                }
+            } else if (options.isCleanUpInMemoryIndexOnClose())
+                inMemoryIndex.close();
 
             DBMetaData metaData = new DBMetaData(dbDirectory);
             metaData.loadFromFileIfExists();
@@ -211,29 +353,242 @@ class HaloDBInternal {
                 dbLock.close();
             }
         } finally {
-            writeLock.unlock();
+            tombstoneLock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns once all writes completed before this call have been fsynced.
+     */
+    void awaitDurable() throws IOException, InterruptedException {
+        if (isClosing) {
+            // close() flushes all files.
+            return;
         }
+        backgroundSyncer.awaitDurable(nextSequenceNumber.get() - 1);
+    }
+
+    long getDurableSequenceNumber() {
+        return backgroundSyncer.getDurableSequenceNumber();
+    }
+
+    /**
+     * Fsyncs the data and index files written to since the previous call, and the current tombstone
+     * file. Returns the sequence number up to which all writes are durable. Must only be called by
+     * {@link BackgroundSyncer}, which serializes the calls.
+     */
+    long syncFiles() throws IOException {
+        long sequenceNumber = nextSequenceNumber.get() - 1;
+        // writes with a sequence number up to this one began before, wait until they have written to the files.
+        writesInProgress.await();
+
+        List<HaloDBFile> files = new ArrayList<>();
+        HaloDBFile writeFile = currentWriteFile;
+        if (writeFile != null) {
+            if (writeFile.getFileId() == lastSyncedWriteFileId) {
+                files.add(writeFile);
+            } else {
+                // files rolled over since then might not have been flushed by the data file factory yet.
+                for (HaloDBFile file : readFileMap.values()) {
+                    if (file.getFileType() == HaloDBFile.FileType.DATA_FILE && file.getFileId() >= lastSyncedWriteFileId) {
+                        files.add(file);
+                    }
+                }
+            }
+            lastSyncedWriteFileId = writeFile.getFileId();
+        }
+
+        for (HaloDBFile file : files) {
+            try {
+                file.flushToDisk(Durability.FSYNCED);
+                file.getIndexFile().flushToDisk();
+            } catch (ClosedChannelException e) {
+                // file was compacted and deleted.
+            }
+        }
+
+        // tombstone files are fsynced when they are rolled over.
+        TombstoneFile tombstoneFile = currentTombstoneFile;
+        if (tombstoneFile != null) {
+            tombstoneFile.flushToDisk(Durability.FSYNCED);
+        }
+
+        return sequenceNumber;
     }
 
     boolean put(byte[] key, byte[] value) throws IOException, HaloDBException {
+        return put(key, value, WriteOptions.DEFAULT);
+    }
+
+    /**
+     * The record is made durable, as requested by writeOptions, before it is published to the in-memory index.
+     */
+    boolean put(byte[] key, byte[] value, WriteOptions writeOptions) throws IOException, HaloDBException {
         if (key.length > Byte.MAX_VALUE) {
             throw new HaloDBException("key length cannot exceed " + Byte.MAX_VALUE);
         }
 
-        //TODO: more fine-grained locking is possible. 
-        writeLock.lock();
+        Lock lock = keyLocks.get(ByteBuffer.wrap(key));
+        lock.lock();
+        int epoch = writesInProgress.begin();
+        List<HaloDBFile> filesWritten = new ArrayList<>(1);
         try {
             Record record = new Record(key, value);
             record.setSequenceNumber(getNextSequenceNumber());
             record.setVersion(Versions.CURRENT_DATA_FILE_VERSION);
-            InMemoryIndexMetaData entry = writeRecordToFile(record);
-            markPreviousVersionAsStale(key);
+            InMemoryIndexMetaData entry = writeRecordsToFile(Collections.singletonList(record), filesWritten).get(0);
+            flushFiles(filesWritten, getDurability(writeOptions.getDurability()));
+
+            InMemoryIndexMetaData previous = inMemoryIndex.getAndPut(key, entry);
+            if (previous != null) {
+                markPreviousVersionAsStale(key, previous);
+            }
+            return true;
+        } finally {
+            completeWrites(filesWritten);
+            writesInProgress.end(epoch);
+            lock.unlock();
+        }
+    }
 
-            //TODO: implement getAndSet and use the return value for
-            //TODO: markPreviousVersionAsStale method.
-            return inMemoryIndex.put(key, entry);
+    /**
+     * Stores the record only if the key is not present. Returns false if it was.
+     */
+    boolean putIfAbsent(byte[] key, byte[] value) throws IOException, HaloDBException {
+        // the stripe is reentrant, put takes it again.
+        Lock lock = keyLocks.get(ByteBuffer.wrap(key));
+        lock.lock();
+        try {
+            return !inMemoryIndex.containsKey(key) && put(key, value);
         } finally {
-            writeLock.unlock();
+            lock.unlock();
+        }
+    }
+
+    CompletableFuture<Void> putAsync(byte[] key, byte[] value) {
+        // a null value would be applied as a delete.
+        Objects.requireNonNull(value, "value cannot be null");
+        return submitAsyncWrite(key, value);
+    }
+
+    CompletableFuture<Void> deleteAsync(byte[] key) {
+        Objects.requireNonNull(key, "key cannot be null");
+        return submitAsyncWrite(key, null);
+    }
+
+    private CompletableFuture<Void> submitAsyncWrite(byte[] key, byte[] value) {
+        // rejected here, as in a batch it would fail the writes of other callers.
+        if (key.length > Byte.MAX_VALUE) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new HaloDBException("key length cannot exceed " + Byte.MAX_VALUE));
+            return future;
+        }
+
+        AsyncWriter writer = asyncWriter;
+        if (writer == null) {
+            synchronized (this) {
+                if (isClosing) {
+                    CompletableFuture<Void> future = new CompletableFuture<>();
+                    future.completeExceptionally(new HaloDBException("DB is closed"));
+                    return future;
+                }
+                if (asyncWriter == null) {
+                    asyncWriter = new AsyncWriter(this, options);
+                }
+                writer = asyncWriter;
+            }
+        }
+
+        return writer.submit(key, value);
+    }
+
+    void write(WriteBatch batch) throws IOException, HaloDBException {
+        write(batch, Durability.WRITTEN);
+    }
+
+    /**
+     * Applies all operations in the batch while holding the locks of all keys in the batch.
+     * Records are appended to the data and index files with one write per file, and tombstones
+     * to the tombstone file with one write, therefore a single flush covers the entire batch.
+     * Before returning, each file written to is flushed according to durability, or fsynced if
+     * sync writes are enabled. The in-memory index is updated only after all records and tombstones have been
+     * written, one key at a time, so readers which don't take the key locks can see part of the batch.
+     */
+    void write(WriteBatch batch, Durability durability) throws IOException, HaloDBException {
+        for (WriteBatch.Operation operation : batch.getOperations()) {
+            if (operation.getKey().length > Byte.MAX_VALUE) {
+                throw new HaloDBException("key length cannot exceed " + Byte.MAX_VALUE);
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<ByteBuffer> keys = new ArrayList<>(batch.size());
+        for (WriteBatch.Operation operation : batch.getOperations()) {
+            keys.add(ByteBuffer.wrap(operation.getKey()));
+        }
+        // bulkGet returns the stripes in a consistent order, therefore batches cannot deadlock each other.
+        Iterable<Lock> locks = keyLocks.bulkGet(keys);
+        locks.forEach(Lock::lock);
+        int epoch = writesInProgress.begin();
+        List<HaloDBFile> filesWritten = new ArrayList<>(1);
+        try {
+            List<BatchEntry> entries = new ArrayList<>(batch.size());
+            List<Record> records = new ArrayList<>();
+            List<TombstoneEntry> tombstones = new ArrayList<>();
+
+            // whether a key touched by this batch will exist after the preceding operations are applied.
+            Map<ByteBuffer, Boolean> keyExists = new HashMap<>();
+
+            for (WriteBatch.Operation operation : batch.getOperations()) {
+                byte[] key = operation.getKey();
+                ByteBuffer wrappedKey = ByteBuffer.wrap(key);
+                if (operation.isDelete()) {
+                    Boolean exists = keyExists.get(wrappedKey);
+                    if (exists == null) {
+                        exists = inMemoryIndex.containsKey(key);
+                    }
+                    if (exists) {
+                        TombstoneEntry tombstone =
+                            new TombstoneEntry(key, getNextSequenceNumber(), -1, Versions.CURRENT_TOMBSTONE_FILE_VERSION);
+                        tombstones.add(tombstone);
+                        entries.add(new BatchEntry(key, null));
+                        keyExists.put(wrappedKey, false);
+                    }
+                } else {
+                    Record record = new Record(key, operation.getValue());
+                    record.setSequenceNumber(getNextSequenceNumber());
+                    record.setVersion(Versions.CURRENT_DATA_FILE_VERSION);
+                    records.add(record);
+                    entries.add(new BatchEntry(key, record));
+                    keyExists.put(wrappedKey, true);
+                }
+            }
+
+            durability = getDurability(durability);
+            List<InMemoryIndexMetaData> metaData = writeRecordsToFile(records, filesWritten);
+            flushFiles(filesWritten, durability);
+            writeTombstonesToFile(tombstones, durability);
+
+            int recordIndex = 0;
+            for (BatchEntry entry : entries) {
+                InMemoryIndexMetaData previous;
+                if (entry.record != null) {
+                    previous = inMemoryIndex.getAndPut(entry.key, metaData.get(recordIndex++));
+                } else {
+                    previous = inMemoryIndex.getAndRemove(entry.key);
+                }
+                if (previous != null) {
+                    markPreviousVersionAsStale(entry.key, previous);
+                }
+            }
+        } finally {
+            completeWrites(filesWritten);
+            writesInProgress.end(epoch);
+            locks.forEach(Lock::unlock);
         }
     }
 
@@ -246,56 +601,458 @@ class HaloDBInternal {
         if (metaData == null) {
             return null;
         }
+        if (metaData.hasInlineValue()) {
+            return metaData.getInlineValue();
+        }
+        recordRead(metaData);
 
-        HaloDBFile readFile = readFileMap.get(metaData.getFileId());
+        HaloDBFile readFile = acquireHaloDBFile(metaData.getFileId());
         if (readFile == null) {
             logger.debug("File {} not present. Compaction job would have deleted it. Retrying ...", metaData.getFileId());
             return get(key, attemptNumber+1);
         }
 
         try {
-            return readFile.readFromFile(metaData.getValueOffset(), metaData.getValueSize());
+            byte[] value = readValue(readFile, metaData);
+            inlineValue(key, metaData, value);
+            return value;
+        } finally {
+            readFile.release();
         }
-        catch (ClosedChannelException e) {
-            if (!isClosing) {
-                logger.debug("File {} was closed. Compaction job would have deleted it. Retrying ...", metaData.getFileId());
-                return get(key, attemptNumber+1);
-            }
+    }
 
-            // trying to read after HaloDB.close() method called. 
-            throw e;
-        }
+    byte[] getOrLoad(byte[] key, ValueLoader loader) throws IOException, HaloDBException {
+        return singleFlightLoader.get(key, loader);
     }
 
-    int get(byte[] key, ByteBuffer buffer) throws IOException {
+    /**
+     * Clears the buffer, reads the value into it and flips it. Returns the size of the value, or -1 if the
+     * key is not present. If the value is larger than the capacity of the buffer, nothing is read and
+     * the size of the value is returned.
+     */
+    int get(byte[] key, ByteBuffer buffer, int attemptNumber) throws IOException, HaloDBException {
+        if (attemptNumber > maxReadAttempts) {
+            logger.error("Tried {} attempts but read failed", attemptNumber-1);
+            throw new HaloDBException("Tried " + (attemptNumber-1) + " attempts but failed.");
+        }
         InMemoryIndexMetaData metaData = inMemoryIndex.get(key);
         if (metaData == null) {
-            return 0;
+            return -1;
+        }
+        if (metaData.getValueSize() > buffer.capacity()) {
+            return metaData.getValueSize();
         }
+        if (metaData.hasInlineValue()) {
+            buffer.clear();
+            buffer.put(metaData.getInlineValue());
+            buffer.flip();
+            return metaData.getValueSize();
+        }
+        recordRead(metaData);
 
-        HaloDBFile readFile = readFileMap.get(metaData.getFileId());
+        HaloDBFile readFile = acquireHaloDBFile(metaData.getFileId());
         if (readFile == null) {
             logger.debug("File {} not present. Compaction job would have deleted it. Retrying ...", metaData.getFileId());
-            return get(key, buffer);
+            return get(key, buffer, attemptNumber+1);
         }
 
         buffer.clear();
         buffer.limit(metaData.getValueSize());
 
         try {
-            int read = readFile.readFromFile(metaData.getValueOffset(), buffer);
-            buffer.flip();
-            return read;
+            if (valueCache == null) {
+                readFile.readFromFile(metaData.getValueOffset(), buffer);
+                buffer.flip();
+            } else if (valueCache.get(metaData.getFileId(), metaData.getValueOffset(), buffer)) {
+                buffer.flip();
+            } else {
+                readFile.readFromFile(metaData.getValueOffset(), buffer);
+                buffer.flip();
+                valueCache.put(metaData.getFileId(), metaData.getValueOffset(), buffer);
+            }
+            if (options.getInlineValueSize() > 0 && metaData.getValueSize() <= options.getInlineValueSize()) {
+                byte[] value = new byte[metaData.getValueSize()];
+                buffer.duplicate().get(value);
+                inlineValue(key, metaData, value);
+            }
+            return metaData.getValueSize();
+        } finally {
+            readFile.release();
         }
-        catch (ClosedChannelException e) {
-            if (!isClosing) {
-                logger.debug("File {} was closed. Compaction job would have deleted it. Retrying ...", metaData.getFileId());
-                return get(key, buffer);
+    }
+
+    /**
+     * Reads the value into a buffer owned by the calling thread and passes it to the consumer. Returns
+     * false if the key is not present.
+     */
+    boolean get(byte[] key, Consumer<ByteBuffer> consumer) throws IOException, HaloDBException {
+        ByteBuffer buffer = readBuffer.get();
+        int size;
+        while ((size = get(key, buffer, 1)) > buffer.capacity()) {
+            if (size <= maxPooledReadBufferSize) {
+                buffer = ByteBuffer.allocateDirect((int) Utils.roundUpToPowerOf2(size));
+                readBuffer.set(buffer);
+            } else {
+                buffer = ByteBuffer.allocate(size);
             }
+        }
+        if (size == -1) {
+            return false;
+        }
 
-            // trying to read after HaloDB.close() method called.
-            throw e;
+        consumer.accept(buffer);
+        return true;
+    }
+
+    /**
+     * Whether the key is present, answered from the index alone.
+     */
+    boolean contains(byte[] key) {
+        return inMemoryIndex.containsKey(key);
+    }
+
+    /**
+     * Whether all the keys are present, stops at the first missing one.
+     */
+    boolean containsAll(Collection<byte[]> keys) {
+        for (byte[] key : keys) {
+            if (!inMemoryIndex.containsKey(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The keys which are present, in the order of keys.
+     */
+    List<byte[]> filterExisting(Collection<byte[]> keys) {
+        List<byte[]> existing = new ArrayList<>();
+        for (byte[] key : keys) {
+            if (inMemoryIndex.containsKey(key)) {
+                existing.add(key);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Size of the value, or -1 if the key is not present. Needs only the index.
+     */
+    int valueSize(byte[] key) {
+        InMemoryIndexMetaData metaData = inMemoryIndex.get(key);
+        return metaData != null ? metaData.getValueSize() : -1;
+    }
+
+    /**
+     * Returns length bytes of the value starting at offset, fewer if the value ends before, or null if the
+     * key is not present. Only the requested bytes are read from the data file, the value cache is not used.
+     */
+    byte[] getRange(byte[] key, int offset, int length, int attemptNumber) throws IOException, HaloDBException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length should be >= 0");
+        }
+        if (attemptNumber > maxReadAttempts) {
+            logger.error("Tried {} attempts but read failed", attemptNumber-1);
+            throw new HaloDBException("Tried " + (attemptNumber-1) + " attempts but failed.");
+        }
+        InMemoryIndexMetaData metaData = inMemoryIndex.get(key);
+        if (metaData == null) {
+            return null;
+        }
+        int rangeLength = Math.max(0, Math.min(length, metaData.getValueSize() - offset));
+        if (rangeLength == 0) {
+            return new byte[0];
+        }
+        if (metaData.hasInlineValue()) {
+            return Arrays.copyOfRange(metaData.getInlineValue(), offset, offset + rangeLength);
+        }
+        // only the range read is warmed up.
+        recordRead(metaData.getFileId(), metaData.getValueOffset() + offset, rangeLength);
+
+        HaloDBFile readFile = acquireHaloDBFile(metaData.getFileId());
+        if (readFile == null) {
+            logger.debug("File {} not present. Compaction job would have deleted it. Retrying ...", metaData.getFileId());
+            return getRange(key, offset, length, attemptNumber+1);
+        }
+
+        try {
+            return readFile.readFromFile(metaData.getValueOffset() + offset, rangeLength);
+        } finally {
+            readFile.release();
+        }
+    }
+
+    /**
+     * Opens a channel streaming the value from its data file, or returns null if the key is not present.
+     * The data file is pinned until the channel is closed.
+     */
+    ValueChannel newValueChannel(byte[] key, int attemptNumber) throws HaloDBException {
+        if (attemptNumber > maxReadAttempts) {
+            logger.error("Tried {} attempts but read failed", attemptNumber-1);
+            throw new HaloDBException("Tried " + (attemptNumber-1) + " attempts but failed.");
+        }
+        InMemoryIndexMetaData metaData = inMemoryIndex.get(key);
+        if (metaData == null) {
+            return null;
+        }
+
+        HaloDBFile readFile = acquireHaloDBFile(metaData.getFileId());
+        if (readFile == null) {
+            logger.debug("File {} not present. Compaction job would have deleted it. Retrying ...", metaData.getFileId());
+            return newValueChannel(key, attemptNumber+1);
+        }
+        return new ValueChannel(readFile, metaData);
+    }
+
+    /**
+     * Returns the values of the keys, in the same order, with null for keys which are not present.
+     * All keys are looked up in the index first, the values are then read file by file in the order
+     * of their offsets, with values close to each other read by a single read. If there is a read
+     * executor, files are read in parallel.
+     */
+    List<byte[]> multiGet(List<byte[]> keys) throws IOException, HaloDBException {
+        byte[][] values = new byte[keys.size()][];
+        Map<Integer, List<PendingRead>> readsPerFile = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            InMemoryIndexMetaData metaData = inMemoryIndex.get(keys.get(i));
+            if (metaData == null) {
+                continue;
+            }
+            if (metaData.hasInlineValue()) {
+                values[i] = metaData.getInlineValue();
+                continue;
+            }
+            recordRead(metaData);
+            if (valueCache != null && (values[i] = valueCache.get(metaData.getFileId(), metaData.getValueOffset())) != null) {
+                continue;
+            }
+            readsPerFile.computeIfAbsent(metaData.getFileId(), fileId -> new ArrayList<>()).add(new PendingRead(i, metaData));
+        }
+
+        if (readExecutor == null || readsPerFile.size() < 2) {
+            for (List<PendingRead> reads : readsPerFile.values()) {
+                readValues(keys, reads, values);
+            }
+            return Arrays.asList(values);
         }
+
+        // read one file on the calling thread and the others on the read executor.
+        List<CompletableFuture<Void>> futures = new ArrayList<>(readsPerFile.size() - 1);
+        List<PendingRead> inline = null;
+        for (List<PendingRead> reads : readsPerFile.values()) {
+            if (inline == null) {
+                inline = reads;
+                continue;
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            boolean queued = readExecutor.execute(() -> {
+                try {
+                    readValues(keys, reads, values);
+                    future.complete(null);
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+            if (queued) {
+                futures.add(future);
+            } else {
+                // queue is full.
+                readValues(keys, reads, values);
+            }
+        }
+        readValues(keys, inline, values);
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new HaloDBException("Interrupted while waiting for reads", e);
+            } catch (ExecutionException e) {
+                Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+                Throwables.propagateIfInstanceOf(e.getCause(), HaloDBException.class);
+                throw new HaloDBException("multiGet failed", e.getCause());
+            }
+        }
+        return Arrays.asList(values);
+    }
+
+    /**
+     * Reads values from a single file, sorted by offset and merging reads of nearby values.
+     */
+    private void readValues(List<byte[]> keys, List<PendingRead> reads, byte[][] values) throws IOException, HaloDBException {
+        HaloDBFile readFile = acquireHaloDBFile(reads.get(0).metaData.getFileId());
+        if (readFile != null) {
+            reads.sort(Comparator.comparingInt(read -> read.metaData.getValueOffset()));
+            try {
+                int start = 0;
+                while (start < reads.size()) {
+                    int rangeStart = reads.get(start).metaData.getValueOffset();
+                    int rangeEnd = rangeStart + reads.get(start).metaData.getValueSize();
+                    int end = start + 1;
+                    while (end < reads.size()) {
+                        InMemoryIndexMetaData next = reads.get(end).metaData;
+                        int nextEnd = next.getValueOffset() + next.getValueSize();
+                        if (next.getValueOffset() - rangeEnd > multiGetMaxGap || nextEnd - rangeStart > multiGetMaxReadSize) {
+                            break;
+                        }
+                        // duplicate keys have the same offset.
+                        rangeEnd = Math.max(rangeEnd, nextEnd);
+                        end++;
+                    }
+
+                    if (end - start == 1) {
+                        PendingRead read = reads.get(start);
+                        values[read.index] = readFile.readFromFile(rangeStart, read.metaData.getValueSize());
+                    } else {
+                        byte[] range = new byte[rangeEnd - rangeStart];
+                        readFile.readFromFile(rangeStart, ByteBuffer.wrap(range));
+                        for (int i = start; i < end; i++) {
+                            PendingRead read = reads.get(i);
+                            int offset = read.metaData.getValueOffset() - rangeStart;
+                            values[read.index] = Arrays.copyOfRange(range, offset, offset + read.metaData.getValueSize());
+                        }
+                    }
+                    for (int i = start; i < end; i++) {
+                        PendingRead read = reads.get(i);
+                        if (valueCache != null) {
+                            valueCache.put(read.metaData.getFileId(), read.metaData.getValueOffset(), values[read.index]);
+                        }
+                        inlineValue(keys.get(read.index), read.metaData, values[read.index]);
+                    }
+                    start = end;
+                }
+                return;
+            } finally {
+                readFile.release();
+            }
+        }
+
+        // compaction deleted the file after the index lookup, look up the remaining keys again.
+        logger.debug("File {} not present. Compaction job would have deleted it. Retrying ...", reads.get(0).metaData.getFileId());
+        for (PendingRead read : reads) {
+            if (values[read.index] == null) {
+                values[read.index] = get(keys.get(read.index), 2);
+            }
+        }
+    }
+
+    private static class PendingRead {
+        final int index;
+        final InMemoryIndexMetaData metaData;
+
+        PendingRead(int index, InMemoryIndexMetaData metaData) {
+            this.index = index;
+            this.metaData = metaData;
+        }
+    }
+
+    /**
+     * Looks up the key in the index and the value cache on the calling thread, and reads the value from
+     * the file on the read executor. Without a read executor the value is read on the calling thread.
+     */
+    CompletableFuture<byte[]> getAsync(byte[] key) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        InMemoryIndexMetaData metaData = inMemoryIndex.get(key);
+        if (metaData == null) {
+            future.complete(null);
+            return future;
+        }
+        if (metaData.hasInlineValue()) {
+            future.complete(metaData.getInlineValue());
+            return future;
+        }
+        recordRead(metaData);
+        if (valueCache != null) {
+            byte[] value = valueCache.get(metaData.getFileId(), metaData.getValueOffset());
+            if (value != null) {
+                future.complete(value);
+                return future;
+            }
+        }
+
+        Runnable read = () -> {
+            try {
+                future.complete(readFromFile(key, metaData));
+            } catch (IOException e) {
+                future.completeExceptionally(new HaloDBException("Lookup failed.", e));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        };
+        if (readExecutor == null) {
+            read.run();
+        } else if (!readExecutor.execute(read)) {
+            if (readExecutor.isClosed()) {
+                future.completeExceptionally(new HaloDBException("DB is closed"));
+            } else {
+                future.completeExceptionally(new HaloDBException("Read queue is full, " + options.getReadQueueSize() + " reads are pending."));
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Reads the value of a key which was looked up in the index and adds it to the value cache.
+     * If the file was deleted since, looks the key up again.
+     */
+    private byte[] readFromFile(byte[] key, InMemoryIndexMetaData metaData) throws IOException, HaloDBException {
+        HaloDBFile readFile = acquireHaloDBFile(metaData.getFileId());
+        if (readFile != null) {
+            try {
+                byte[] value = readFile.readFromFile(metaData.getValueOffset(), metaData.getValueSize());
+                if (valueCache != null) {
+                    valueCache.put(metaData.getFileId(), metaData.getValueOffset(), value);
+                }
+                inlineValue(key, metaData, value);
+                return value;
+            } finally {
+                readFile.release();
+            }
+        }
+
+        logger.debug("File {} not present. Compaction job would have deleted it. Retrying ...", metaData.getFileId());
+        return get(key, 2);
+    }
+
+    /**
+     * Records the location of a value about to be read, to warm up the page cache on the next open.
+     */
+    private void recordRead(InMemoryIndexMetaData metaData) {
+        recordRead(metaData.getFileId(), metaData.getValueOffset(), metaData.getValueSize());
+    }
+
+    private void recordRead(int fileId, int offset, int size) {
+        if (hotReadLog != null) {
+            hotReadLog.record(fileId, offset, size);
+        }
+    }
+
+    /**
+     * Entries built from index files don't hold the value, which the index file doesn't have. A small value
+     * is stored in the entry once it has been read, unless the entry has changed meanwhile.
+     */
+    private void inlineValue(byte[] key, InMemoryIndexMetaData metaData, byte[] value) {
+        if (value.length <= options.getInlineValueSize() && options.getInlineValueSize() > 0) {
+            inMemoryIndex.replace(key, metaData, new InMemoryIndexMetaData(
+                metaData.getFileId(), metaData.getValueOffset(), metaData.getValueSize(), metaData.getSequenceNumber(), value));
+        }
+    }
+
+    /**
+     * Reads the value from the value cache, if enabled, or from the file and adds it to the cache.
+     */
+    private byte[] readValue(HaloDBFile readFile, InMemoryIndexMetaData metaData) throws IOException {
+        if (valueCache == null) {
+            return readFile.readFromFile(metaData.getValueOffset(), metaData.getValueSize());
+        }
+
+        byte[] value = valueCache.get(metaData.getFileId(), metaData.getValueOffset());
+        if (value == null) {
+            value = readFile.readFromFile(metaData.getValueOffset(), metaData.getValueSize());
+            valueCache.put(metaData.getFileId(), metaData.getValueOffset(), value);
+        }
+        return value;
     }
 
     //TODO: use fine-grained lock if possible
@@ -327,8 +1084,11 @@ class HaloDBInternal {
             FileUtils.createDirectoryIfNotExists(snapshotDir);
             logger.info("Created directory for snapshot {}", snapshotDir.toString());
 
-            writeLock.lock();
+            HaloDBFile previousWriteFile;
+            rollOverLock.lock();
+            tombstoneLock.lock();
             try {
+                previousWriteFile = currentWriteFile;
                 forceRollOverCurrentWriteFile();
                 currentTombstoneFile = forceRollOverTombstoneFile(currentTombstoneFile);
 
@@ -338,7 +1098,13 @@ class HaloDBInternal {
 
                 return false;
             } finally {
-                writeLock.unlock();
+                tombstoneLock.unlock();
+                rollOverLock.unlock();
+            }
+
+            // writes which reserved space in the previous file must complete before it is linked.
+            if (previousWriteFile != null) {
+                previousWriteFile.awaitPendingWrites();
             }
 
             File[] filesToLink = dbDirectory.getPath().toFile()
@@ -389,20 +1155,27 @@ class HaloDBInternal {
     }
 
     void delete(byte[] key) throws IOException {
-        writeLock.lock();
+        delete(key, WriteOptions.DEFAULT);
+    }
+
+    void delete(byte[] key, WriteOptions writeOptions) throws IOException {
+        Lock lock = keyLocks.get(ByteBuffer.wrap(key));
+        lock.lock();
+        int epoch = writesInProgress.begin();
         try {
-            InMemoryIndexMetaData metaData = inMemoryIndex.get(key);
-            if (metaData != null) {
-                //TODO: implement a getAndRemove method in InMemoryIndex.
-                inMemoryIndex.remove(key);
+            if (inMemoryIndex.containsKey(key)) {
                 TombstoneEntry entry =
                     new TombstoneEntry(key, getNextSequenceNumber(), -1, Versions.CURRENT_TOMBSTONE_FILE_VERSION);
-                currentTombstoneFile = rollOverTombstoneFile(entry, currentTombstoneFile);
-                currentTombstoneFile.write(entry);
-                markPreviousVersionAsStale(key, metaData);
+                writeTombstonesToFile(Collections.singletonList(entry), getDurability(writeOptions.getDurability()));
+                // compaction could have moved the record since the lookup above.
+                InMemoryIndexMetaData metaData = inMemoryIndex.getAndRemove(key);
+                if (metaData != null) {
+                    markPreviousVersionAsStale(key, metaData);
+                }
             }
         } finally {
-            writeLock.unlock();
+            writesInProgress.end(epoch);
+            lock.unlock();
         }
     }
 
@@ -425,26 +1198,146 @@ class HaloDBInternal {
         compactionManager.resumeCompaction();
     }
 
-    private InMemoryIndexMetaData writeRecordToFile(Record record) throws IOException, HaloDBException {
-        rollOverCurrentWriteFile(record);
-        return currentWriteFile.writeRecord(record);
+    /**
+     * Writes the records to as few data files as possible, rolling over the current write file whenever the
+     * next record doesn't fit in it. Space in the current write file is reserved without locking, therefore
+     * many threads can write concurrently. Every file written to is added to filesWritten and the caller must
+     * call {@link #completeWrites(List)} once the records have been published to the in-memory index.
+     */
+    private List<InMemoryIndexMetaData> writeRecordsToFile(List<Record> records, List<HaloDBFile> filesWritten) throws IOException {
+        List<InMemoryIndexMetaData> metaData = new ArrayList<>(records.size());
+        int from = 0;
+        while (from < records.size()) {
+            HaloDBFile file = currentWriteFile;
+            if (file == null && !isClosing) {
+                rollOverCurrentWriteFile(null);
+                continue;
+            }
+
+            // pick as many records as would fit in the space currently left in the file.
+            long size = file.getWriteOffset() + records.get(from).getRecordSize();
+            long bytes = records.get(from).getRecordSize();
+            int to = from + 1;
+            while (to < records.size() && size + records.get(to).getRecordSize() <= options.getMaxFileSize()) {
+                size += records.get(to).getRecordSize();
+                bytes += records.get(to).getRecordSize();
+                to++;
+            }
+
+            List<InMemoryIndexMetaData> written = file.writeRecords(records.subList(from, to));
+            if (written == null) {
+                if (isClosing) {
+                    throw new ClosedChannelException();
+                }
+                if (to - from == 1 || file.isSealed()) {
+                    rollOverCurrentWriteFile(file);
+                }
+                // else other writers took the space we counted on, try again with fewer records.
+                continue;
+            }
+
+            filesWritten.add(file);
+            metaData.addAll(written);
+            backgroundSyncer.dataWritten(bytes);
+            from = to;
+        }
+
+        return metaData;
     }
 
-    private void rollOverCurrentWriteFile(Record record) throws IOException {
-        int size = record.getKey().length + record.getValue().length + Record.Header.HEADER_SIZE;
-        if ((currentWriteFile == null || currentWriteFile.getWriteOffset() + size > options.getMaxFileSize())
-            && !isClosing) {
-            forceRollOverCurrentWriteFile();
+    /**
+     * Flushes each file once. Concurrent writers flushing the same file share a single force().
+     */
+    private void flushFiles(List<HaloDBFile> filesWritten, Durability durability) throws IOException {
+        if (durability == Durability.WRITTEN) {
+            return;
         }
+        for (HaloDBFile file : new HashSet<>(filesWritten)) {
+            file.flushToDisk(durability);
+        }
+    }
+
+    /**
+     * With sync writes enabled every write is fsynced.
+     */
+    private Durability getDurability(Durability requested) {
+        return options.isSyncWrite() ? Durability.FSYNCED : requested;
     }
 
+    private void completeWrites(List<HaloDBFile> filesWritten) throws IOException {
+        for (HaloDBFile file : filesWritten) {
+            file.completeWrite();
+        }
+    }
+
+    /**
+     * Tombstones are written while holding the tombstoneLock but the file is flushed after releasing it,
+     * so that concurrent deletes can share a single flush. Tombstone files which were rolled over
+     * have already been flushed.
+     */
+    private void writeTombstonesToFile(List<TombstoneEntry> tombstones, Durability durability) throws IOException {
+        if (tombstones.isEmpty()) {
+            return;
+        }
+
+        TombstoneFile fileToFlush;
+        tombstoneLock.lock();
+        try {
+            int from = 0;
+            while (from < tombstones.size()) {
+                currentTombstoneFile = rollOverTombstoneFile(tombstones.get(from), currentTombstoneFile);
+
+                long size = currentTombstoneFile.getWriteOffset() + tombstones.get(from).size();
+                long bytes = tombstones.get(from).size();
+                int to = from + 1;
+                while (to < tombstones.size() && size + tombstones.get(to).size() <= options.getMaxTombstoneFileSize()) {
+                    size += tombstones.get(to).size();
+                    bytes += tombstones.get(to).size();
+                    to++;
+                }
+
+                currentTombstoneFile.write(tombstones.subList(from, to));
+                backgroundSyncer.dataWritten(bytes);
+                from = to;
+            }
+            fileToFlush = currentTombstoneFile;
+        } finally {
+            tombstoneLock.unlock();
+        }
+
+        fileToFlush.flushToDisk(durability);
+    }
+
+    /**
+     * Rolls over the current write file if it is still the given file.
+     * Many writers can find the file full at the same time but only the first one creates a new file.
+     */
+    private void rollOverCurrentWriteFile(HaloDBFile fullFile) throws IOException {
+        rollOverLock.lock();
+        try {
+            if (currentWriteFile == fullFile && !isClosing) {
+                forceRollOverCurrentWriteFile();
+            }
+        } finally {
+            rollOverLock.unlock();
+        }
+    }
+
+    /**
+     * Must be called while holding the rollOverLock. The next write file has usually been created in the
+     * background already. The previous write file is sealed and will be flushed to disk in the background
+     * once writes which have already reserved space in it complete.
+     */
     private void forceRollOverCurrentWriteFile() throws IOException {
-        if (currentWriteFile != null) {
-            currentWriteFile.flushToDisk();
-            currentWriteFile.getIndexFile().flushToDisk();
+        HaloDBFile previousWriteFile = currentWriteFile;
+        HaloDBFile nextWriteFile = dataFileFactory.next();
+        if (readFileMap.putIfAbsent(nextWriteFile.getFileId(), nextWriteFile) != null) {
+            throw new IOException("Error while trying to create file " + nextWriteFile.getName() + " file with the given id already exists in the map");
+        }
+        currentWriteFile = nextWriteFile;
+        if (previousWriteFile != null) {
+            dataFileFactory.seal(previousWriteFile);
         }
-        currentWriteFile = createHaloDBFile(HaloDBFile.FileType.DATA_FILE);
-        dbDirectory.syncMetaData();
     }
 
     private TombstoneFile rollOverTombstoneFile(TombstoneEntry entry, TombstoneFile tombstoneFile) throws IOException {
@@ -469,13 +1362,6 @@ class HaloDBInternal {
     }
 
 
-    private void markPreviousVersionAsStale(byte[] key) {
-        InMemoryIndexMetaData recordMetaData = inMemoryIndex.get(key);
-        if (recordMetaData != null) {
-            markPreviousVersionAsStale(key, recordMetaData);
-        }
-    }
-
     private void markPreviousVersionAsStale(byte[] key, InMemoryIndexMetaData recordMetaData) {
         int staleRecordSize = Utils.getRecordSize(key.length, recordMetaData.getValueSize());
         addFileToCompactionQueueIfThresholdCrossed(recordMetaData.getFileId(), staleRecordSize);
@@ -564,16 +1450,60 @@ class HaloDBInternal {
             .max(Comparator.comparingInt(HaloDBFile::getFileId));
     }
 
-    private long buildInMemoryIndex() throws IOException {
+    private List<HaloDBFile> getLatestDataFiles(HaloDBFile.FileType fileType, int count) {
+        return readFileMap.values()
+            .stream()
+            .filter(f -> f.getFileType() == fileType)
+            .sorted(Comparator.comparingInt(HaloDBFile::getFileId).reversed())
+            .limit(count)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Reuses the mapped index or loads the index from the checkpoint written by the last close if
+     * they can be used, otherwise builds it by scanning all index and tombstone files.
+     */
+    private long buildInMemoryIndex(boolean wasShutdownCleanly) throws IOException {
 
         int nThreads = options.getBuildIndexThreads();
         logger.info("Building index in parallel with {} threads", nThreads);
 
         ExecutorService executor = Executors.newFixedThreadPool(nThreads);
         try {
+            if (mappedIndex != null && mappedIndex.isReused()) {
+                Map<Integer, Long> liveDataPerFile = new HashMap<>();
+                inMemoryIndex.forEach((key, metaData) -> liveDataPerFile.merge(
+                    metaData.getFileId(), (long) Utils.getRecordSize(key.remaining(), metaData.getValueSize()), Long::sum));
+                addStaleDataOfFiles(liveDataPerFile);
+                logger.info("Reusing mapped index of {} entries", inMemoryIndex.size());
+                return mappedIndex.getMaxSequenceNumber();
+            }
+
+            // files are repaired after an unclean shutdown, therefore they don't match the checkpoint.
+            if (options.isUseIndexCheckpoint() && wasShutdownCleanly) {
+                IndexCheckpoint checkpoint = IndexCheckpoint.load(dbDirectory, inMemoryIndex, options.getInlineValueSize(), executor, nThreads * 2);
+                if (checkpoint != null) {
+                    addStaleDataOfFiles(checkpoint.getLiveDataPerFile());
+                    return checkpoint.getMaxSequenceNumber();
+                }
+            }
             return buildInMemoryIndex(executor);
         } finally {
             executor.shutdown();
+            // writes after the open make the checkpoint stale.
+            IndexCheckpoint.delete(dbDirectory);
+        }
+    }
+
+    /**
+     * Data in the files which the index doesn't point to is stale.
+     */
+    private void addStaleDataOfFiles(Map<Integer, Long> liveDataPerFile) {
+        for (HaloDBFile file : readFileMap.values()) {
+            long staleDataSize = file.getSize() - liveDataPerFile.getOrDefault(file.getFileId(), 0L);
+            if (staleDataSize > 0) {
+                addFileToCompactionQueueIfThresholdCrossed(file.getFileId(), Ints.saturatedCast(staleDataSize));
+            }
         }
     }
 
@@ -629,6 +1559,81 @@ class HaloDBInternal {
         return maxSequenceNumber;
     }
 
+    /**
+     * Puts the entry into the index unless it holds a newer version of the key, and returns the
+     * previous entry with its sequence number.
+     */
+    private InMemoryIndexMetaData putIfNewer(byte[] key, InMemoryIndexMetaData metaData) throws IOException {
+        long sequenceNumber = metaData.getSequenceNumber();
+        if (!options.isUseCompactIndex()) {
+            return inMemoryIndex.getAndUpdate(key, current ->
+                current == null || current.getSequenceNumber() < sequenceNumber ? metaData : current);
+        }
+
+        // the sequence number is read outside of the segment lock, the update is retried if the entry
+        // has changed meanwhile. Entries are only replaced by newer ones.
+        while (true) {
+            InMemoryIndexMetaData current = inMemoryIndex.get(key);
+            if (current == null) {
+                if (inMemoryIndex.putIfAbsent(key, metaData)) {
+                    return null;
+                }
+                continue;
+            }
+            current = current.withSequenceNumber(readSequenceNumber(key, current));
+            if (current.getSequenceNumber() >= sequenceNumber || inMemoryIndex.replace(key, current, metaData)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Removes the key from the index if it holds an older version than the tombstone, and returns the
+     * previous entry with its sequence number.
+     */
+    private InMemoryIndexMetaData removeIfOlder(byte[] key, long sequenceNumber) throws IOException {
+        if (!options.isUseCompactIndex()) {
+            return inMemoryIndex.getAndUpdate(key, current ->
+                current != null && current.getSequenceNumber() < sequenceNumber ? null : current);
+        }
+
+        while (true) {
+            InMemoryIndexMetaData current = inMemoryIndex.get(key);
+            if (current == null) {
+                return null;
+            }
+            InMemoryIndexMetaData existing = current.withSequenceNumber(readSequenceNumber(key, current));
+            if (existing.getSequenceNumber() >= sequenceNumber) {
+                return existing;
+            }
+            boolean[] removed = {false};
+            inMemoryIndex.getAndUpdate(key, entry -> {
+                removed[0] = entry != null && entry.getFileId() == current.getFileId()
+                             && entry.getValueOffset() == current.getValueOffset();
+                return removed[0] ? null : entry;
+            });
+            if (removed[0]) {
+                return existing;
+            }
+        }
+    }
+
+    /**
+     * Reads the sequence number, which the compact index doesn't store, from the record header.
+     */
+    private long readSequenceNumber(byte[] key, InMemoryIndexMetaData metaData) throws IOException {
+        if (metaData.getSequenceNumber() != InMemoryIndexMetaData.UNKNOWN_SEQUENCE_NUMBER) {
+            return metaData.getSequenceNumber();
+        }
+        HaloDBFile file = getHaloDBFile(metaData.getFileId());
+        if (file == null) {
+            throw new IOException("Data file " + metaData.getFileId() + " of an index entry doesn't exist");
+        }
+        ByteBuffer header = ByteBuffer.allocate(Record.Header.HEADER_SIZE);
+        file.readFromFile(metaData.getValueOffset() - key.length - Record.Header.HEADER_SIZE, header);
+        return Record.Header.deserialize(header).getSequenceNumber();
+    }
+
     class ProcessIndexFileTask implements Callable<Long> {
         private final IndexFile indexFile;
         private final int fileId;
@@ -642,7 +1647,9 @@ class HaloDBInternal {
         public Long call() throws IOException {
             long maxSequenceNumber = -1;
             indexFile.open();
+            indexFile.adviseWillNeed();
             IndexFile.IndexFileIterator iterator = indexFile.newIterator();
+            // index files don't hold values, small values are inlined by the first read, see inlineValue().
 
             // build the in-memory index by scanning all index files.
             int count = 0, inserted = 0;
@@ -659,24 +1666,17 @@ class HaloDBInternal {
 
                 InMemoryIndexMetaData metaData = new InMemoryIndexMetaData(fileId, valueOffset, valueSize, sequenceNumber);
 
-                if (!inMemoryIndex.putIfAbsent(key, metaData)) {
-                    while (true) {
-                        InMemoryIndexMetaData existing = inMemoryIndex.get(key);
-                        if (existing.getSequenceNumber() >= sequenceNumber) {
-                            // stale data, update stale data map.
-                            addFileToCompactionQueueIfThresholdCrossed(fileId, recordSize);
-                            break;
-                        }
-                        if (inMemoryIndex.replace(key, existing, metaData)) {
-                            // update stale data map for the previous version.
-                            addFileToCompactionQueueIfThresholdCrossed(existing.getFileId(), Utils.getRecordSize(key.length, existing.getValueSize()));
-                            inserted++;
-                            break;
-                        }
-                    }
-                } else {
-                    inserted++;
+                InMemoryIndexMetaData existing = putIfNewer(key, metaData);
+                if (existing != null && existing.getSequenceNumber() >= sequenceNumber) {
+                    // stale data, update stale data map.
+                    addFileToCompactionQueueIfThresholdCrossed(fileId, recordSize);
+                    continue;
+                }
+                if (existing != null) {
+                    // update stale data map for the previous version.
+                    addFileToCompactionQueueIfThresholdCrossed(existing.getFileId(), Utils.getRecordSize(key.length, existing.getValueSize()));
                 }
+                inserted++;
             }
             logger.debug("Completed scanning index file {}. Found {} records, inserted {} records", fileId, count, inserted);
             indexFile.close();
@@ -709,10 +1709,9 @@ class HaloDBInternal {
                 maxSequenceNumber = Long.max(sequenceNumber, maxSequenceNumber);
                 count++;
 
-                InMemoryIndexMetaData existing = inMemoryIndex.get(key);
+                InMemoryIndexMetaData existing = removeIfOlder(key, sequenceNumber);
                 if (existing != null && existing.getSequenceNumber() < sequenceNumber) {
-                    // Found a tombstone record which happened after the version currently in index; remove.
-                    inMemoryIndex.remove(key);
+                    // Found a tombstone record which happened after the version currently in index; removed.
 
                     // update stale data map for the previous version.
                     addFileToCompactionQueueIfThresholdCrossed(
@@ -750,12 +1749,26 @@ class HaloDBInternal {
         return readFileMap.get(fileId);
     }
 
+    /**
+     * Returns the file pinned, it must be released after reading from it. Returns null if the file
+     * has been deleted by compaction, in which case the index already points to the new location.
+     */
+    HaloDBFile acquireHaloDBFile(int fileId) {
+        HaloDBFile file = readFileMap.get(fileId);
+        return file != null && file.acquire() ? file : null;
+    }
+
     void deleteHaloDBFile(int fileId) throws IOException {
         HaloDBFile file = readFileMap.get(fileId);
 
         if (file != null) {
             readFileMap.remove(fileId);
-            file.delete();
+            // readers which pinned the file can still read from it.
+            file.deleteWhenReleased();
+        }
+        if (fileSlots != null) {
+            // compaction deletes files once the index no longer refers to them.
+            fileSlots.release(fileId);
         }
 
         staleDataPerFileMap.remove(fileId);
@@ -824,7 +1837,22 @@ class HaloDBInternal {
     }
 
     private void repairFiles() {
-        getLatestDataFile(HaloDBFile.FileType.DATA_FILE).ifPresent(file -> {
+        // writes to a data file can still be in progress after it was rolled over,
+        // therefore the file before the latest one might not be consistent either.
+        List<HaloDBFile> filesToRepair = new ArrayList<>(getLatestDataFiles(HaloDBFile.FileType.DATA_FILE, 2));
+        getLatestDataFile(HaloDBFile.FileType.COMPACTED_FILE).ifPresent(filesToRepair::add);
+
+        // index file entries are buffered, other files might be missing index entries for their last records.
+        readFileMap.values().stream().filter(file -> !filesToRepair.contains(file)).forEach(file -> {
+            try {
+                file.repairIndexFileTail();
+            }
+            catch (IOException e) {
+                throw new RuntimeException("Exception while repairing index file of " + file.getName(), e);
+            }
+        });
+
+        getLatestDataFiles(HaloDBFile.FileType.DATA_FILE, 2).forEach(file -> {
             try {
                 logger.info("Repairing file {}.data", file.getFileId());
                 HaloDBFile repairedFile = file.repairFile(dbDirectory);
@@ -899,7 +1927,7 @@ class HaloDBInternal {
     }
 
     private long getNextSequenceNumber() {
-        return nextSequenceNumber++;
+        return nextSequenceNumber.getAndIncrement();
     }
 
     private int getCurrentWriteFileId() {
@@ -910,6 +1938,9 @@ class HaloDBInternal {
         if (options.isUseMemoryPool() && (options.getFixedKeySize() < 0 || options.getFixedKeySize() > Byte.MAX_VALUE)) {
             throw new IllegalArgumentException("fixedKeySize must be set and should be less than 128 when using memory pool");
         }
+        if (options.isUseMappedIndex() && !options.isUseMemoryPool()) {
+            throw new IllegalArgumentException("useMappedIndex requires the memory pool");
+        }
     }
 
     boolean isClosing() {
@@ -918,6 +1949,10 @@ class HaloDBInternal {
 
     HaloDBStats stats() {
         OffHeapHashTableStats stats = inMemoryIndex.stats();
+        EstimatedHistogram readLatency = readExecutor != null ? readExecutor.getLatencyMicros() : null;
+        if (readLatency != null && (readLatency.count() == 0 || readLatency.isOverflowed())) {
+            readLatency = null;
+        }
         return new HaloDBStats(
             statsResetTime,
             stats.getSize(),
@@ -940,6 +1975,15 @@ class HaloDBInternal {
             compactionManager.getSizeOfFilesDeleted(),
             compactionManager.getSizeOfFilesDeleted()-compactionManager.getSizeOfRecordsCopied(),
             compactionManager.getCompactionJobRateSinceBeginning(),
+            valueCache != null ? valueCache.getHitCount() : 0,
+            valueCache != null ? valueCache.getMissCount() : 0,
+            valueCache != null ? valueCache.getEvictionCount() : 0,
+            valueCache != null ? valueCache.getSize() : 0,
+            readExecutor != null ? readExecutor.getQueueDepth() : 0,
+            readExecutor != null ? readExecutor.getCompletedReads() : 0,
+            readExecutor != null ? readExecutor.getRejectedReads() : 0,
+            readLatency != null ? readLatency.mean() : 0,
+            readLatency != null ? readLatency.percentile(0.99) : 0,
             options.clone()
         );
     }
@@ -947,6 +1991,12 @@ class HaloDBInternal {
     synchronized void resetStats() {
         inMemoryIndex.resetStats();
         compactionManager.resetStats();
+        if (valueCache != null) {
+            valueCache.resetStats();
+        }
+        if (readExecutor != null) {
+            readExecutor.resetStats();
+        }
         statsResetTime = System.currentTimeMillis();
     }
 
@@ -964,6 +2014,16 @@ class HaloDBInternal {
     }
 
     // Used only in tests.
+    @VisibleForTesting
+    boolean isPageCacheWarmupComplete() {
+        return pageCacheWarmer == null || pageCacheWarmer.isComplete();
+    }
+
+    @VisibleForTesting
+    long getPageCacheWarmupBytes() {
+        return pageCacheWarmer != null ? pageCacheWarmer.getBytesWarmed() : 0;
+    }
+
     @VisibleForTesting
     boolean isCompactionComplete() {
         return compactionManager.isCompactionComplete();
@@ -973,4 +2033,16 @@ class HaloDBInternal {
     boolean isTombstoneFilesMerging() {
         return isTombstoneFilesMerging;
     }
+
+    private static class BatchEntry {
+        final byte[] key;
+
+        // null if the entry is a delete.
+        final Record record;
+
+        BatchEntry(byte[] key, Record record) {
+            this.key = key;
+            this.record = record;
+        }
+    }
 }
@@ -67,12 +67,20 @@ public class HaloDBIterator implements Iterator<Record> {
     }
 
     private boolean moveToNextFile() throws IOException {
+        if (currentFile != null) {
+            // done scanning the file, it is read at random by gets again.
+            currentFile.advise(FileAdvisor.Advice.RANDOM);
+            currentFile = null;
+        }
+
         while (outer.hasNext()) {
             int fileId = outer.next();
-            currentFile = dbInternal.getHaloDBFile(fileId);
+            currentFile = dbInternal.acquireHaloDBFile(fileId);
             if (currentFile != null) {
                 try {
+                    // the iterator maps the index file, it can be read after the file has been deleted.
                     inner = currentFile.getIndexFile().newIterator();
+                    currentFile.advise(FileAdvisor.Advice.SEQUENTIAL);
                     return true;
                 } catch (ClosedChannelException e) {
                     if (dbInternal.isClosing()) {
@@ -80,6 +88,8 @@ public class HaloDBIterator implements Iterator<Record> {
                         throw new RuntimeException("DB is closing");
                     }
                     logger.debug("Index file {} closed, probably by compaction thread. Skipping to next one", fileId);
+                } finally {
+                    currentFile.release();
                 }
             }
             logger.debug("Data file {} deleted, probably by compaction thread. Skipping to next one", fileId);
@@ -115,12 +125,17 @@ public class HaloDBIterator implements Iterator<Record> {
     private Record readRecordFromDataFile(IndexFileEntry entry) throws IOException {
         InMemoryIndexMetaData meta = Utils.getMetaData(entry, currentFile.getFileId());
         Record record = null;
-        if (dbInternal.isRecordFresh(entry.getKey(), meta)) {
-            byte[] value = currentFile.readFromFile(
-                Utils.getValueOffset(entry.getRecordOffset(), entry.getKey()),
-                Utils.getValueSize(entry.getRecordSize(), entry.getKey()));
-            record = new Record(entry.getKey(), value);
-            record.setRecordMetaData(meta);
+        // a deleted file has no fresh records, compaction updates the index before deleting it.
+        if (dbInternal.isRecordFresh(entry.getKey(), meta) && currentFile.acquire()) {
+            try {
+                byte[] value = currentFile.readFromFile(
+                    Utils.getValueOffset(entry.getRecordOffset(), entry.getKey()),
+                    Utils.getValueSize(entry.getRecordSize(), entry.getKey()));
+                record = new Record(entry.getKey(), value);
+                record.setRecordMetaData(meta);
+            } finally {
+                currentFile.release();
+            }
         }
         return record;
     }
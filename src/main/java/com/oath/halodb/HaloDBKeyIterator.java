@@ -62,9 +62,10 @@ public class HaloDBKeyIterator implements  Iterator<RecordKey>{
     private boolean moveToNextFile() throws IOException {
         while (outer.hasNext()) {
             int fileId = outer.next();
-            currentFile = dbInternal.getHaloDBFile(fileId);
+            currentFile = dbInternal.acquireHaloDBFile(fileId);
             if (currentFile != null) {
                 try {
+                    // the iterator maps the index file, it can be read after the file has been deleted.
                     inner = currentFile.getIndexFile().newIterator();
                     return true;
                 } catch (ClosedChannelException e) {
@@ -73,6 +74,8 @@ public class HaloDBKeyIterator implements  Iterator<RecordKey>{
                         throw new RuntimeException("DB is closing");
                     }
                     logger.debug("Index file {} closed, probably by compaction thread. Skipping to next one", fileId);
+                } finally {
+                    currentFile.release();
                 }
             }
             logger.debug("Data file {} deleted, probably by compaction thread. Skipping to next one", fileId);
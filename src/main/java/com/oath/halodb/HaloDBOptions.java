@@ -45,6 +45,78 @@ public class HaloDBOptions implements Cloneable {
     // to build in-memory index at db open
     private int buildIndexThreads = 1;
 
+    // Number of putAsync/deleteAsync requests which can be queued
+    // before callers have to wait. Rounded up to a power of two.
+    private int asyncWriteQueueSize = 16 * 1024;
+
+    // Futures returned by putAsync/deleteAsync complete once data is durable to this level.
+    private Durability asyncWriteDurability = Durability.FSYNCED;
+
+    // The async writer applies queued requests as one batch until
+    // the batch holds this many bytes of records.
+    private int asyncWriteBatchSizeBytes = 1024 * 1024;
+
+    // How long the async writer waits for more requests before applying a batch
+    // smaller than asyncWriteBatchSizeBytes. 0 applies whatever is queued right away.
+    private long asyncWriteLingerMicros = 0;
+
+    // If > 0 a background thread fsyncs the current data, index and tombstone files
+    // at this interval, and also once flushDataSizeBytes have been written since the
+    // last sync. Writes then never flush inline. 0 disables the background syncer.
+    private long backgroundSyncIntervalMillis = 0;
+
+    // Data files which are no longer written to are memory mapped and
+    // reads copy from the mapping instead of reading from the file channel.
+    private boolean useMemoryMappedReads = false;
+
+    // Size in bytes of the off-heap cache of values read from data files, 0 disables the cache.
+    // The size includes the memory of the cache's tables. The cache is split into 2 * cores segments,
+    // rounded up to a power of two, and values larger than the share of one segment are not cached.
+    private long valueCacheSize = 0;
+
+    // Threads used to read from several files in parallel, 0 reads on the calling thread.
+    private int numberOfReadThreads = 0;
+
+    // Maximum number of reads waiting for a read thread.
+    private int readQueueSize = 1024;
+
+    // Tell the kernel how data and index files are accessed, so that compaction and
+    // iteration don't evict the pages read by gets. Only has an effect on Linux.
+    private boolean useFileAdvice = false;
+
+    // Values of up to this many bytes are also stored in the in-memory index and read
+    // without any I/O. Every index entry grows by this many bytes plus one. 0 disables it.
+    // Index files don't hold values, so after an open a value is inlined by its first read.
+    private int inlineValueSize = 0;
+
+    // Number of recently read values whose location is recorded. The locations are stored while the
+    // db is open and when it is closed and the values read into the page cache in the background on the next open.
+    // 0 disables it.
+    private int hotReadLogSize = 0;
+
+    // how often the recorded locations are also stored while the db is open, so that the page cache
+    // can be warmed up after an unclean shutdown. 0 stores them only when the db is closed.
+    private long hotReadLogStoreIntervalMillis = 60 * 1000;
+
+    // bytes per second read into the page cache when warming it up.
+    private int pageCacheWarmupRate = 64 * 1024 * 1024;
+
+    // how long a key for which the loader of getOrLoad(key, loader) returned null is remembered,
+    // during which gets of the key return null without calling the loader. 0 disables it.
+    private long loaderMissingKeyExpiryMillis = 0;
+
+    // Write a copy of the in-memory index on close, which the next open loads instead of
+    // scanning all index and tombstone files.
+    private boolean useIndexCheckpoint = false;
+
+    // Map the memory pool of the in-memory index from files in the db directory, which the next
+    // open reuses if the db was closed cleanly. Requires useMemoryPool.
+    private boolean useMappedIndex = false;
+
+    // Store index entries in 11 instead of 20 bytes by dropping the sequence number, which opening
+    // the db then reads from the data files for keys with more than one version.
+    private boolean useCompactIndex = false;
+
     // Just to avoid clients having to deal with CloneNotSupportedException
     public HaloDBOptions clone() {
         try {
@@ -70,6 +142,24 @@ public class HaloDBOptions implements Cloneable {
             .add("fixedKeySize", fixedKeySize)
             .add("memoryPoolChunkSize", memoryPoolChunkSize)
             .add("buildIndexThreads", buildIndexThreads)
+            .add("asyncWriteQueueSize", asyncWriteQueueSize)
+            .add("asyncWriteDurability", asyncWriteDurability)
+            .add("asyncWriteBatchSizeBytes", asyncWriteBatchSizeBytes)
+            .add("asyncWriteLingerMicros", asyncWriteLingerMicros)
+            .add("backgroundSyncIntervalMillis", backgroundSyncIntervalMillis)
+            .add("useMemoryMappedReads", useMemoryMappedReads)
+            .add("valueCacheSize", valueCacheSize)
+            .add("numberOfReadThreads", numberOfReadThreads)
+            .add("readQueueSize", readQueueSize)
+            .add("useFileAdvice", useFileAdvice)
+            .add("inlineValueSize", inlineValueSize)
+            .add("hotReadLogSize", hotReadLogSize)
+            .add("hotReadLogStoreIntervalMillis", hotReadLogStoreIntervalMillis)
+            .add("pageCacheWarmupRate", pageCacheWarmupRate)
+            .add("loaderMissingKeyExpiryMillis", loaderMissingKeyExpiryMillis)
+            .add("useIndexCheckpoint", useIndexCheckpoint)
+            .add("useMappedIndex", useMappedIndex)
+            .add("useCompactIndex", useCompactIndex)
             .toString();
     }
 
@@ -187,6 +277,198 @@ public class HaloDBOptions implements Cloneable {
         this.buildIndexThreads = buildIndexThreads;
     }
 
+    public int getAsyncWriteQueueSize() {
+        return asyncWriteQueueSize;
+    }
+
+    public void setAsyncWriteQueueSize(int asyncWriteQueueSize) {
+        if (asyncWriteQueueSize <= 0 || asyncWriteQueueSize > 1 << 30) {
+            throw new IllegalArgumentException("asyncWriteQueueSize should be > 0 and <= " + (1 << 30));
+        }
+        this.asyncWriteQueueSize = asyncWriteQueueSize;
+    }
+
+    public Durability getAsyncWriteDurability() {
+        return asyncWriteDurability;
+    }
+
+    public void setAsyncWriteDurability(Durability asyncWriteDurability) {
+        if (asyncWriteDurability == null) {
+            throw new IllegalArgumentException("asyncWriteDurability cannot be null");
+        }
+        this.asyncWriteDurability = asyncWriteDurability;
+    }
+
+    public int getAsyncWriteBatchSizeBytes() {
+        return asyncWriteBatchSizeBytes;
+    }
+
+    public void setAsyncWriteBatchSizeBytes(int asyncWriteBatchSizeBytes) {
+        if (asyncWriteBatchSizeBytes <= 0) {
+            throw new IllegalArgumentException("asyncWriteBatchSizeBytes should be > 0");
+        }
+        this.asyncWriteBatchSizeBytes = asyncWriteBatchSizeBytes;
+    }
+
+    public long getAsyncWriteLingerMicros() {
+        return asyncWriteLingerMicros;
+    }
+
+    public void setAsyncWriteLingerMicros(long asyncWriteLingerMicros) {
+        if (asyncWriteLingerMicros < 0) {
+            throw new IllegalArgumentException("asyncWriteLingerMicros should be >= 0");
+        }
+        this.asyncWriteLingerMicros = asyncWriteLingerMicros;
+    }
+
+    public long getBackgroundSyncIntervalMillis() {
+        return backgroundSyncIntervalMillis;
+    }
+
+    public void setBackgroundSyncIntervalMillis(long backgroundSyncIntervalMillis) {
+        if (backgroundSyncIntervalMillis < 0) {
+            throw new IllegalArgumentException("backgroundSyncIntervalMillis should be >= 0");
+        }
+        this.backgroundSyncIntervalMillis = backgroundSyncIntervalMillis;
+    }
+
+    public boolean isUseMemoryMappedReads() {
+        return useMemoryMappedReads;
+    }
+
+    public void setUseMemoryMappedReads(boolean useMemoryMappedReads) {
+        this.useMemoryMappedReads = useMemoryMappedReads;
+    }
+
+    public long getValueCacheSize() {
+        return valueCacheSize;
+    }
+
+    public void setValueCacheSize(long valueCacheSize) {
+        if (valueCacheSize < 0) {
+            throw new IllegalArgumentException("valueCacheSize should be >= 0");
+        }
+        this.valueCacheSize = valueCacheSize;
+    }
+
+    public int getNumberOfReadThreads() {
+        return numberOfReadThreads;
+    }
+
+    public void setNumberOfReadThreads(int numberOfReadThreads) {
+        if (numberOfReadThreads < 0) {
+            throw new IllegalArgumentException("numberOfReadThreads should be >= 0");
+        }
+        this.numberOfReadThreads = numberOfReadThreads;
+    }
+
+    public int getReadQueueSize() {
+        return readQueueSize;
+    }
+
+    public void setReadQueueSize(int readQueueSize) {
+        if (readQueueSize <= 0) {
+            throw new IllegalArgumentException("readQueueSize should be > 0");
+        }
+        this.readQueueSize = readQueueSize;
+    }
+
+    public boolean isUseFileAdvice() {
+        return useFileAdvice;
+    }
+
+    public void setUseFileAdvice(boolean useFileAdvice) {
+        this.useFileAdvice = useFileAdvice;
+    }
+
+    public int getInlineValueSize() {
+        return inlineValueSize;
+    }
+
+    public void setInlineValueSize(int inlineValueSize) {
+        if (inlineValueSize < 0 || inlineValueSize > 1024) {
+            throw new IllegalArgumentException("inlineValueSize should be >= 0 and <= 1024");
+        }
+        this.inlineValueSize = inlineValueSize;
+    }
+
+    public int getHotReadLogSize() {
+        return hotReadLogSize;
+    }
+
+    public void setHotReadLogSize(int hotReadLogSize) {
+        if (hotReadLogSize < 0) {
+            throw new IllegalArgumentException("hotReadLogSize should be >= 0");
+        }
+        this.hotReadLogSize = hotReadLogSize;
+    }
+
+    public long getHotReadLogStoreIntervalMillis() {
+        return hotReadLogStoreIntervalMillis;
+    }
+
+    public void setHotReadLogStoreIntervalMillis(long hotReadLogStoreIntervalMillis) {
+        if (hotReadLogStoreIntervalMillis < 0) {
+            throw new IllegalArgumentException("hotReadLogStoreIntervalMillis should be >= 0");
+        }
+        this.hotReadLogStoreIntervalMillis = hotReadLogStoreIntervalMillis;
+    }
+
+    public int getPageCacheWarmupRate() {
+        return pageCacheWarmupRate;
+    }
+
+    public void setPageCacheWarmupRate(int pageCacheWarmupRate) {
+        if (pageCacheWarmupRate <= 0) {
+            throw new IllegalArgumentException("pageCacheWarmupRate should be > 0");
+        }
+        this.pageCacheWarmupRate = pageCacheWarmupRate;
+    }
+
+    public long getLoaderMissingKeyExpiryMillis() {
+        return loaderMissingKeyExpiryMillis;
+    }
+
+    public void setLoaderMissingKeyExpiryMillis(long loaderMissingKeyExpiryMillis) {
+        if (loaderMissingKeyExpiryMillis < 0) {
+            throw new IllegalArgumentException("loaderMissingKeyExpiryMillis should be >= 0");
+        }
+        this.loaderMissingKeyExpiryMillis = loaderMissingKeyExpiryMillis;
+    }
+
+    public boolean isUseIndexCheckpoint() {
+        return useIndexCheckpoint;
+    }
+
+    public void setUseIndexCheckpoint(boolean useIndexCheckpoint) {
+        this.useIndexCheckpoint = useIndexCheckpoint;
+    }
+
+    public boolean isUseMappedIndex() {
+        return useMappedIndex;
+    }
+
+    public void setUseMappedIndex(boolean useMappedIndex) {
+        this.useMappedIndex = useMappedIndex;
+    }
+
+    public boolean isUseCompactIndex() {
+        return useCompactIndex;
+    }
+
+    public void setUseCompactIndex(boolean useCompactIndex) {
+        this.useCompactIndex = useCompactIndex;
+    }
+
+    boolean isBackgroundSyncEnabled() {
+        return backgroundSyncIntervalMillis > 0;
+    }
+
+    // whether writers flush files themselves once flushDataSizeBytes have been written.
+    boolean isInlineFlushEnabled() {
+        return flushDataSizeBytes != -1 && !isBackgroundSyncEnabled();
+    }
+
     // to be used only in tests.
     private boolean isCompactionDisabled = false;
     
@@ -43,6 +43,17 @@ public class HaloDBStats {
 
     private final boolean isCompactionRunning;
 
+    private final long valueCacheHitCount;
+    private final long valueCacheMissCount;
+    private final long valueCacheEvictionCount;
+    private final long valueCacheSize;
+
+    private final int readQueueDepth;
+    private final long numberOfQueuedReads;
+    private final long numberOfRejectedReads;
+    private final long queuedReadLatencyMeanMicros;
+    private final long queuedReadLatency99thPercentileMicros;
+
     private final HaloDBOptions options;
 
     public HaloDBStats(long statsResetTime, long size, boolean isCompactionRunning, int numberOfFilesPendingCompaction,
@@ -52,7 +63,11 @@ public class HaloDBStats {
                        long numberOfTombstonesFoundDuringOpen, long numberOfTombstonesCleanedUpDuringOpen,
                        long numberOfRecordsCopied, long numberOfRecordsReplaced, long numberOfRecordsScanned,
                        long sizeOfRecordsCopied, long sizeOfFilesDeleted, long sizeReclaimed,
-                       long compactionRateSinceBeginning, HaloDBOptions options) {
+                       long compactionRateSinceBeginning,
+                       long valueCacheHitCount, long valueCacheMissCount, long valueCacheEvictionCount,
+                       long valueCacheSize, int readQueueDepth, long numberOfQueuedReads, long numberOfRejectedReads,
+                       long queuedReadLatencyMeanMicros, long queuedReadLatency99thPercentileMicros,
+                       HaloDBOptions options) {
         this.statsResetTime = statsResetTime;
         this.size = size;
         this.numberOfFilesPendingCompaction = numberOfFilesPendingCompaction;
@@ -73,6 +88,15 @@ public class HaloDBStats {
         this.sizeReclaimed = sizeReclaimed;
         this.compactionRateSinceBeginning = compactionRateSinceBeginning;
         this.isCompactionRunning = isCompactionRunning;
+        this.valueCacheHitCount = valueCacheHitCount;
+        this.valueCacheMissCount = valueCacheMissCount;
+        this.valueCacheEvictionCount = valueCacheEvictionCount;
+        this.valueCacheSize = valueCacheSize;
+        this.readQueueDepth = readQueueDepth;
+        this.numberOfQueuedReads = numberOfQueuedReads;
+        this.numberOfRejectedReads = numberOfRejectedReads;
+        this.queuedReadLatencyMeanMicros = queuedReadLatencyMeanMicros;
+        this.queuedReadLatency99thPercentileMicros = queuedReadLatency99thPercentileMicros;
 
         long intervalTimeInSeconds = (System.currentTimeMillis() - statsResetTime)/1000;
         if (intervalTimeInSeconds > 0) {
@@ -169,6 +193,54 @@ public class HaloDBStats {
         return isCompactionRunning;
     }
 
+    public long getValueCacheHitCount() {
+        return valueCacheHitCount;
+    }
+
+    public long getValueCacheMissCount() {
+        return valueCacheMissCount;
+    }
+
+    public long getValueCacheEvictionCount() {
+        return valueCacheEvictionCount;
+    }
+
+    public long getValueCacheSize() {
+        return valueCacheSize;
+    }
+
+    /**
+     * Number of reads waiting for a read thread.
+     */
+    public int getReadQueueDepth() {
+        return readQueueDepth;
+    }
+
+    /**
+     * Number of reads completed by the read threads.
+     */
+    public long getNumberOfQueuedReads() {
+        return numberOfQueuedReads;
+    }
+
+    /**
+     * Number of reads rejected as the read queue was full.
+     */
+    public long getNumberOfRejectedReads() {
+        return numberOfRejectedReads;
+    }
+
+    /**
+     * Time from queueing a read to its completion, including the time spent in the queue.
+     */
+    public long getQueuedReadLatencyMeanMicros() {
+        return queuedReadLatencyMeanMicros;
+    }
+
+    public long getQueuedReadLatency99thPercentileMicros() {
+        return queuedReadLatency99thPercentileMicros;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper("")
@@ -194,6 +266,15 @@ public class HaloDBStats {
             .add("segmentStats", Arrays.toString(segmentStats))
             .add("numberOfSegments", numberOfSegments)
             .add("staleDataPercentPerFile", staleDataMapToString())
+            .add("valueCacheHitCount", valueCacheHitCount)
+            .add("valueCacheMissCount", valueCacheMissCount)
+            .add("valueCacheEvictionCount", valueCacheEvictionCount)
+            .add("valueCacheSize", valueCacheSize)
+            .add("readQueueDepth", readQueueDepth)
+            .add("numberOfQueuedReads", numberOfQueuedReads)
+            .add("numberOfRejectedReads", numberOfRejectedReads)
+            .add("queuedReadLatencyMeanMicros", queuedReadLatencyMeanMicros)
+            .add("queuedReadLatency99thPercentileMicros", queuedReadLatency99thPercentileMicros)
             .toString();
     }
 
@@ -221,6 +302,15 @@ public class HaloDBStats {
         map.put("segmentStats", String.valueOf(Arrays.toString(segmentStats)));
         map.put("numberOfSegments", String.valueOf(numberOfSegments));
         map.put("staleDataPercentPerFile", String.valueOf(staleDataMapToString()));
+        map.put("valueCacheHitCount", String.valueOf(valueCacheHitCount));
+        map.put("valueCacheMissCount", String.valueOf(valueCacheMissCount));
+        map.put("valueCacheEvictionCount", String.valueOf(valueCacheEvictionCount));
+        map.put("valueCacheSize", String.valueOf(valueCacheSize));
+        map.put("readQueueDepth", String.valueOf(readQueueDepth));
+        map.put("numberOfQueuedReads", String.valueOf(numberOfQueuedReads));
+        map.put("numberOfRejectedReads", String.valueOf(numberOfRejectedReads));
+        map.put("queuedReadLatencyMeanMicros", String.valueOf(queuedReadLatencyMeanMicros));
+        map.put("queuedReadLatency99thPercentileMicros", String.valueOf(queuedReadLatency99thPercentileMicros));
 
         return map;
     }
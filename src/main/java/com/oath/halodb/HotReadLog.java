@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Samples the locations of values read from data files into a ring of fixed size. The most recently
+ * read ones are stored in HOT_READS_FILE_NAME every hotReadLogStoreIntervalMillis by a background
+ * thread and when the db is closed, and read into the page cache again by {@link PageCacheWarmer}
+ * when it is opened. After an unclean shutdown the reads stored last are used.
+ *
+ * Entries are written without locking and concurrent reads can tear an entry, which at worst
+ * warms the wrong range.
+ */
+class HotReadLog {
+    private static final Logger logger = LoggerFactory.getLogger(HotReadLog.class);
+
+    static final String HOT_READS_FILE_NAME = "HOT_READS";
+
+    // one in this many reads is recorded.
+    private static final int sampleRate = 8;
+
+    /**
+     * checksum          - 4 bytes.
+     * number of entries - 4 bytes.
+     * entries           - file id, value offset and value size, 4 bytes each.
+     */
+    private static final int HEADER_SIZE = 4 + 4;
+    private static final int ENTRY_SIZE = 4 + 4 + 4;
+
+    // file id in the high and value offset in the low 32 bits.
+    private final long[] locations;
+    private final int[] sizes;
+    private final AtomicInteger next = new AtomicInteger(0);
+
+    private Thread storeThread;
+    private volatile boolean isRunning = false;
+
+    HotReadLog(int size) {
+        this.locations = new long[size];
+        this.sizes = new int[size];
+    }
+
+    /**
+     * Starts a background thread storing the ring to the db directory every interval. 0 disables it.
+     */
+    void start(DBDirectory dbDirectory, long storeIntervalMillis) {
+        if (storeIntervalMillis == 0) {
+            return;
+        }
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(storeIntervalMillis);
+        storeThread = new Thread(() -> {
+            while (isRunning) {
+                LockSupport.parkNanos(this, intervalNanos);
+                if (!isRunning) {
+                    break;
+                }
+                try {
+                    storeToFile(dbDirectory);
+                } catch (IOException e) {
+                    // only used to warm up the page cache, will retry.
+                    logger.error("Error while storing recently read values", e);
+                }
+            }
+        }, "HotReadLogThread");
+        storeThread.setDaemon(true);
+        isRunning = true;
+        storeThread.start();
+    }
+
+    /**
+     * Stops the background thread and stores the ring a last time.
+     */
+    void close(DBDirectory dbDirectory) throws IOException {
+        if (storeThread != null) {
+            isRunning = false;
+            LockSupport.unpark(storeThread);
+            try {
+                storeThread.join();
+            } catch (InterruptedException e) {
+                logger.error("Interrupted while waiting for the hot read log thread to stop", e);
+                Thread.currentThread().interrupt();
+            }
+        }
+        storeToFile(dbDirectory);
+    }
+
+    void record(int fileId, int valueOffset, int valueSize) {
+        if (valueSize == 0 || ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        int index = (next.getAndIncrement() & Integer.MAX_VALUE) % locations.length;
+        locations[index] = ((long) fileId << 32) | (valueOffset & 0xFFFFFFFFL);
+        sizes[index] = valueSize;
+    }
+
+    /**
+     * Distinct reads currently in the ring.
+     */
+    List<HotRead> getHotReads() {
+        Set<HotRead> reads = new LinkedHashSet<>();
+        for (int i = 0; i < locations.length; i++) {
+            if (sizes[i] != 0) {
+                reads.add(new HotRead((int) (locations[i] >>> 32), (int) locations[i], sizes[i]));
+            }
+        }
+        return new ArrayList<>(reads);
+    }
+
+    void storeToFile(DBDirectory dbDirectory) throws IOException {
+        List<HotRead> reads = getHotReads();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + reads.size() * ENTRY_SIZE);
+        buffer.position(4);
+        buffer.putInt(reads.size());
+        for (HotRead read : reads) {
+            buffer.putInt(read.fileId);
+            buffer.putInt(read.valueOffset);
+            buffer.putInt(read.valueSize);
+        }
+        buffer.putInt(0, (int) computeCheckSum(buffer.array()));
+        buffer.flip();
+
+        // only a hint, not synced to disk.
+        Path tempFile = dbDirectory.getPath().resolve(HOT_READS_FILE_NAME + ".temp");
+        Files.deleteIfExists(tempFile);
+        try (FileChannel channel = FileChannel.open(tempFile, WRITE, CREATE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(tempFile, dbDirectory.getPath().resolve(HOT_READS_FILE_NAME), REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the reads stored last, when the db was closed or periodically before it, or an empty
+     * list if there is no file or it is corrupted.
+     */
+    static List<HotRead> loadFromFile(DBDirectory dbDirectory) throws IOException {
+        Path file = dbDirectory.getPath().resolve(HOT_READS_FILE_NAME);
+        if (!Files.exists(file)) {
+            return Collections.emptyList();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != (int) computeCheckSum(buffer.array())) {
+            logger.warn("Ignoring corrupted file {}", HOT_READS_FILE_NAME);
+            return Collections.emptyList();
+        }
+
+        buffer.position(4);
+        int count = buffer.getInt();
+        List<HotRead> reads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            reads.add(new HotRead(buffer.getInt(), buffer.getInt(), buffer.getInt()));
+        }
+        return reads;
+    }
+
+    private static long computeCheckSum(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, 4, data.length - 4);
+        return crc32.getValue();
+    }
+
+    static class HotRead {
+        final int fileId;
+        final int valueOffset;
+        final int valueSize;
+
+        HotRead(int fileId, int valueOffset, int valueSize) {
+            this.fileId = fileId;
+            this.valueOffset = valueOffset;
+            this.valueSize = valueSize;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof HotRead)) {
+                return false;
+            }
+            HotRead that = (HotRead) obj;
+            return fileId == that.fileId && valueOffset == that.valueOffset && valueSize == that.valueSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileId, valueOffset, valueSize);
+        }
+    }
+}
@@ -11,6 +11,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 /**
  * Hash table stored in native memory, outside Java heap.
@@ -24,19 +28,41 @@ class InMemoryIndex {
     private final int maxSizeOfEachSegment;
 
     InMemoryIndex(int numberOfKeys, boolean useMemoryPool, int fixedKeySize, int memoryPoolChunkSize) {
+        this(numberOfKeys, useMemoryPool, fixedKeySize, memoryPoolChunkSize, 0);
+    }
+
+    InMemoryIndex(int numberOfKeys, boolean useMemoryPool, int fixedKeySize, int memoryPoolChunkSize, int inlineValueSize) {
+        this(numberOfKeys, useMemoryPool, fixedKeySize, memoryPoolChunkSize, inlineValueSize, null, null);
+    }
+
+    /**
+     * If fileSlots is not null entries use the compact encoding of {@link InMemoryIndexMetaData}. If mappedIndex
+     * is not null the index uses the memory pool and maps it from the files of the mapped index.
+     */
+    InMemoryIndex(int numberOfKeys, boolean useMemoryPool, int fixedKeySize, int memoryPoolChunkSize, int inlineValueSize,
+                  FileSlots fileSlots, MappedIndex mappedIndex) {
         noOfSegments = Ints.checkedCast(Utils.roundUpToPowerOf2(Runtime.getRuntime().availableProcessors() * 2));
         maxSizeOfEachSegment = Ints.checkedCast(Utils.roundUpToPowerOf2(numberOfKeys / noOfSegments));
         long start = System.currentTimeMillis();
         OffHeapHashTableBuilder<InMemoryIndexMetaData> builder =
             OffHeapHashTableBuilder.<InMemoryIndexMetaData>newBuilder()
-                .valueSerializer(new InMemoryIndexMetaDataSerializer())
+                .valueSerializer(new InMemoryIndexMetaDataSerializer(inlineValueSize, fileSlots))
                 .segmentCount(noOfSegments)
                 .hashTableSize(maxSizeOfEachSegment)
-                .fixedValueSize(InMemoryIndexMetaData.SERIALIZED_SIZE)
+                .fixedValueSize(InMemoryIndexMetaData.serializedSize(inlineValueSize, fileSlots != null))
                 .loadFactor(1);
 
         if (useMemoryPool) {
             builder.useMemoryPool(true).fixedKeySize(fixedKeySize).memoryPoolChunkSize(memoryPoolChunkSize);
+            if (mappedIndex != null) {
+                try {
+                    mappedIndex.createSegments(noOfSegments, fixedKeySize, InMemoryIndexMetaData.serializedSize(inlineValueSize, fileSlots != null),
+                                               inlineValueSize, memoryPoolChunkSize, fileSlots);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                builder.mappedIndex(mappedIndex);
+            }
         }
 
         this.offHeapHashTable = builder.build();
@@ -48,6 +74,18 @@ class InMemoryIndex {
         return offHeapHashTable.put(key, metaData);
     }
 
+    InMemoryIndexMetaData getAndPut(byte[] key, InMemoryIndexMetaData metaData) {
+        return offHeapHashTable.getAndPut(key, metaData);
+    }
+
+    InMemoryIndexMetaData getAndRemove(byte[] key) {
+        return offHeapHashTable.getAndRemove(key);
+    }
+
+    InMemoryIndexMetaData getAndUpdate(byte[] key, UnaryOperator<InMemoryIndexMetaData> updateFunction) {
+        return offHeapHashTable.getAndUpdate(key, updateFunction);
+    }
+
     boolean putIfAbsent(byte[] key, InMemoryIndexMetaData metaData) {
         return offHeapHashTable.putIfAbsent(key, metaData);
     }
@@ -68,6 +106,17 @@ class InMemoryIndex {
         return offHeapHashTable.containsKey(key);
     }
 
+    /**
+     * See {@link OffHeapHashTable#forEach(BiConsumer)}.
+     */
+    void forEach(BiConsumer<ByteBuffer, InMemoryIndexMetaData> consumer) {
+        offHeapHashTable.forEach(consumer);
+    }
+
+    void clear() {
+        offHeapHashTable.clear();
+    }
+
     void close() {
         try {
             offHeapHashTable.close();
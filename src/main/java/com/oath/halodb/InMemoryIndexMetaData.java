@@ -9,7 +9,12 @@ package com.oath.halodb;
 import java.nio.ByteBuffer;
 
 /**
- * Metadata stored in the in-memory index for each key.
+ * Metadata stored in the in-memory index for each key. If values are inlined, small values are also
+ * stored in the index, see {@link HaloDBOptions#setInlineValueSize(int)}.
+ *
+ * The compact encoding, see {@link HaloDBOptions#setUseCompactIndex(boolean)}, stores the 3 byte slot
+ * of the file, see {@link FileSlots}, instead of its id and doesn't store the sequence number, which is
+ * read from the record header in the data file when needed.
  */
 class InMemoryIndexMetaData {
 
@@ -18,30 +23,119 @@ class InMemoryIndexMetaData {
     private final int valueSize;
     private final long sequenceNumber;
 
+    // null if the value is not stored in the index.
+    private final byte[] inlineValue;
+
     static final int SERIALIZED_SIZE = 4 + 4 + 4 + 8;
+    static final int COMPACT_SERIALIZED_SIZE = 3 + 4 + 4;
+
+    // sequence number of entries decoded from the compact encoding.
+    static final long UNKNOWN_SEQUENCE_NUMBER = -1;
 
     InMemoryIndexMetaData(int fileId, int valueOffset, int valueSize, long sequenceNumber) {
+        this(fileId, valueOffset, valueSize, sequenceNumber, null);
+    }
+
+    InMemoryIndexMetaData(int fileId, int valueOffset, int valueSize, long sequenceNumber, byte[] inlineValue) {
         this.fileId = fileId;
         this.valueOffset = valueOffset;
         this.valueSize = valueSize;
         this.sequenceNumber = sequenceNumber;
+        this.inlineValue = inlineValue;
+    }
+
+    /**
+     * Size of the entry in the index. With inlined values each entry has a flag and room for a
+     * value of inlineValueSize bytes, whether or not it holds one.
+     */
+    static int serializedSize(int inlineValueSize) {
+        return serializedSize(inlineValueSize, false);
+    }
+
+    static int serializedSize(int inlineValueSize, boolean compact) {
+        int size = compact ? COMPACT_SERIALIZED_SIZE : SERIALIZED_SIZE;
+        return inlineValueSize == 0 ? size : size + 1 + inlineValueSize;
     }
 
     void serialize(ByteBuffer byteBuffer) {
-        byteBuffer.putInt(getFileId());
-        byteBuffer.putInt(getValueOffset());
-        byteBuffer.putInt(getValueSize());
-        byteBuffer.putLong(getSequenceNumber());
+        serialize(byteBuffer, 0);
+    }
+
+    void serialize(ByteBuffer byteBuffer, int inlineValueSize) {
+        serialize(byteBuffer, inlineValueSize, null);
+    }
+
+    /**
+     * Uses the compact encoding if fileSlots is not null.
+     */
+    void serialize(ByteBuffer byteBuffer, int inlineValueSize, FileSlots fileSlots) {
+        if (fileSlots != null) {
+            int slot = fileSlots.slotOf(fileId);
+            byteBuffer.put((byte) (slot >>> 16));
+            byteBuffer.putShort((short) slot);
+            byteBuffer.putInt(getValueOffset());
+            byteBuffer.putInt(getValueSize());
+        } else {
+            byteBuffer.putInt(getFileId());
+            byteBuffer.putInt(getValueOffset());
+            byteBuffer.putInt(getValueSize());
+            byteBuffer.putLong(getSequenceNumber());
+        }
+        if (inlineValueSize > 0) {
+            // segments compare serialized entries byte by byte, the unused space is zeroed.
+            int padding = inlineValueSize;
+            if (inlineValue != null) {
+                byteBuffer.put((byte) 1);
+                byteBuffer.put(inlineValue);
+                padding -= inlineValue.length;
+            } else {
+                byteBuffer.put((byte) 0);
+            }
+            for (int i = 0; i < padding; i++) {
+                byteBuffer.put((byte) 0);
+            }
+        }
         byteBuffer.flip();
     }
 
     static InMemoryIndexMetaData deserialize(ByteBuffer byteBuffer) {
-        int fileId = byteBuffer.getInt();
+        return deserialize(byteBuffer, 0);
+    }
+
+    static InMemoryIndexMetaData deserialize(ByteBuffer byteBuffer, int inlineValueSize) {
+        return deserialize(byteBuffer, inlineValueSize, null);
+    }
+
+    static InMemoryIndexMetaData deserialize(ByteBuffer byteBuffer, int inlineValueSize, FileSlots fileSlots) {
+        int fileId = fileSlots != null
+                     ? fileSlots.fileIdOf((byteBuffer.get() & 0xFF) << 16 | (byteBuffer.getShort() & 0xFFFF))
+                     : byteBuffer.getInt();
         int offset = byteBuffer.getInt();
         int size = byteBuffer.getInt();
-        long sequenceNumber = byteBuffer.getLong();
+        long sequenceNumber = fileSlots != null ? UNKNOWN_SEQUENCE_NUMBER : byteBuffer.getLong();
+
+        byte[] inlineValue = null;
+        if (inlineValueSize > 0 && byteBuffer.get() == 1) {
+            inlineValue = new byte[size];
+            byteBuffer.get(inlineValue);
+        }
+
+        return new InMemoryIndexMetaData(fileId, offset, size, sequenceNumber, inlineValue);
+    }
+
+    InMemoryIndexMetaData withSequenceNumber(long sequenceNumber) {
+        return new InMemoryIndexMetaData(fileId, valueOffset, valueSize, sequenceNumber, inlineValue);
+    }
+
+    /**
+     * Returns the value if it is stored in the index, null otherwise.
+     */
+    byte[] getInlineValue() {
+        return inlineValue;
+    }
 
-        return new InMemoryIndexMetaData(fileId, offset, size, sequenceNumber);
+    boolean hasInlineValue() {
+        return inlineValue != null;
     }
 
     int getFileId() {
@@ -9,16 +9,33 @@ import java.nio.ByteBuffer;
 
 class InMemoryIndexMetaDataSerializer implements HashTableValueSerializer<InMemoryIndexMetaData> {
 
+    private final int inlineValueSize;
+    // null unless entries use the compact encoding.
+    private final FileSlots fileSlots;
+
+    InMemoryIndexMetaDataSerializer() {
+        this(0);
+    }
+
+    InMemoryIndexMetaDataSerializer(int inlineValueSize) {
+        this(inlineValueSize, null);
+    }
+
+    InMemoryIndexMetaDataSerializer(int inlineValueSize, FileSlots fileSlots) {
+        this.inlineValueSize = inlineValueSize;
+        this.fileSlots = fileSlots;
+    }
+
     public void serialize(InMemoryIndexMetaData recordMetaData, ByteBuffer byteBuffer) {
-        recordMetaData.serialize(byteBuffer);
+        recordMetaData.serialize(byteBuffer, inlineValueSize, fileSlots);
         byteBuffer.flip();
     }
 
     public InMemoryIndexMetaData deserialize(ByteBuffer byteBuffer) {
-        return InMemoryIndexMetaData.deserialize(byteBuffer);
+        return InMemoryIndexMetaData.deserialize(byteBuffer, inlineValueSize, fileSlots);
     }
 
     public int serializedSize(InMemoryIndexMetaData recordMetaData) {
-        return InMemoryIndexMetaData.SERIALIZED_SIZE;
+        return InMemoryIndexMetaData.serializedSize(inlineValueSize, fileSlots != null);
     }
 }
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Copy of the in-memory index written when the db is closed, so that the next open loads the index
+ * from a single file instead of scanning every index and tombstone file.
+ *
+ * The checkpoint records the size of every index and tombstone file at the time it was written. It is
+ * only used if the files are unchanged when the db is opened, and the db deletes it once opened, as
+ * any write afterwards makes it stale.
+ */
+class IndexCheckpoint {
+    private static final Logger logger = LoggerFactory.getLogger(IndexCheckpoint.class);
+
+    static final String CHECKPOINT_FILE_NAME = "INDEX_CHECKPOINT";
+
+    /**
+     * version              - 4 bytes.
+     * inline value size    - 4 bytes.
+     * max sequence number  - 8 bytes.
+     * number of files      - 4 bytes, then the name and size of each index and tombstone file.
+     * entries              - each preceded by a 1, followed by a 0.
+     * number of entries    - 8 bytes.
+     * checksum             - 8 bytes, CRC32 of everything before it.
+     *
+     * entry                - key length, key, file id, value offset, value size, sequence number and,
+     *                        if inlineValueSize > 0, a flag followed by the inline value.
+     */
+    private static final int checkpointVersion = 1;
+
+    // entries are put into the index by the build index threads in batches of this size.
+    private static final int loadBatchSize = 4096;
+
+    private static final int bufferSize = 1024 * 1024;
+
+    private final long maxSequenceNumber;
+    private final Map<Integer, Long> liveDataPerFile;
+
+    private IndexCheckpoint(long maxSequenceNumber, Map<Integer, Long> liveDataPerFile) {
+        this.maxSequenceNumber = maxSequenceNumber;
+        this.liveDataPerFile = liveDataPerFile;
+    }
+
+    long getMaxSequenceNumber() {
+        return maxSequenceNumber;
+    }
+
+    /**
+     * Size of the records in each file which the index points to.
+     */
+    Map<Integer, Long> getLiveDataPerFile() {
+        return liveDataPerFile;
+    }
+
+    /**
+     * Must be called once all files have been closed.
+     */
+    static void write(DBDirectory dbDirectory, InMemoryIndex index, long maxSequenceNumber, int inlineValueSize) throws IOException {
+        long start = System.currentTimeMillis();
+        Path tempFile = dbDirectory.getPath().resolve(CHECKPOINT_FILE_NAME + ".temp");
+        CRC32 crc32 = new CRC32();
+        long count;
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fileOut, crc32), bufferSize))) {
+            out.writeInt(checkpointVersion);
+            out.writeInt(inlineValueSize);
+            out.writeLong(maxSequenceNumber);
+
+            SortedMap<String, Long> files = listFiles(dbDirectory);
+            out.writeInt(files.size());
+            for (Map.Entry<String, Long> file : files.entrySet()) {
+                out.writeUTF(file.getKey());
+                out.writeLong(file.getValue());
+            }
+
+            count = writeEntries(out, index, inlineValueSize);
+            out.writeByte(0);
+            out.writeLong(count);
+            out.flush();
+            out.writeLong(crc32.getValue());
+            out.flush();
+            fileOut.getFD().sync();
+        }
+
+        Files.move(tempFile, dbDirectory.getPath().resolve(CHECKPOINT_FILE_NAME), REPLACE_EXISTING, ATOMIC_MOVE);
+        dbDirectory.syncMetaData();
+        logger.info("Wrote index checkpoint of {} entries in {} ms", count, System.currentTimeMillis() - start);
+    }
+
+    private static long writeEntries(DataOutputStream out, InMemoryIndex index, int inlineValueSize) throws IOException {
+        long[] count = {0};
+        byte[] key = new byte[Byte.MAX_VALUE];
+        try {
+            index.forEach((keyBuffer, metaData) -> {
+                try {
+                    int keyLength = keyBuffer.remaining();
+                    keyBuffer.get(key, 0, keyLength);
+                    out.writeByte(1);
+                    out.writeByte(keyLength);
+                    out.write(key, 0, keyLength);
+                    out.writeInt(metaData.getFileId());
+                    out.writeInt(metaData.getValueOffset());
+                    out.writeInt(metaData.getValueSize());
+                    out.writeLong(metaData.getSequenceNumber());
+                    if (inlineValueSize > 0) {
+                        out.writeBoolean(metaData.hasInlineValue());
+                        if (metaData.hasInlineValue()) {
+                            out.write(metaData.getInlineValue());
+                        }
+                    }
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count[0];
+    }
+
+    /**
+     * Puts the entries of the checkpoint into the empty index. Returns null, leaving the index empty, if
+     * there is no checkpoint, or it is corrupted or doesn't match the files in the db directory.
+     */
+    static IndexCheckpoint load(DBDirectory dbDirectory, InMemoryIndex index, int inlineValueSize, ExecutorService executor, int maxPendingBatches) throws IOException {
+        Path file = dbDirectory.getPath().resolve(CHECKPOINT_FILE_NAME);
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+        // verified before loading anything, reading the file twice is cheaper than clearing a large index.
+        if (!isChecksumValid(file)) {
+            logger.warn("Ignoring corrupted index checkpoint");
+            return null;
+        }
+
+        Map<Integer, Long> liveDataPerFile = new ConcurrentHashMap<>();
+        List<Future<?>> pendingBatches = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), bufferSize))) {
+            if (in.readInt() != checkpointVersion) {
+                logger.info("Ignoring index checkpoint of a different version");
+                return null;
+            }
+            if (in.readInt() != inlineValueSize) {
+                logger.info("Ignoring index checkpoint written with a different inline value size");
+                return null;
+            }
+            long maxSequenceNumber = in.readLong();
+
+            SortedMap<String, Long> files = new TreeMap<>();
+            int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                files.put(in.readUTF(), in.readLong());
+            }
+            if (!files.equals(listFiles(dbDirectory))) {
+                logger.info("Ignoring index checkpoint as files have changed since it was written");
+                return null;
+            }
+
+            long count = 0;
+            List<byte[]> keys = new ArrayList<>(loadBatchSize);
+            List<InMemoryIndexMetaData> entries = new ArrayList<>(loadBatchSize);
+            while (in.readByte() == 1) {
+                byte[] key = new byte[in.readByte()];
+                in.readFully(key);
+                int fileId = in.readInt();
+                int valueOffset = in.readInt();
+                int valueSize = in.readInt();
+                long sequenceNumber = in.readLong();
+                byte[] inlineValue = null;
+                if (inlineValueSize > 0 && in.readBoolean()) {
+                    inlineValue = new byte[valueSize];
+                    in.readFully(inlineValue);
+                }
+                keys.add(key);
+                entries.add(new InMemoryIndexMetaData(fileId, valueOffset, valueSize, sequenceNumber, inlineValue));
+                count++;
+
+                if (keys.size() == loadBatchSize) {
+                    submitBatch(index, keys, entries, liveDataPerFile, executor, pendingBatches);
+                    awaitBatches(pendingBatches, maxPendingBatches);
+                    keys = new ArrayList<>(loadBatchSize);
+                    entries = new ArrayList<>(loadBatchSize);
+                }
+            }
+            submitBatch(index, keys, entries, liveDataPerFile, executor, pendingBatches);
+            awaitBatches(pendingBatches, 0);
+
+            if (in.readLong() != count) {
+                throw new IOException("Expected " + count + " entries");
+            }
+
+            logger.info("Loaded {} entries from index checkpoint in {} ms", count, System.currentTimeMillis() - start);
+            return new IndexCheckpoint(maxSequenceNumber, liveDataPerFile);
+        } catch (IOException e) {
+            logger.warn("Ignoring index checkpoint which could not be loaded", e);
+            try {
+                awaitBatches(pendingBatches, 0);
+            } catch (IOException ignored) {
+                // the index is cleared either way.
+            }
+            index.clear();
+            return null;
+        }
+    }
+
+    private static boolean isChecksumValid(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long end = channel.size() - 8;
+            if (end < 0) {
+                return false;
+            }
+
+            CRC32 crc32 = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+            long position = 0;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(bufferSize, end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    return false;
+                }
+                buffer.flip();
+                crc32.update(buffer);
+                position += read;
+            }
+
+            ByteBuffer checksum = ByteBuffer.allocate(8);
+            while (checksum.hasRemaining()) {
+                if (channel.read(checksum, end + checksum.position()) < 0) {
+                    return false;
+                }
+            }
+            return checksum.getLong(0) == crc32.getValue();
+        }
+    }
+
+    static void delete(DBDirectory dbDirectory) throws IOException {
+        Files.deleteIfExists(dbDirectory.getPath().resolve(CHECKPOINT_FILE_NAME));
+    }
+
+    private static void submitBatch(InMemoryIndex index, List<byte[]> keys, List<InMemoryIndexMetaData> entries,
+                                    Map<Integer, Long> liveDataPerFile, ExecutorService executor, List<Future<?>> pendingBatches) {
+        pendingBatches.add(executor.submit(() -> {
+            Map<Integer, Long> liveData = new HashMap<>();
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] key = keys.get(i);
+                InMemoryIndexMetaData metaData = entries.get(i);
+                index.put(key, metaData);
+                liveData.merge(metaData.getFileId(), (long) Utils.getRecordSize(key.length, metaData.getValueSize()), Long::sum);
+            }
+            liveData.forEach((fileId, size) -> liveDataPerFile.merge(fileId, size, Long::sum));
+        }));
+    }
+
+    // waits until at most maxPendingBatches batches are pending.
+    private static void awaitBatches(List<Future<?>> pendingBatches, int maxPendingBatches) throws IOException {
+        while (pendingBatches.size() > maxPendingBatches) {
+            try {
+                pendingBatches.remove(0).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Loading index checkpoint is interrupted");
+            } catch (ExecutionException e) {
+                throw new IOException("Error while loading index checkpoint", e.getCause());
+            }
+        }
+    }
+
+    static SortedMap<String, Long> listFiles(DBDirectory dbDirectory) throws IOException {
+        SortedMap<String, Long> files = new TreeMap<>();
+        for (int fileId : dbDirectory.listIndexFiles()) {
+            String name = fileId + IndexFile.INDEX_FILE_NAME;
+            files.put(name, Files.size(dbDirectory.getPath().resolve(name)));
+        }
+        for (File file : dbDirectory.listTombstoneFiles()) {
+            files.put(file.getName(), file.length());
+        }
+        return files;
+    }
+}
@@ -13,9 +13,14 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 
 class IndexFile {
@@ -31,6 +36,11 @@ class IndexFile {
 
     private long unFlushedData = 0;
 
+    // entries are accumulated here and written to the file in large chunks.
+    // The index file can be rebuilt from the data file, so entries lost in a crash can be recovered.
+    private ByteBuffer writeBuffer;
+    static final int writeBufferSize = 64 * 1024;
+
     static final String INDEX_FILE_NAME = ".index";
     private static final String nullMessage = "Index file entry cannot be null";
 
@@ -48,6 +58,23 @@ class IndexFile {
         channel = new RandomAccessFile(backingFile, "rw").getChannel();
     }
 
+    void createNext() throws IOException {
+        backingFile = getNextIndexFile();
+        if (!backingFile.createNewFile()) {
+            throw new IOException("Index file with id " + fileId + " already exists");
+        }
+        channel = new RandomAccessFile(backingFile, "rw").getChannel();
+    }
+
+    /**
+     * Renames an index file created with {@link #createNext()} to the name of an index file.
+     */
+    void takeIntoUse() throws IOException {
+        File file = getIndexFile();
+        Files.move(backingFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        backingFile = file;
+    }
+
     void createRepairFile() throws IOException {
         backingFile = getRepairFile();
         while (!backingFile.createNewFile()) {
@@ -60,47 +87,158 @@ class IndexFile {
     void open() throws IOException {
         backingFile = getIndexFile();
         channel = new RandomAccessFile(backingFile, "rw").getChannel();
+        // entries, if any, are appended.
+        channel.position(channel.size());
+    }
+
+    /**
+     * If file advice is enabled, starts reading the file into the page cache ahead of a scan.
+     */
+    void adviseWillNeed() {
+        if (options.isUseFileAdvice() && channel != null) {
+            FileAdvisor.advise(channel, 0, 0, FileAdvisor.Advice.WILLNEED);
+        }
     }
 
-    void close() throws IOException {
+    synchronized void close() throws IOException {
         if (channel != null) {
+            if (channel.isOpen()) {
+                flush();
+            }
             channel.close();
         }
+        writeBuffer = null;
     }
 
-    void delete() throws IOException {
+    synchronized void delete() throws IOException {
+        writeBuffer = null;
         if (channel != null && channel.isOpen())
             channel.close();
 
-        getIndexFile().delete();
+        (backingFile != null ? backingFile : getIndexFile()).delete();
     }
 
     void write(IndexFileEntry entry) throws IOException {
         Objects.requireNonNull(entry, nullMessage);
 
-        ByteBuffer[] contents = entry.serialize();
-        long toWrite = 0;
-        for (ByteBuffer buffer : contents) {
-            toWrite += buffer.remaining();
+        write(Collections.singletonList(entry));
+    }
+
+    /**
+     * Appends the entries to the write buffer, which is written to the file once it is full.
+     * Entries are therefore not in the file until the buffer is written by {@link #flush()},
+     * {@link #flushToDisk()} or {@link #close()}.
+     */
+    void write(List<IndexFileEntry> entries) throws IOException {
+        int size = 0;
+        for (IndexFileEntry entry : entries) {
+            size += Objects.requireNonNull(entry, nullMessage).size();
         }
+
+        // data file writers append entries concurrently.
+        synchronized (this) {
+            if (size > writeBufferSize) {
+                flush();
+                ByteBuffer buffer = WriteBuffer.get(size);
+                for (IndexFileEntry entry : entries) {
+                    entry.serialize(buffer);
+                }
+                buffer.flip();
+                writeToChannel(buffer);
+                return;
+            }
+
+            if (writeBuffer == null) {
+                writeBuffer = ByteBuffer.allocateDirect(writeBufferSize);
+            }
+            if (writeBuffer.remaining() < size) {
+                flush();
+            }
+            for (IndexFileEntry entry : entries) {
+                entry.serialize(writeBuffer);
+            }
+        }
+    }
+
+    /**
+     * Writes buffered entries to the file.
+     */
+    synchronized void flush() throws IOException {
+        if (writeBuffer == null || writeBuffer.position() == 0) {
+            return;
+        }
+
+        writeBuffer.flip();
+        writeToChannel(writeBuffer);
+        writeBuffer.clear();
+    }
+
+    /**
+     * Writes buffered entries to the file and frees the buffer. To be called once no more entries
+     * will be written to the file.
+     */
+    synchronized void releaseWriteBuffer() throws IOException {
+        flush();
+        writeBuffer = null;
+    }
+
+    private void writeToChannel(ByteBuffer buffer) throws IOException {
         long written = 0;
-        while (written < toWrite) {
-            written += channel.write(contents);
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
         }
 
         unFlushedData += written;
-        if (options.getFlushDataSizeBytes() != -1 && unFlushedData > options.getFlushDataSizeBytes()) {
+        if (options.isInlineFlushEnabled() && unFlushedData > options.getFlushDataSizeBytes()) {
             channel.force(false);
             unFlushedData = 0;
         }
     }
 
-    void flushToDisk() throws IOException {
-        if (channel != null && channel.isOpen())
+    synchronized void flushToDisk() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            flush();
             channel.force(true);
+        }
     }
 
+    /**
+     * Truncates the file after the last entry which is complete and has a valid checksum.
+     * Returns the records which have an entry, sorted by offset, each as its offset in the upper
+     * and its size in the lower 32 bits.
+     */
+    synchronized long[] truncateAfterLastValidEntry() throws IOException {
+        flush();
+        long size = channel.size();
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        long[] indexedRecords = new long[1024];
+        int count = 0;
+        while (true) {
+            int position = buffer.position();
+            IndexFileEntry entry = IndexFileEntry.deserializeIfNotCorrupted(buffer);
+            if (entry == null) {
+                if (position < size) {
+                    logger.info("Truncating index file {} with size {} to {}", getPath().getFileName(), size, position);
+                    channel.truncate(position);
+                    channel.position(position);
+                }
+                // concurrent writers append entries in the order in which they complete, not in offset order.
+                indexedRecords = Arrays.copyOf(indexedRecords, count);
+                Arrays.sort(indexedRecords);
+                return indexedRecords;
+            }
+            if (count == indexedRecords.length) {
+                indexedRecords = Arrays.copyOf(indexedRecords, count * 2);
+            }
+            indexedRecords[count++] = (long) entry.getRecordOffset() << 32 | entry.getRecordSize();
+        }
+    }
+
+    /**
+     * Buffered entries are written to the file first so that the iterator sees all the entries.
+     */
     IndexFileIterator newIterator() throws IOException {
+        flush();
         return new IndexFileIterator();
     }
 
@@ -112,6 +250,10 @@ class IndexFile {
         return dbDirectory.getPath().resolve(fileId + INDEX_FILE_NAME).toFile();
     }
 
+    private File getNextIndexFile() {
+        return dbDirectory.getPath().resolve(fileId + INDEX_FILE_NAME + HaloDBFile.NEXT_FILE_SUFFIX).toFile();
+    }
+
     private File getRepairFile() {
         return dbDirectory.getPath().resolve(fileId + INDEX_FILE_NAME + ".repair").toFile();
     }
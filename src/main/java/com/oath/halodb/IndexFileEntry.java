@@ -66,6 +66,23 @@ class IndexFileEntry {
         return new ByteBuffer[] { h, ByteBuffer.wrap(key) };
     }
 
+    /**
+     * Serializes the entry, including the checksum, into buffer at its current position.
+     */
+    void serialize(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.position(start + CHECKSUM_SIZE);
+        buffer.put((byte)version);
+        buffer.put(keySize);
+        buffer.putInt(recordSize);
+        buffer.putInt(recordOffset);
+        buffer.putLong(sequenceNumber);
+        buffer.put(key);
+
+        long crc32 = Utils.computeCheckSum(buffer, start + CHECKSUM_SIZE, buffer.position());
+        buffer.putInt(start + CHECKSUM_OFFSET, Utils.toSignedIntFromLong(crc32));
+    }
+
     static IndexFileEntry deserialize(ByteBuffer buffer) {
         long crc32 = Utils.toUnsignedIntFromInt(buffer.getInt());
         int version = Utils.toUnsignedByte(buffer.get());
@@ -126,6 +143,10 @@ class IndexFileEntry {
         return computeCheckSum(header.array());
     }
 
+    int size() {
+        return INDEX_FILE_HEADER_SIZE + keySize;
+    }
+
     byte[] getKey() {
         return key;
     }
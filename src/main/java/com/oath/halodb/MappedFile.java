@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Read only memory mapping of a file which is no longer written to.
+ *
+ * Reading from a mapping after it was unmapped crashes the JVM, therefore readers register
+ * themselves for the duration of the copy and {@link #unmap()} waits for registered readers
+ * before releasing the mapping. Readers which find the file unmapped fall back to the channel.
+ */
+class MappedFile {
+    private static final Logger logger = LoggerFactory.getLogger(MappedFile.class);
+
+    private static final long READER_WAIT_NANOS = 10_000;
+
+    private volatile MappedByteBuffer buffer;
+    private final AtomicInteger readers = new AtomicInteger(0);
+
+    private MappedFile(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    static MappedFile map(FileChannel channel, long size) throws IOException {
+        return new MappedFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    }
+
+    /**
+     * Copies bytes from position into destination and returns their number, or -1 if the file has been unmapped.
+     */
+    int read(long position, ByteBuffer destination) {
+        readers.incrementAndGet();
+        try {
+            MappedByteBuffer mapped = buffer;
+            if (mapped == null) {
+                return -1;
+            }
+
+            ByteBuffer source = mapped.duplicate();
+            if (position >= source.limit()) {
+                return 0;
+            }
+            source.position((int) position);
+            int length = Math.min(destination.remaining(), source.remaining());
+            source.limit(source.position() + length);
+            destination.put(source);
+            return length;
+        } finally {
+            readers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Gives the kernel advice on how the mapping is going to be read, see {@link FileAdvisor}.
+     */
+    boolean advise(FileAdvisor.Advice advice) {
+        readers.incrementAndGet();
+        try {
+            MappedByteBuffer mapped = buffer;
+            return mapped != null && FileAdvisor.advise(mapped, advice);
+        } finally {
+            readers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Waits for readers copying from the mapping and releases it.
+     */
+    void unmap() {
+        MappedByteBuffer mapped = buffer;
+        if (mapped == null) {
+            return;
+        }
+        buffer = null;
+        while (readers.get() != 0) {
+            LockSupport.parkNanos(READER_WAIT_NANOS);
+        }
+        release(mapped);
+    }
+
+    /**
+     * Unmaps the buffer, which must no longer be accessed.
+     */
+    static void release(MappedByteBuffer mapped) {
+        try {
+            if (invokeCleaner != null) {
+                invokeCleaner.invoke(unsafe, mapped);
+            } else {
+                Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(mapped);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the mapping will be released once the buffer is garbage collected.
+            logger.warn("Unable to unmap file, it will be unmapped by the garbage collector", e);
+        }
+    }
+
+    // sun.misc.Unsafe.invokeCleaner(ByteBuffer) unmaps buffers from Java 9 on.
+    private static final Object unsafe;
+    private static final Method invokeCleaner;
+
+    static {
+        Object theUnsafe = null;
+        Method cleanerMethod = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            cleanerMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            theUnsafe = field.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8, use the buffer's cleaner.
+            cleanerMethod = null;
+        }
+        unsafe = theUnsafe;
+        invokeCleaner = cleanerMethod;
+    }
+}
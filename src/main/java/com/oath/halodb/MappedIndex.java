@@ -0,0 +1,423 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Files in the db directory into which the segments of a memory pool index map their hash table and
+ * chunks. The kernel pages the index in and out of memory, so it can be larger than RAM, and the index
+ * outlives the process.
+ *
+ * The mapped memory is only consistent once every segment has been released, therefore the state of the
+ * segments is written to a manifest when the db is closed. The next open reuses the index as is if the
+ * db was shutdown cleanly and the index and tombstone files match the manifest, and otherwise discards
+ * the files and rebuilds the index into them. The manifest is deleted once read, as any write afterwards
+ * makes the mapped index inconsistent until the next close.
+ */
+class MappedIndex {
+    private static final Logger logger = LoggerFactory.getLogger(MappedIndex.class);
+
+    static final String MANIFEST_FILE_NAME = "MAPPED_INDEX";
+    static final String DIRECTORY_NAME = "mapped_index";
+
+    /**
+     * version              - 4 bytes.
+     * segment count, fixed key size, fixed value size and chunk size - 4 bytes each.
+     * compact              - 1 byte, whether index entries use the compact encoding.
+     * inline value size    - 4 bytes.
+     * max sequence number  - 8 bytes.
+     * number of files      - 4 bytes, then the name and size of each index and tombstone file.
+     * segments             - table size, number of entries, write offset of each chunk and the free list.
+     * file slots           - 4 bytes, then the id and slot of each file if the index is compact.
+     * checksum             - 8 bytes, CRC32 of everything before it.
+     */
+    private static final int manifestVersion = 3;
+
+    private final DBDirectory dbDirectory;
+    private final DBDirectory directory;
+
+    // manifest of the last close, null if the index is not reused.
+    private Manifest manifest;
+    private List<SegmentFiles> segments;
+
+    private int fixedKeySize;
+    private int fixedValueSize;
+    private int chunkSize;
+    private int inlineValueSize;
+    private FileSlots fileSlots;
+
+    private MappedIndex(DBDirectory dbDirectory, DBDirectory directory, Manifest manifest) {
+        this.dbDirectory = dbDirectory;
+        this.directory = directory;
+        this.manifest = manifest;
+    }
+
+    static MappedIndex open(DBDirectory dbDirectory, boolean wasShutdownCleanly) throws IOException {
+        DBDirectory directory = DBDirectory.open(dbDirectory.getPath().resolve(DIRECTORY_NAME).toFile());
+        Path manifestFile = dbDirectory.getPath().resolve(MANIFEST_FILE_NAME);
+        // files are repaired after an unclean shutdown, therefore they don't match the manifest.
+        Manifest manifest = wasShutdownCleanly ? Manifest.read(dbDirectory, manifestFile) : null;
+        if (Files.deleteIfExists(manifestFile)) {
+            dbDirectory.syncMetaData();
+        }
+        return new MappedIndex(dbDirectory, directory, manifest);
+    }
+
+    /**
+     * Creates the files of each segment, keeping their content if the manifest matches the layout. Entries
+     * use the compact encoding if fileSlots is not null, into which the slots of files a reused index
+     * refers to are restored.
+     */
+    void createSegments(int segmentCount, int fixedKeySize, int fixedValueSize, int inlineValueSize, int chunkSize,
+                        FileSlots fileSlots) throws IOException {
+        // entries of different encodings or inline value sizes can have the same size.
+        if (manifest != null && !manifest.hasLayout(segmentCount, fixedKeySize, fixedValueSize, fileSlots != null, inlineValueSize, chunkSize)) {
+            logger.info("Discarding mapped index created with different options");
+            manifest = null;
+        }
+        if (manifest == null) {
+            File[] files = directory.getPath().toFile().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    Files.delete(file.toPath());
+                }
+            }
+        }
+        this.fixedKeySize = fixedKeySize;
+        this.fixedValueSize = fixedValueSize;
+        this.chunkSize = chunkSize;
+        this.inlineValueSize = inlineValueSize;
+        this.fileSlots = fileSlots;
+        if (manifest != null && fileSlots != null) {
+            fileSlots.restore(manifest.fileSlots);
+        }
+
+        segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(new SegmentFiles(directory.getPath(), i, manifest != null ? manifest.segments.get(i) : null));
+        }
+    }
+
+    SegmentFiles segment(int index) {
+        return segments.get(index);
+    }
+
+    boolean isReused() {
+        return manifest != null;
+    }
+
+    long getMaxSequenceNumber() {
+        return manifest.maxSequenceNumber;
+    }
+
+    /**
+     * Writes the manifest. Must be called once all files have been closed and the index released.
+     */
+    void close(long maxSequenceNumber) throws IOException {
+        List<SegmentState> states = new ArrayList<>(segments.size());
+        for (SegmentFiles segment : segments) {
+            if (segment.storedState == null) {
+                logger.warn("Mapped index was not released, it will be rebuilt on the next open");
+                directory.close();
+                return;
+            }
+            states.add(segment.storedState);
+        }
+
+        Manifest closed = new Manifest(segments.size(), fixedKeySize, fixedValueSize, fileSlots != null,
+                                       inlineValueSize, chunkSize, maxSequenceNumber, IndexCheckpoint.listFiles(dbDirectory), states,
+                                       fileSlots != null ? fileSlots.getSlots() : Collections.emptyMap());
+        // table files are renamed by rehashing.
+        directory.syncMetaData();
+        directory.close();
+        closed.write(dbDirectory);
+    }
+
+    /**
+     * Mappings of the hash table and chunks of a segment. Accessed under the segment lock.
+     */
+    static class SegmentFiles {
+        private final Path tableFile;
+        private final Path newTableFile;
+        private final Path chunksFile;
+
+        private final SegmentState restoredState;
+        private SegmentState storedState;
+
+        private MappedByteBuffer table;
+        private MappedByteBuffer newTable;
+        private final List<MappedByteBuffer> chunks = new ArrayList<>();
+        private FileChannel chunksChannel;
+
+        private SegmentFiles(Path directory, int index, SegmentState restoredState) {
+            this.tableFile = directory.resolve(index + ".table");
+            this.newTableFile = directory.resolve(index + ".table.new");
+            this.chunksFile = directory.resolve(index + ".chunks");
+            this.restoredState = restoredState;
+        }
+
+        /**
+         * State stored by the last close, or null if the segment is new.
+         */
+        SegmentState getRestoredState() {
+            return restoredState;
+        }
+
+        /**
+         * Maps the hash table of the segment and returns its address. Once a table is mapped, tables
+         * mapped by later calls replace it on {@link #replaceTable()}.
+         */
+        long mapTable(int sizeInBytes) throws IOException {
+            if (table == null) {
+                table = map(tableFile, sizeInBytes);
+                return Uns.address(table);
+            }
+            newTable = map(newTableFile, sizeInBytes);
+            return Uns.address(newTable);
+        }
+
+        void replaceTable() throws IOException {
+            MappedFile.release(table);
+            Files.move(newTableFile, tableFile, REPLACE_EXISTING, ATOMIC_MOVE);
+            table = newTable;
+            newTable = null;
+        }
+
+        /**
+         * Maps the chunk at the index and returns its address. New chunks are filled with zeros.
+         */
+        long mapChunk(int index, int chunkSize) throws IOException {
+            if (chunksChannel == null) {
+                chunksChannel = FileChannel.open(chunksFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            MappedByteBuffer chunk = chunksChannel.map(FileChannel.MapMode.READ_WRITE, (long) index * chunkSize, chunkSize);
+            chunks.add(chunk);
+            return Uns.address(chunk);
+        }
+
+        void clearChunks() throws IOException {
+            chunks.forEach(MappedFile::release);
+            chunks.clear();
+            if (chunksChannel != null) {
+                chunksChannel.truncate(0);
+            }
+        }
+
+        /**
+         * Writes the mapped memory to the files, unmaps it and keeps the state for the manifest.
+         */
+        void close(SegmentState state) throws IOException {
+            table.force();
+            chunks.forEach(MappedByteBuffer::force);
+            MappedFile.release(table);
+            chunks.forEach(MappedFile::release);
+            table = null;
+            chunks.clear();
+            if (chunksChannel != null) {
+                chunksChannel.force(true);
+                chunksChannel.close();
+            }
+            storedState = state;
+        }
+
+        private static MappedByteBuffer map(Path file, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+    }
+
+    static class SegmentState {
+        final int tableSize;
+        final long size;
+        final int[] chunkWriteOffsets;
+        final MemoryPoolAddress freeListHead;
+        final long freeListSize;
+
+        SegmentState(int tableSize, long size, int[] chunkWriteOffsets, MemoryPoolAddress freeListHead, long freeListSize) {
+            this.tableSize = tableSize;
+            this.size = size;
+            this.chunkWriteOffsets = chunkWriteOffsets;
+            this.freeListHead = freeListHead;
+            this.freeListSize = freeListSize;
+        }
+    }
+
+    private static class Manifest {
+        private final int segmentCount;
+        private final int fixedKeySize;
+        private final int fixedValueSize;
+        private final boolean compact;
+        private final int inlineValueSize;
+        private final int chunkSize;
+        private final long maxSequenceNumber;
+        private final SortedMap<String, Long> files;
+        private final List<SegmentState> segments;
+        private final Map<Integer, Integer> fileSlots;
+
+        private Manifest(int segmentCount, int fixedKeySize, int fixedValueSize, boolean compact, int inlineValueSize,
+                         int chunkSize, long maxSequenceNumber, SortedMap<String, Long> files, List<SegmentState> segments,
+                         Map<Integer, Integer> fileSlots) {
+            this.segmentCount = segmentCount;
+            this.fixedKeySize = fixedKeySize;
+            this.fixedValueSize = fixedValueSize;
+            this.compact = compact;
+            this.inlineValueSize = inlineValueSize;
+            this.chunkSize = chunkSize;
+            this.maxSequenceNumber = maxSequenceNumber;
+            this.files = files;
+            this.segments = segments;
+            this.fileSlots = fileSlots;
+        }
+
+        private boolean hasLayout(int segmentCount, int fixedKeySize, int fixedValueSize, boolean compact,
+                                  int inlineValueSize, int chunkSize) {
+            return this.segmentCount == segmentCount && this.fixedKeySize == fixedKeySize
+                   && this.fixedValueSize == fixedValueSize && this.compact == compact
+                   && this.inlineValueSize == inlineValueSize && this.chunkSize == chunkSize;
+        }
+
+        private void write(DBDirectory dbDirectory) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(manifestVersion);
+            out.writeInt(segmentCount);
+            out.writeInt(fixedKeySize);
+            out.writeInt(fixedValueSize);
+            out.writeInt(chunkSize);
+            out.writeBoolean(compact);
+            out.writeInt(inlineValueSize);
+            out.writeLong(maxSequenceNumber);
+            out.writeInt(files.size());
+            for (Map.Entry<String, Long> file : files.entrySet()) {
+                out.writeUTF(file.getKey());
+                out.writeLong(file.getValue());
+            }
+            for (SegmentState segment : segments) {
+                out.writeInt(segment.tableSize);
+                out.writeLong(segment.size);
+                out.writeInt(segment.chunkWriteOffsets.length);
+                for (int writeOffset : segment.chunkWriteOffsets) {
+                    out.writeInt(writeOffset);
+                }
+                out.writeByte(segment.freeListHead.chunkIndex);
+                out.writeInt(segment.freeListHead.chunkOffset);
+                out.writeLong(segment.freeListSize);
+            }
+            out.writeInt(fileSlots.size());
+            for (Map.Entry<Integer, Integer> slot : fileSlots.entrySet()) {
+                out.writeInt(slot.getKey());
+                out.writeInt(slot.getValue());
+            }
+            CRC32 crc32 = new CRC32();
+            crc32.update(bytes.toByteArray());
+            out.writeLong(crc32.getValue());
+
+            Path tempFile = dbDirectory.getPath().resolve(MANIFEST_FILE_NAME + ".temp");
+            try (FileOutputStream fileOut = new FileOutputStream(tempFile.toFile())) {
+                bytes.writeTo(fileOut);
+                fileOut.getFD().sync();
+            }
+            Files.move(tempFile, dbDirectory.getPath().resolve(MANIFEST_FILE_NAME), REPLACE_EXISTING, ATOMIC_MOVE);
+            dbDirectory.syncMetaData();
+        }
+
+        /**
+         * Returns null if there is no manifest, or it is corrupted or doesn't match the files in the db directory.
+         */
+        private static Manifest read(DBDirectory dbDirectory, Path file) throws IOException {
+            if (!Files.exists(file)) {
+                return null;
+            }
+
+            byte[] data = Files.readAllBytes(file);
+            if (data.length < 8) {
+                logger.warn("Ignoring corrupted mapped index manifest");
+                return null;
+            }
+            CRC32 crc32 = new CRC32();
+            crc32.update(data, 0, data.length - 8);
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+                in.skipBytes(data.length - 8);
+                if (in.readLong() != crc32.getValue()) {
+                    logger.warn("Ignoring corrupted mapped index manifest");
+                    return null;
+                }
+            }
+
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 8))) {
+                if (in.readInt() != manifestVersion) {
+                    logger.info("Ignoring mapped index manifest of a different version");
+                    return null;
+                }
+                int segmentCount = in.readInt();
+                int fixedKeySize = in.readInt();
+                int fixedValueSize = in.readInt();
+                int chunkSize = in.readInt();
+                boolean compact = in.readBoolean();
+                int inlineValueSize = in.readInt();
+                long maxSequenceNumber = in.readLong();
+
+                SortedMap<String, Long> files = new TreeMap<>();
+                int fileCount = in.readInt();
+                for (int i = 0; i < fileCount; i++) {
+                    files.put(in.readUTF(), in.readLong());
+                }
+                if (!files.equals(IndexCheckpoint.listFiles(dbDirectory))) {
+                    logger.info("Ignoring mapped index as files have changed since it was written");
+                    return null;
+                }
+
+                List<SegmentState> segments = new ArrayList<>(segmentCount);
+                for (int i = 0; i < segmentCount; i++) {
+                    int tableSize = in.readInt();
+                    long size = in.readLong();
+                    int[] chunkWriteOffsets = new int[in.readInt()];
+                    for (int j = 0; j < chunkWriteOffsets.length; j++) {
+                        chunkWriteOffsets[j] = in.readInt();
+                    }
+                    MemoryPoolAddress freeListHead = new MemoryPoolAddress(in.readByte(), in.readInt());
+                    long freeListSize = in.readLong();
+                    segments.add(new SegmentState(tableSize, size, chunkWriteOffsets, freeListHead, freeListSize));
+                }
+
+                Map<Integer, Integer> fileSlots = new HashMap<>();
+                int slotCount = in.readInt();
+                for (int i = 0; i < slotCount; i++) {
+                    fileSlots.put(in.readInt(), in.readInt());
+                }
+                return new Manifest(segmentCount, fixedKeySize, fixedValueSize, compact, inlineValueSize, chunkSize,
+                                    maxSequenceNumber, files, segments, fileSlots);
+            }
+        }
+    }
+}
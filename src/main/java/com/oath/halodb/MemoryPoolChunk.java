@@ -20,26 +20,45 @@ class MemoryPoolChunk {
     private final int fixedValueLength;
     private final int fixedSlotSize;
     private int writeOffset = 0;
+    // memory of mapped chunks is released by the MappedIndex.
+    private final boolean mapped;
 
-    private MemoryPoolChunk(long address, int chunkSize, int fixedKeyLength, int fixedValueLength) {
+    private MemoryPoolChunk(long address, int chunkSize, int fixedKeyLength, int fixedValueLength, boolean mapped) {
         this.address = address;
         this.chunkSize = chunkSize;
         this.fixedKeyLength = fixedKeyLength;
         this.fixedValueLength = fixedValueLength;
         this.fixedSlotSize = HEADER_SIZE + fixedKeyLength + fixedValueLength;
+        this.mapped = mapped;
     }
 
     static MemoryPoolChunk create(int chunkSize, int fixedKeyLength, int fixedValueLength) {
+        checkSlotSize(chunkSize, fixedKeyLength, fixedValueLength);
+        long address = Uns.allocate(chunkSize, true);
+        return new MemoryPoolChunk(address, chunkSize, fixedKeyLength, fixedValueLength, false);
+    }
+
+    /**
+     * Chunk in memory mapped from a file, which may already contain slots up to writeOffset.
+     */
+    static MemoryPoolChunk mapped(long address, int chunkSize, int fixedKeyLength, int fixedValueLength, int writeOffset) {
+        checkSlotSize(chunkSize, fixedKeyLength, fixedValueLength);
+        MemoryPoolChunk chunk = new MemoryPoolChunk(address, chunkSize, fixedKeyLength, fixedValueLength, true);
+        chunk.writeOffset = writeOffset;
+        return chunk;
+    }
+
+    private static void checkSlotSize(int chunkSize, int fixedKeyLength, int fixedValueLength) {
         int fixedSlotSize = HEADER_SIZE + fixedKeyLength + fixedValueLength;
         if (fixedSlotSize > chunkSize) {
             throw new IllegalArgumentException("fixedSlotSize " + fixedSlotSize + " must be smaller than chunkSize " + chunkSize);
         }
-        long address = Uns.allocate(chunkSize, true);
-        return new MemoryPoolChunk(address, chunkSize, fixedKeyLength, fixedValueLength);
     }
 
     void destroy() {
-        Uns.free(address);
+        if (!mapped) {
+            Uns.free(address);
+        }
     }
 
     MemoryPoolAddress getNextAddress(int slotOffset) {
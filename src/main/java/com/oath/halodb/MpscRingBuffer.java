@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue for multiple producers and a single consumer.
+ *
+ * Each slot has a sequence number which tells producers and the consumer whose turn it is to use the slot.
+ * Producers claim a slot by a CAS on the tail and publish the element by updating the slot's sequence.
+ * Only one thread may call {@link #poll()}.
+ */
+class MpscRingBuffer<E> {
+
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong(0);
+
+    // accessed only by the consumer.
+    private long head = 0;
+
+    MpscRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity should be > 0");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        elements = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * @return false if the queue is full.
+     */
+    boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int)(position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[index] = element;
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            }
+            else if (difference < 0) {
+                // the consumer hasn't yet freed this slot.
+                return false;
+            }
+            // else another producer claimed the slot, try again.
+        }
+    }
+
+    /**
+     * @return the next element or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        int index = (int)(head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+
+        E element = (E)elements[index];
+        elements[index] = null;
+        sequences.lazySet(index, head + elements.length);
+        head++;
+        return element;
+    }
+
+    /**
+     * Returns false also if a producer has claimed a slot but is yet to publish its element.
+     * Only the consumer may call this method.
+     */
+    boolean isEmpty() {
+        return sequences.get((int)(head & mask)) != head + 1 && tail.get() == head;
+    }
+
+    int capacity() {
+        return elements.length;
+    }
+}
@@ -10,6 +10,9 @@ package com.oath.halodb;
 import com.oath.halodb.histo.EstimatedHistogram;
 
 import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 interface OffHeapHashTable<V> extends Closeable {
 
@@ -46,6 +49,41 @@ interface OffHeapHashTable<V> extends Closeable {
      */
     boolean remove(byte[] key);
 
+    /**
+     * Adds or replaces the entry for the key with a single lookup.
+     *
+     * @param key      key of the entry to be added or replaced. Must not be {@code null}.
+     * @param value    value of the entry to be added. Must not be {@code null}.
+     * @return the value replaced or {@code null} if the key was not present
+     */
+    V getAndPut(byte[] key, V value);
+
+    /**
+     * Removes the entry for the key with a single lookup.
+     *
+     * @param key key of the entry to be removed. Must not be {@code null}.
+     * @return the value removed or {@code null} if the key was not present
+     */
+    V getAndRemove(byte[] key);
+
+    /**
+     * Atomically updates the entry for the key with a single lookup. {@code updateFunction} is called
+     * under the segment lock with the current value, or {@code null} if the key is not present, and
+     * must not call back into the hash table. If it returns {@code null} the entry is removed, or not
+     * added, if it returns its argument the entry is left unchanged, otherwise the value is replaced or added.
+     *
+     * @param key            key of the entry to be updated. Must not be {@code null}.
+     * @param updateFunction computes the new value from the current one.
+     * @return the value before the update or {@code null} if the key was not present
+     */
+    V getAndUpdate(byte[] key, UnaryOperator<V> updateFunction);
+
+    /**
+     * Calls the consumer with every entry, one segment at a time while holding the segment lock.
+     * The key buffer is only valid during the call and the consumer must not call back into the hash table.
+     */
+    void forEach(BiConsumer<ByteBuffer, V> consumer);
+
     /**
      * Removes all entries from the cache.
      */
@@ -20,6 +20,7 @@ class OffHeapHashTableBuilder<V> {
     private Hasher hasher;
     private boolean unlocked;
     private boolean useMemoryPool = false;
+    private MappedIndex mappedIndex;
 
     private OffHeapHashTableBuilder() {
         int cpus = Runtime.getRuntime().availableProcessors();
@@ -171,4 +172,16 @@ class OffHeapHashTableBuilder<V> {
         this.useMemoryPool = useMemoryPool;
         return this;
     }
+
+    public MappedIndex getMappedIndex() {
+        return mappedIndex;
+    }
+
+    /**
+     * Segments of the memory pool map their table and chunks from the files of the mapped index.
+     */
+    public OffHeapHashTableBuilder<V> mappedIndex(MappedIndex mappedIndex) {
+        this.mappedIndex = mappedIndex;
+        return this;
+    }
 }
@@ -13,10 +13,13 @@ import com.oath.halodb.histo.EstimatedHistogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 final class OffHeapHashTableImpl<V> implements OffHeapHashTable<V> {
 
@@ -50,7 +53,7 @@ final class OffHeapHashTableImpl<V> implements OffHeapHashTable<V> {
         segments = new ArrayList<>(segmentCount);
         for (int i = 0; i < segmentCount; i++) {
             try {
-                segments.add(allocateSegment(builder));
+                segments.add(allocateSegment(builder, i));
             } catch (RuntimeException e) {
                 for (; i >= 0; i--) {
                     if (segments.get(i) != null) {
@@ -74,9 +77,10 @@ final class OffHeapHashTableImpl<V> implements OffHeapHashTable<V> {
         logger.debug("off-heap index with {} segments created.", segmentCount);
     }
 
-    private Segment<V> allocateSegment(OffHeapHashTableBuilder<V> builder) {
+    private Segment<V> allocateSegment(OffHeapHashTableBuilder<V> builder, int index) {
         if (builder.isUseMemoryPool()) {
-            return new SegmentWithMemoryPool<>(builder);
+            MappedIndex mappedIndex = builder.getMappedIndex();
+            return new SegmentWithMemoryPool<>(builder, mappedIndex != null ? mappedIndex.segment(index) : null);
         }
         return new SegmentNonMemoryPool<>(builder);
     }
@@ -90,6 +94,12 @@ final class OffHeapHashTableImpl<V> implements OffHeapHashTable<V> {
         return segment(keySource.hash()).getEntry(keySource);
     }
 
+    public void forEach(BiConsumer<ByteBuffer, V> consumer) {
+        for (Segment<V> segment : segments) {
+            segment.forEachEntry(consumer);
+        }
+    }
+
     public boolean containsKey(byte[] key) {
         if (key == null) {
             throw new NullPointerException();
@@ -150,6 +160,48 @@ final class OffHeapHashTableImpl<V> implements OffHeapHashTable<V> {
         return segment(keySource.hash()).removeEntry(keySource);
     }
 
+    public V getAndPut(byte[] key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        checkValueSize(value);
+        return getAndUpdateInternal(key, current -> value);
+    }
+
+    public V getAndRemove(byte[] key) {
+        return getAndUpdateInternal(key, current -> null);
+    }
+
+    public V getAndUpdate(byte[] key, UnaryOperator<V> updateFunction) {
+        return getAndUpdateInternal(key, current -> {
+            V value = updateFunction.apply(current);
+            if (value != null && value != current) {
+                checkValueSize(value);
+            }
+            return value;
+        });
+    }
+
+    private V getAndUpdateInternal(byte[] key, UnaryOperator<V> updateFunction) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+
+        if (key.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("key size of " + key.length + " exceeds max permitted size of " + Byte.MAX_VALUE);
+        }
+
+        KeyBuffer keySource = keySource(key);
+        return segment(keySource.hash()).getAndUpdateEntry(keySource, updateFunction);
+    }
+
+    private void checkValueSize(V value) {
+        int valueSize = valueSize(value);
+        if (valueSize != fixedValueLength) {
+            throw new IllegalArgumentException("value size " + valueSize + " greater than fixed value size " + fixedValueLength);
+        }
+    }
+
     private Segment<V> segment(long hash) {
         int seg = (int) ((hash & segmentMask) >>> segmentShift);
         return segments.get(seg);
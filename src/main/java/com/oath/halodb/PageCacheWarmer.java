@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reads the values recorded by {@link HotReadLog} before the db was last closed into the page cache
+ * on a background thread, at a limited rate so that it doesn't slow down reads after a restart. Values
+ * are read in the order of their files and offsets and values close to each other are read together.
+ * If file advice is enabled the kernel is asked to read the ranges with WILLNEED instead.
+ */
+class PageCacheWarmer {
+    private static final Logger logger = LoggerFactory.getLogger(PageCacheWarmer.class);
+
+    // values this close to each other are read together, up to maxReadSize bytes.
+    private static final int maxGap = 4 * 1024;
+    private static final int maxReadSize = 1024 * 1024;
+
+    private final HaloDBInternal dbInternal;
+    private final List<HotReadLog.HotRead> hotReads;
+    private final RateLimiter rateLimiter;
+    private final boolean useFileAdvice;
+
+    private final Thread warmupThread;
+    private volatile boolean isRunning = false;
+    private volatile long bytesWarmed = 0;
+
+    PageCacheWarmer(HaloDBInternal dbInternal, List<HotReadLog.HotRead> hotReads, HaloDBOptions options) {
+        this.dbInternal = dbInternal;
+        this.hotReads = new ArrayList<>(hotReads);
+        this.rateLimiter = RateLimiter.create(options.getPageCacheWarmupRate());
+        this.useFileAdvice = options.isUseFileAdvice() && FileAdvisor.isAvailable();
+        this.warmupThread = new Thread(this::run, "PageCacheWarmupThread");
+        this.warmupThread.setDaemon(true);
+    }
+
+    void start() {
+        isRunning = true;
+        warmupThread.start();
+    }
+
+    /**
+     * Stops warming up, must be called before the files are closed.
+     */
+    void close() {
+        isRunning = false;
+        try {
+            warmupThread.join();
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while waiting for the page cache warmup thread to stop", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean isComplete() {
+        return !warmupThread.isAlive();
+    }
+
+    long getBytesWarmed() {
+        return bytesWarmed;
+    }
+
+    private void run() {
+        long start = System.currentTimeMillis();
+        hotReads.sort(Comparator.<HotReadLog.HotRead>comparingInt(read -> read.fileId).thenComparingInt(read -> read.valueOffset));
+        ByteBuffer buffer = useFileAdvice ? null : ByteBuffer.allocate(maxReadSize);
+
+        int index = 0;
+        while (index < hotReads.size() && isRunning) {
+            HotReadLog.HotRead first = hotReads.get(index);
+            long rangeStart = first.valueOffset & 0xFFFFFFFFL;
+            long rangeEnd = rangeStart + first.valueSize;
+            index++;
+            while (index < hotReads.size()) {
+                HotReadLog.HotRead next = hotReads.get(index);
+                long nextStart = next.valueOffset & 0xFFFFFFFFL;
+                long nextEnd = Math.max(rangeEnd, nextStart + next.valueSize);
+                if (next.fileId != first.fileId || nextStart - rangeEnd > maxGap || nextEnd - rangeStart > maxReadSize) {
+                    break;
+                }
+                rangeEnd = nextEnd;
+                index++;
+            }
+
+            warm(first.fileId, rangeStart, (int) Math.min(rangeEnd - rangeStart, maxReadSize), buffer);
+        }
+
+        logger.info("Warmed up {} bytes of the page cache in {} ms", bytesWarmed, System.currentTimeMillis() - start);
+    }
+
+    private void warm(int fileId, long position, int length, ByteBuffer buffer) {
+        // the file might have been compacted since the reads were recorded.
+        HaloDBFile file = dbInternal.acquireHaloDBFile(fileId);
+        if (file == null) {
+            return;
+        }
+
+        try {
+            rateLimiter.acquire(length);
+            if (useFileAdvice) {
+                FileAdvisor.advise(file.getChannel(), position, length, FileAdvisor.Advice.WILLNEED);
+            } else {
+                buffer.clear();
+                buffer.limit(length);
+                file.readFromFile(position, buffer);
+            }
+            bytesWarmed += length;
+        } catch (IOException e) {
+            logger.debug("Error while warming up file {}", fileId, e);
+        } finally {
+            file.release();
+        }
+    }
+}
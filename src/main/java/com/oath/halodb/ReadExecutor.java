@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import com.oath.halodb.histo.EstimatedHistogram;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of threads reading from data files, so that callers which must not block, such as
+ * event loops, hand off reads which could miss the page cache. Tracks the number of queued reads
+ * and the time from submitting a read to its completion.
+ */
+class ReadExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(ReadExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder completedReads = new LongAdder();
+    private final LongAdder rejectedReads = new LongAdder();
+    private volatile EstimatedHistogram latencyMicros = new EstimatedHistogram();
+
+    ReadExecutor(int numberOfThreads, int queueSize) {
+        this.executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0, TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "HaloDBReadThread");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues the read and returns true, or returns false if the queue is full or the executor has been closed.
+     */
+    boolean execute(Runnable read) {
+        long submitTime = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                try {
+                    read.run();
+                } finally {
+                    latencyMicros.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - submitTime));
+                    completedReads.increment();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (!executor.isShutdown()) {
+                rejectedReads.increment();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Completes the queued reads and stops the threads.
+     */
+    void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.error("Read threads did not stop");
+            }
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while waiting for read threads to stop", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean isClosed() {
+        return executor.isShutdown();
+    }
+
+    int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    long getCompletedReads() {
+        return completedReads.sum();
+    }
+
+    long getRejectedReads() {
+        return rejectedReads.sum();
+    }
+
+    EstimatedHistogram getLatencyMicros() {
+        return latencyMicros;
+    }
+
+    void resetStats() {
+        completedReads.reset();
+        rejectedReads.reset();
+        latencyMicros = new EstimatedHistogram();
+    }
+}
@@ -28,6 +28,24 @@ public class Record {
         return new ByteBuffer[] {headerBuf, ByteBuffer.wrap(key), ByteBuffer.wrap(value)};
     }
 
+    /**
+     * Serializes the record, including the checksum, into buffer at its current position
+     * without any intermediate allocations. Position of buffer is advanced by the record size.
+     */
+    void serialize(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.position(start + Header.CHECKSUM_SIZE);
+        buffer.put((byte)header.version);
+        buffer.put(header.keySize);
+        buffer.putInt(header.valueSize);
+        buffer.putLong(header.sequenceNumber);
+        buffer.put(key);
+        buffer.put(value);
+
+        long checkSum = Utils.computeCheckSum(buffer, start + Header.CHECKSUM_SIZE, buffer.position());
+        buffer.putInt(start + Header.CHECKSUM_OFFSET, Utils.toSignedIntFromLong(checkSum));
+    }
+
     static Record deserialize(ByteBuffer buffer, short keySize, int valueSize) {
         buffer.flip();
         byte[] key = new byte[keySize];
@@ -9,7 +9,10 @@ package com.oath.halodb;
 
 import com.oath.halodb.histo.EstimatedHistogram;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 abstract class Segment<V> {
 
@@ -77,6 +80,16 @@ abstract class Segment<V> {
 
     abstract boolean removeEntry(KeyBuffer key);
 
+    /**
+     * See {@link OffHeapHashTable#getAndUpdate(byte[], UnaryOperator)}.
+     */
+    abstract V getAndUpdateEntry(KeyBuffer key, UnaryOperator<V> updateFunction);
+
+    /**
+     * See {@link OffHeapHashTable#forEach(BiConsumer)}.
+     */
+    abstract void forEachEntry(BiConsumer<ByteBuffer, V> consumer);
+
     abstract long size();
 
     abstract void release();
@@ -13,6 +13,10 @@ import com.oath.halodb.histo.EstimatedHistogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
 class SegmentNonMemoryPool<V> extends Segment<V> {
 
     private static final Logger logger = LoggerFactory.getLogger(SegmentNonMemoryPool.class);
@@ -345,6 +349,62 @@ class SegmentNonMemoryPool<V> extends Segment<V> {
         }
     }
 
+    @Override
+    V getAndUpdateEntry(KeyBuffer key, UnaryOperator<V> updateFunction) {
+        long removeHashEntryAdr = 0L;
+        boolean wasFirst = lock();
+        try {
+            long prevEntryAdr = 0L;
+            for (long hashEntryAdr = table.getFirst(key.hash());
+                 hashEntryAdr != 0L;
+                 prevEntryAdr = hashEntryAdr, hashEntryAdr = NonMemoryPoolHashEntries.getNext(hashEntryAdr)) {
+                if (!key.sameKey(hashEntryAdr)) {
+                    continue;
+                }
+
+                long valueOffset = NonMemoryPoolHashEntries.ENTRY_OFF_DATA + NonMemoryPoolHashEntries.getKeyLen(hashEntryAdr);
+                V current = valueSerializer.deserialize(Uns.readOnlyBuffer(hashEntryAdr, fixedValueLength, valueOffset));
+                V value = updateFunction.apply(current);
+                if (value == null) {
+                    removeHashEntryAdr = hashEntryAdr;
+                    removeInternal(hashEntryAdr, prevEntryAdr, key.hash());
+                    size--;
+                    removeCount++;
+                } else if (value != current) {
+                    // values have a fixed length, therefore the entry is updated in place.
+                    valueSerializer.serialize(value, Uns.buffer(hashEntryAdr, fixedValueLength, valueOffset));
+                    putReplaceCount++;
+                }
+
+                return current;
+            }
+
+            V value = updateFunction.apply(null);
+            if (value != null) {
+                long hashEntryAdr = Uns.allocate(HashTableUtil.allocLen(key.size(), fixedValueLength), throwOOME);
+                if (hashEntryAdr == 0L) {
+                    throw new RuntimeException("Unable to allocate entry of key size " + key.size() + " in off-heap");
+                }
+                NonMemoryPoolHashEntries.init(key.size(), hashEntryAdr);
+                serializeForPut(key.buffer, value, hashEntryAdr);
+
+                if (size >= threshold) {
+                    rehash();
+                }
+                size++;
+                add(hashEntryAdr, key.hash());
+                putAddCount++;
+            }
+
+            return null;
+        } finally {
+            unlock(wasFirst);
+            if (removeHashEntryAdr != 0L) {
+                Uns.free(removeHashEntryAdr);
+            }
+        }
+    }
+
     private void rehash() {
         long start = System.currentTimeMillis();
         Table tab = table;
@@ -398,6 +458,25 @@ class SegmentNonMemoryPool<V> extends Segment<V> {
         }
     }
 
+    @Override
+    void forEachEntry(BiConsumer<ByteBuffer, V> consumer) {
+        boolean wasFirst = lock();
+        try {
+            for (int p = 0; p < table.size(); p++) {
+                for (long hashEntryAdr = table.getFirst(p);
+                     hashEntryAdr != 0L;
+                     hashEntryAdr = NonMemoryPoolHashEntries.getNext(hashEntryAdr)) {
+                    int keyLength = NonMemoryPoolHashEntries.getKeyLen(hashEntryAdr);
+                    ByteBuffer key = Uns.readOnlyBuffer(hashEntryAdr, keyLength, NonMemoryPoolHashEntries.ENTRY_OFF_DATA);
+                    V value = valueSerializer.deserialize(Uns.readOnlyBuffer(hashEntryAdr, fixedValueLength, NonMemoryPoolHashEntries.ENTRY_OFF_DATA + keyLength));
+                    consumer.accept(key, value);
+                }
+            }
+        } finally {
+            unlock(wasFirst);
+        }
+    }
+
     void getEntryAddresses(int mapSegmentIndex, int nSegments, LongArrayList hashEntryAdrs) {
         boolean wasFirst = lock();
         try {
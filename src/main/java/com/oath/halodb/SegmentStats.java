@@ -21,6 +21,10 @@ class SegmentStats {
         this.freeListSize = freeListSize;
     }
 
+    long getNumberOfChunks() {
+        return numberOfChunks;
+    }
+
     @Override
     public String toString() {
         MoreObjects.ToStringHelper helper =
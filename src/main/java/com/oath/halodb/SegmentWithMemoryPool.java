@@ -12,9 +12,13 @@ import com.oath.halodb.histo.EstimatedHistogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 class SegmentWithMemoryPool<V> extends Segment<V> {
 
@@ -54,7 +58,14 @@ class SegmentWithMemoryPool<V> extends Segment<V> {
 
     private final HashAlgorithm hashAlgorithm;
 
+    // files into which the table and chunks are mapped, null if they are allocated.
+    private final MappedIndex.SegmentFiles files;
+
     SegmentWithMemoryPool(OffHeapHashTableBuilder<V> builder) {
+        this(builder, null);
+    }
+
+    SegmentWithMemoryPool(OffHeapHashTableBuilder<V> builder, MappedIndex.SegmentFiles files) {
         super(builder.getValueSerializer(), builder.getFixedValueSize(), builder.getFixedKeySize(),
               builder.getHasher());
 
@@ -63,6 +74,7 @@ class SegmentWithMemoryPool<V> extends Segment<V> {
         this.valueSerializer = builder.getValueSerializer();
         this.fixedSlotSize = MemoryPoolHashEntries.HEADER_SIZE + fixedKeyLength + fixedValueLength;
         this.hashAlgorithm = builder.getHashAlgorighm();
+        this.files = files;
 
         int hts = builder.getHashTableSize();
         if (hts <= 0) {
@@ -72,7 +84,11 @@ class SegmentWithMemoryPool<V> extends Segment<V> {
             hts = 256;
         }
         int msz = Ints.checkedCast(HashTableUtil.roundUpToPowerOf2(hts, MAX_TABLE_SIZE));
-        table = Table.create(msz);
+        if (files != null && files.getRestoredState() != null) {
+            restoreState(files.getRestoredState());
+        } else {
+            table = newTable(msz);
+        }
         if (table == null) {
             throw new RuntimeException("unable to allocate off-heap memory for segment");
         }
@@ -212,6 +228,59 @@ class SegmentWithMemoryPool<V> extends Segment<V> {
         }
     }
 
+    @Override
+    V getAndUpdateEntry(KeyBuffer key, UnaryOperator<V> updateFunction) {
+        boolean wasFirst = lock();
+        try {
+            MemoryPoolAddress first = table.getFirst(key.hash());
+            MemoryPoolAddress previous = null;
+            for (MemoryPoolAddress address = first;
+                 address.chunkIndex >= 0;
+                 previous = address, address = getNext(address)) {
+
+                MemoryPoolChunk chunk = chunks.get(address.chunkIndex);
+                if (!chunk.compareKey(address.chunkOffset, key.buffer)) {
+                    continue;
+                }
+
+                V current = valueSerializer.deserialize(chunk.readOnlyValueByteBuffer(address.chunkOffset));
+                V value = updateFunction.apply(current);
+                if (value == null) {
+                    removeInternal(address, previous, key.hash());
+                    removeCount++;
+                    size--;
+                } else if (value != current) {
+                    newValueBuffer.clear();
+                    valueSerializer.serialize(value, newValueBuffer);
+                    chunk.setValue(newValueBuffer.array(), address.chunkOffset);
+                    putReplaceCount++;
+                }
+
+                return current;
+            }
+
+            V value = updateFunction.apply(null);
+            if (value != null) {
+                newValueBuffer.clear();
+                valueSerializer.serialize(value, newValueBuffer);
+
+                if (size >= threshold) {
+                    rehash();
+                    first = table.getFirst(key.hash());
+                }
+
+                MemoryPoolAddress nextSlot = writeToFreeSlot(key.buffer, newValueBuffer.array(), first);
+                table.addAsHead(key.hash(), nextSlot);
+                size++;
+                putAddCount++;
+            }
+
+            return null;
+        } finally {
+            unlock(wasFirst);
+        }
+    }
+
     private MemoryPoolAddress getNext(MemoryPoolAddress address) {
         if (address.chunkIndex < 0 || address.chunkIndex >= chunks.size()) {
             throw new IllegalArgumentException("Invalid chunk index " + address.chunkIndex + ". Chunk size " + chunks.size());
@@ -239,7 +308,7 @@ class SegmentWithMemoryPool<V> extends Segment<V> {
 
             // There is no chunk allocated for this segment or the current chunk being written to has no space left.
             // allocate an new one. 
-            chunks.add(MemoryPoolChunk.create(chunkSize, fixedKeyLength, fixedValueLength));
+            chunks.add(newChunk());
             ++currentChunkIndex;
         }
 
@@ -273,7 +342,7 @@ class SegmentWithMemoryPool<V> extends Segment<V> {
             return;
         }
 
-        Table newTable = Table.create(tableSize * 2);
+        Table newTable = newTable(tableSize * 2);
         Hasher hasher = Hasher.create(hashAlgorithm);
         MemoryPoolAddress next;
 
@@ -290,24 +359,106 @@ class SegmentWithMemoryPool<V> extends Segment<V> {
         threshold = (long) ((float) newTable.size() * loadFactor);
         table.release();
         table = newTable;
+        if (files != null) {
+            try {
+                files.replaceTable();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
         rehashes++;
 
         logger.info("Completed rehashing segment in {} ms.", (System.currentTimeMillis() - start));
     }
 
+    @Override
+    void forEachEntry(BiConsumer<ByteBuffer, V> consumer) {
+        boolean wasFirst = lock();
+        try {
+            for (int i = 0; i < table.size(); i++) {
+                for (MemoryPoolAddress address = table.getFirst(i); address.chunkIndex >= 0; address = getNext(address)) {
+                    MemoryPoolChunk chunk = chunks.get(address.chunkIndex);
+                    consumer.accept(chunk.readOnlyKeyByteBuffer(address.chunkOffset),
+                                    valueSerializer.deserialize(chunk.readOnlyValueByteBuffer(address.chunkOffset)));
+                }
+            }
+        } finally {
+            unlock(wasFirst);
+        }
+    }
+
     @Override
     long size() {
         return size;
     }
 
+    private Table newTable(int hashTableSize) {
+        if (files == null) {
+            return Table.create(hashTableSize);
+        }
+        return Table.mapped(mapTable(hashTableSize), hashTableSize, true);
+    }
+
+    private MemoryPoolChunk newChunk() {
+        if (files == null) {
+            return MemoryPoolChunk.create(chunkSize, fixedKeyLength, fixedValueLength);
+        }
+        return MemoryPoolChunk.mapped(mapChunk(chunks.size()), chunkSize, fixedKeyLength, fixedValueLength, 0);
+    }
+
+    private long mapTable(int hashTableSize) {
+        try {
+            return files.mapTable(Ints.checkedCast(HashTableUtil.MEMORY_POOL_BUCKET_ENTRY_LEN * hashTableSize));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long mapChunk(int index) {
+        try {
+            return files.mapChunk(index, chunkSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Maps the table and chunks stored by the last close of the mapped index.
+     */
+    private void restoreState(MappedIndex.SegmentState state) {
+        table = Table.mapped(mapTable(state.tableSize), state.tableSize, false);
+        for (int writeOffset : state.chunkWriteOffsets) {
+            chunks.add(MemoryPoolChunk.mapped(mapChunk(chunks.size()), chunkSize, fixedKeyLength, fixedValueLength, writeOffset));
+        }
+        currentChunkIndex = (byte) (chunks.size() - 1);
+        size = state.size;
+        freeListHead = state.freeListHead;
+        freeListSize = state.freeListSize;
+    }
+
+    private void storeState() {
+        int[] chunkWriteOffsets = chunks.stream().mapToInt(MemoryPoolChunk::getWriteOffset).toArray();
+        try {
+            files.close(new MappedIndex.SegmentState(table.size(), size, chunkWriteOffsets, freeListHead, freeListSize));
+        } catch (IOException e) {
+            // the mapped index will be rebuilt on the next open.
+            logger.error("Error while storing mapped index segment", e);
+        }
+    }
+
     @Override
     void release() {
         boolean wasFirst = lock();
         try {
+            if (files != null) {
+                storeState();
+            }
             chunks.forEach(MemoryPoolChunk::destroy);
             chunks.clear();
             currentChunkIndex = -1;
             size = 0;
+            freeListHead = emptyAddress;
+            freeListSize = 0;
             table.release();
         } finally {
             unlock(wasFirst);
@@ -321,8 +472,17 @@ class SegmentWithMemoryPool<V> extends Segment<V> {
         try {
             chunks.forEach(MemoryPoolChunk::destroy);
             chunks.clear();
+            if (files != null) {
+                try {
+                    files.clearChunks();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
             currentChunkIndex = -1;
             size = 0;
+            freeListHead = emptyAddress;
+            freeListSize = 0;
             table.clear();
         } finally {
             unlock(wasFirst);
@@ -409,17 +569,35 @@ class SegmentWithMemoryPool<V> extends Segment<V> {
         final int mask;
         final long address;
         private boolean released;
+        // memory of mapped tables is released by the MappedIndex.
+        private final boolean mapped;
 
         static Table create(int hashTableSize) {
             int msz = Ints.checkedCast(HashTableUtil.MEMORY_POOL_BUCKET_ENTRY_LEN * hashTableSize);
             long address = Uns.allocate(msz, true);
-            return address != 0L ? new Table(address, hashTableSize) : null;
+            if (address == 0L) {
+                return null;
+            }
+            Table table = new Table(address, hashTableSize, false);
+            table.clear();
+            return table;
         }
 
-        private Table(long address, int hashTableSize) {
+        /**
+         * Table in memory mapped from a file, which is cleared unless it holds the table stored by the last close.
+         */
+        static Table mapped(long address, int hashTableSize, boolean clear) {
+            Table table = new Table(address, hashTableSize, true);
+            if (clear) {
+                table.clear();
+            }
+            return table;
+        }
+
+        private Table(long address, int hashTableSize, boolean mapped) {
             this.address = address;
             this.mask = hashTableSize - 1;
-            clear();
+            this.mapped = mapped;
         }
 
         void clear() {
@@ -427,12 +605,14 @@ class SegmentWithMemoryPool<V> extends Segment<V> {
         }
 
         void release() {
-            Uns.free(address);
+            if (!mapped) {
+                Uns.free(address);
+            }
             released = true;
         }
 
         protected void finalize() throws Throwable {
-            if (!released) {
+            if (!released && !mapped) {
                 Uns.free(address);
             }
             super.finalize();
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import com.google.common.collect.Iterators;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Partitions keys across a number of independent HaloDB instances, each with its own write file,
+ * tombstone file, compaction thread and in-memory index, stored in subdirectories of the db directory.
+ * Write throughput and compaction capacity therefore scale with the number of shards. Open, close,
+ * snapshots and stats are run on all shards in parallel.
+ *
+ * The number of shards cannot be changed after the db was created, as keys are routed to shards by their hash.
+ */
+public final class ShardedHaloDB {
+    private static final Logger logger = LoggerFactory.getLogger(ShardedHaloDB.class);
+
+    static final String SHARD_DIRECTORY_PREFIX = "shard-";
+
+    private final HaloDB[] shards;
+    private final Hasher hasher = Hasher.create(HashAlgorithm.MURMUR3);
+    private final ExecutorService executor;
+
+    private ShardedHaloDB(int noOfShards) {
+        this.shards = new HaloDB[noOfShards];
+        this.executor = Executors.newFixedThreadPool(Math.min(noOfShards, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "ShardedHaloDBThread");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens, or creates, a db with noOfShards shards. Each shard is opened with a copy of the options in which
+     * numberOfRecords is divided by the number of shards.
+     */
+    public static ShardedHaloDB open(File directory, HaloDBOptions options, int noOfShards) throws HaloDBException {
+        if (noOfShards <= 0) {
+            throw new IllegalArgumentException("noOfShards should be > 0");
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new HaloDBException("Failed to create db directory " + directory.getName());
+        }
+        File[] existing = directory.listFiles(file -> file.isDirectory() && file.getName().startsWith(SHARD_DIRECTORY_PREFIX));
+        if (existing != null && existing.length != 0 && existing.length != noOfShards) {
+            throw new IllegalArgumentException("Number of shards cannot be changed after db was created. Current number of shards " + existing.length);
+        }
+
+        HaloDBOptions shardOptions = options.clone();
+        shardOptions.setNumberOfRecords(Math.max(1, options.getNumberOfRecords() / noOfShards));
+
+        ShardedHaloDB db = new ShardedHaloDB(noOfShards);
+        List<Future<HaloDB>> opened = new ArrayList<>(noOfShards);
+        for (int i = 0; i < noOfShards; i++) {
+            File shardDirectory = new File(directory, SHARD_DIRECTORY_PREFIX + i);
+            opened.add(db.executor.submit(() -> HaloDB.open(shardDirectory, shardOptions)));
+        }
+
+        HaloDBException error = null;
+        for (int i = 0; i < noOfShards; i++) {
+            try {
+                db.shards[i] = getResult(opened.get(i));
+            } catch (HaloDBException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+
+        if (error != null) {
+            // release the shards which did open.
+            for (HaloDB shard : db.shards) {
+                if (shard != null) {
+                    try {
+                        shard.close();
+                    } catch (HaloDBException e) {
+                        logger.error("Error while closing shard after failed open", e);
+                    }
+                }
+            }
+            db.executor.shutdown();
+            throw new HaloDBException("Failed to open db " + directory.getName(), error);
+        }
+
+        logger.info("Opened sharded HaloDB {} with {} shards", directory.getName(), noOfShards);
+        return db;
+    }
+
+    public static ShardedHaloDB open(String directory, HaloDBOptions options, int noOfShards) throws HaloDBException {
+        return open(new File(directory), options, noOfShards);
+    }
+
+    public byte[] get(byte[] key) throws HaloDBException {
+        return shard(key).get(key);
+    }
+
+    public byte[] getOrLoad(byte[] key, ValueLoader loader) throws HaloDBException {
+        return shard(key).getOrLoad(key, loader);
+    }
+
+    public CompletableFuture<byte[]> getAsync(byte[] key) {
+        return shard(key).getAsync(key);
+    }
+
+    public int get(byte[] key, ByteBuffer buffer) throws HaloDBException {
+        return shard(key).get(key, buffer);
+    }
+
+    public boolean get(byte[] key, Consumer<ByteBuffer> consumer) throws HaloDBException {
+        return shard(key).get(key, consumer);
+    }
+
+    public boolean contains(byte[] key) {
+        return shard(key).contains(key);
+    }
+
+    public boolean containsAll(Collection<byte[]> keys) {
+        for (byte[] key : keys) {
+            if (!shard(key).contains(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<byte[]> filterExisting(Collection<byte[]> keys) {
+        List<byte[]> existing = new ArrayList<>();
+        for (byte[] key : keys) {
+            if (shard(key).contains(key)) {
+                existing.add(key);
+            }
+        }
+        return existing;
+    }
+
+    public int valueSize(byte[] key) {
+        return shard(key).valueSize(key);
+    }
+
+    public byte[] getRange(byte[] key, int offset, int length) throws HaloDBException {
+        return shard(key).getRange(key, offset, length);
+    }
+
+    public ReadableByteChannel newValueChannel(byte[] key) throws HaloDBException {
+        return shard(key).newValueChannel(key);
+    }
+
+    /**
+     * Returns the values of the keys, in the same order, with null for keys which are not present.
+     * Keys are grouped by shard and each shard serves its keys with a single multiGet.
+     */
+    public List<byte[]> multiGet(List<byte[]> keys) throws HaloDBException {
+        List<List<Integer>> indexesPerShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            indexesPerShard.add(new ArrayList<>());
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            indexesPerShard.get(shardIndex(keys.get(i))).add(i);
+        }
+
+        byte[][] values = new byte[keys.size()][];
+        for (int i = 0; i < shards.length; i++) {
+            List<Integer> indexes = indexesPerShard.get(i);
+            if (indexes.isEmpty()) {
+                continue;
+            }
+            List<byte[]> shardKeys = new ArrayList<>(indexes.size());
+            for (int index : indexes) {
+                shardKeys.add(keys.get(index));
+            }
+            List<byte[]> shardValues = shards[i].multiGet(shardKeys);
+            for (int j = 0; j < indexes.size(); j++) {
+                values[indexes.get(j)] = shardValues.get(j);
+            }
+        }
+        return Arrays.asList(values);
+    }
+
+    public boolean put(byte[] key, byte[] value) throws HaloDBException {
+        return shard(key).put(key, value);
+    }
+
+    public boolean put(byte[] key, byte[] value, WriteOptions writeOptions) throws HaloDBException {
+        return shard(key).put(key, value, writeOptions);
+    }
+
+    public void delete(byte[] key) throws HaloDBException {
+        shard(key).delete(key);
+    }
+
+    public void delete(byte[] key, WriteOptions writeOptions) throws HaloDBException {
+        shard(key).delete(key, writeOptions);
+    }
+
+    public CompletableFuture<Void> putAsync(byte[] key, byte[] value) {
+        return shard(key).putAsync(key, value);
+    }
+
+    public CompletableFuture<Void> deleteAsync(byte[] key) {
+        return shard(key).deleteAsync(key);
+    }
+
+    /**
+     * Returns once all writes completed before this call, to any shard, have been fsynced.
+     */
+    public void awaitDurable() throws HaloDBException {
+        forEachShard(shard -> {
+            shard.awaitDurable();
+            return null;
+        });
+    }
+
+    public void close() throws HaloDBException {
+        if (executor.isShutdown()) {
+            // already closed.
+            return;
+        }
+        try {
+            forEachShard(shard -> {
+                shard.close();
+                return null;
+            });
+        } finally {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    logger.error("Sharded db threads did not stop");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (HaloDB shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * Stats of each shard, in shard order.
+     */
+    public List<HaloDBStats> stats() throws HaloDBException {
+        return forEachShard(HaloDB::stats);
+    }
+
+    public void resetStats() {
+        for (HaloDB shard : shards) {
+            shard.resetStats();
+        }
+    }
+
+    /**
+     * Iterates over the records of one shard after the other.
+     */
+    public Iterator<Record> newIterator() throws HaloDBException {
+        return Iterators.concat(newIterators().iterator());
+    }
+
+    /**
+     * One iterator per shard, which can be consumed in parallel.
+     */
+    public List<HaloDBIterator> newIterators() throws HaloDBException {
+        List<HaloDBIterator> iterators = new ArrayList<>(shards.length);
+        for (HaloDB shard : shards) {
+            iterators.add(shard.newIterator());
+        }
+        return iterators;
+    }
+
+    public void pauseCompaction() throws HaloDBException {
+        forEachShard(shard -> {
+            shard.pauseCompaction();
+            return null;
+        });
+    }
+
+    public void resumeCompaction() {
+        for (HaloDB shard : shards) {
+            shard.resumeCompaction();
+        }
+    }
+
+    /**
+     * Takes a snapshot of every shard, in the snapshot directory of each shard.
+     */
+    public boolean snapshot() throws HaloDBException {
+        return !forEachShard(HaloDB::snapshot).contains(false);
+    }
+
+    public boolean clearSnapshot() throws HaloDBException {
+        return !forEachShard(HaloDB::clearSnapshot).contains(false);
+    }
+
+    public int getNumberOfShards() {
+        return shards.length;
+    }
+
+    HaloDB getShard(int index) {
+        return shards[index];
+    }
+
+    int shardIndex(byte[] key) {
+        // the index uses the high bits of the hash to pick a segment and the low bits to pick a bucket,
+        // mix all bits so that the keys of a shard are still spread evenly over its index.
+        long hash = hasher.hash(key) * 0x9E3779B97F4A7C15L;
+        return (int) Long.remainderUnsigned(hash >>> 32, shards.length);
+    }
+
+    private HaloDB shard(byte[] key) {
+        return shards[shardIndex(key)];
+    }
+
+    private interface ShardFunction<T> {
+        T apply(HaloDB shard) throws HaloDBException;
+    }
+
+    /**
+     * Applies the function to all shards in parallel and returns the results in shard order.
+     * Throws the first error after all shards are done.
+     */
+    private <T> List<T> forEachShard(ShardFunction<T> function) throws HaloDBException {
+        List<Future<T>> futures = new ArrayList<>(shards.length);
+        for (HaloDB shard : shards) {
+            futures.add(executor.submit(() -> function.apply(shard)));
+        }
+
+        List<T> results = new ArrayList<>(shards.length);
+        HaloDBException error = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(getResult(future));
+            } catch (HaloDBException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return results;
+    }
+
+    private static <T> T getResult(Future<T> future) throws HaloDBException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HaloDBException("Interrupted while waiting for shard", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof HaloDBException) {
+                throw (HaloDBException) e.getCause();
+            }
+            throw new HaloDBException("Shard operation failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the values of keys missing from the db, running at most one load per key at a time.
+ * Callers which miss a key while it is being loaded wait for that load instead of starting their own.
+ * Keys for which the loader returned null can be remembered for a while, so that lookups of keys the
+ * backend doesn't have don't reach it every time.
+ */
+class SingleFlightLoader {
+
+    // at most this many keys without a value are remembered.
+    private static final int maxMissingKeys = 64 * 1024;
+
+    private final HaloDBInternal dbInternal;
+
+    private final ConcurrentHashMap<ByteBuffer, CompletableFuture<byte[]>> loads = new ConcurrentHashMap<>();
+
+    // null if keys without a value are not remembered.
+    private final Cache<ByteBuffer, Boolean> missingKeys;
+
+    SingleFlightLoader(HaloDBInternal dbInternal, long missingKeyExpiryMillis) {
+        this.dbInternal = dbInternal;
+        this.missingKeys = missingKeyExpiryMillis > 0 ?
+                           CacheBuilder.newBuilder()
+                               .maximumSize(maxMissingKeys)
+                               .expireAfterWrite(missingKeyExpiryMillis, TimeUnit.MILLISECONDS)
+                               .build() :
+                           null;
+    }
+
+    byte[] get(byte[] key, ValueLoader loader) throws IOException, HaloDBException {
+        byte[] value = dbInternal.get(key, 1);
+        if (value != null) {
+            return value;
+        }
+
+        // the key is copied as it outlives the call.
+        ByteBuffer wrappedKey = ByteBuffer.wrap(key.clone());
+        if (missingKeys != null && missingKeys.getIfPresent(wrappedKey) != null) {
+            return null;
+        }
+
+        CompletableFuture<byte[]> load = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = loads.putIfAbsent(wrappedKey, load);
+        if (running != null) {
+            return await(running);
+        }
+
+        try {
+            value = load(key, wrappedKey, loader);
+            load.complete(value);
+            return value;
+        } catch (Throwable t) {
+            load.completeExceptionally(t);
+            throw t;
+        } finally {
+            loads.remove(wrappedKey, load);
+        }
+    }
+
+    private byte[] load(byte[] key, ByteBuffer wrappedKey, ValueLoader loader) throws IOException, HaloDBException {
+        // a load which completed after our lookup has already stored the value.
+        byte[] value = dbInternal.get(key, 1);
+        if (value != null) {
+            return value;
+        }
+
+        try {
+            value = loader.load(key);
+        } catch (Exception e) {
+            throw new HaloDBException("Loading the value failed.", e);
+        }
+
+        if (value == null) {
+            if (missingKeys != null) {
+                missingKeys.put(wrappedKey, Boolean.TRUE);
+            }
+        } else if (!dbInternal.putIfAbsent(key, value)) {
+            // a put of the key while it was being loaded wins over the loaded value.
+            return dbInternal.get(key, 1);
+        }
+        return value;
+    }
+
+    private byte[] await(CompletableFuture<byte[]> load) throws IOException, HaloDBException {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HaloDBException("Interrupted while waiting for the value to be loaded.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            Throwables.propagateIfInstanceOf(cause, IOException.class);
+            Throwables.propagateIfInstanceOf(cause, HaloDBException.class);
+            throw Throwables.propagate(cause);
+        }
+    }
+}
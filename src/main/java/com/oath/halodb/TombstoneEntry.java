@@ -68,6 +68,21 @@ class TombstoneEntry {
         return new ByteBuffer[] {header, ByteBuffer.wrap(key)};
     }
 
+    /**
+     * Serializes the entry, including the checksum, into buffer at its current position.
+     */
+    void serialize(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.position(start + CHECKSUM_SIZE);
+        buffer.put((byte)version);
+        buffer.putLong(sequenceNumber);
+        buffer.put((byte)key.length);
+        buffer.put(key);
+
+        long crc32 = Utils.computeCheckSum(buffer, start + CHECKSUM_SIZE, buffer.position());
+        buffer.putInt(start + CHECKSUM_OFFSET, Utils.toSignedIntFromLong(crc32));
+    }
+
     static TombstoneEntry deserialize(ByteBuffer buffer) {
         long crc32 = Utils.toUnsignedIntFromInt(buffer.getInt());
         int version = Utils.toUnsignedByte(buffer.get());
@@ -15,7 +15,9 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 
 import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
@@ -31,6 +33,8 @@ class TombstoneFile {
     private final HaloDBOptions options;
 
     private long unFlushedData = 0;
+
+    private final GroupSync groupSync = new GroupSync(this::force);
     private long writeOffset = 0;
 
     static final String TOMBSTONE_FILE_NAME = ".tombstone";
@@ -77,19 +81,38 @@ class TombstoneFile {
     void write(TombstoneEntry entry) throws IOException {
         Objects.requireNonNull(entry, nullMessage);
 
-        ByteBuffer[] contents = entry.serialize();
-        long toWrite = 0;
-        for (ByteBuffer buffer : contents) {
-            toWrite += buffer.remaining();
+        write(Collections.singletonList(entry));
+    }
+
+    /**
+     * Writes all the entries with a single write.
+     */
+    void write(List<TombstoneEntry> entries) throws IOException {
+        int size = 0;
+        for (TombstoneEntry entry : entries) {
+            size += Objects.requireNonNull(entry, nullMessage).size();
+        }
+
+        ByteBuffer buffer = WriteBuffer.get(size);
+        for (TombstoneEntry entry : entries) {
+            entry.serialize(buffer);
         }
+        buffer.flip();
+
+        write(buffer);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
         long written = 0;
-        while (written < toWrite) {
-            written += channel.write(contents);
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
         }
 
         writeOffset += written;
+        groupSync.writeCompleted();
+
         unFlushedData += written;
-        if (options.isSyncWrite() || (options.getFlushDataSizeBytes() != -1 && unFlushedData > options.getFlushDataSizeBytes())) {
+        if (options.isInlineFlushEnabled() && unFlushedData > options.getFlushDataSizeBytes()) {
             flushToDisk();
             unFlushedData = 0;
         }
@@ -104,6 +127,28 @@ class TombstoneFile {
             channel.force(true);
     }
 
+    /**
+     * Makes all writes completed before this call durable to the given level. Concurrent
+     * callers are served by a single force(), see {@link GroupSync}.
+     */
+    void flushToDisk(Durability durability) throws IOException {
+        groupSync.sync(durability);
+    }
+
+    private void force(Durability durability) throws IOException {
+        switch (durability) {
+            case FSYNCED:
+                flushToDisk();
+                break;
+            case FLUSHED:
+                if (channel != null && channel.isOpen())
+                    channel.force(false);
+                break;
+            default:
+                // data was written to the file channel, nothing more to do.
+        }
+    }
+
     /**
      * Copies to a temp file those entries whose computed checksum matches the stored one and then
      * atomically rename the temp file to the current file.
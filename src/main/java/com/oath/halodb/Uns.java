@@ -15,8 +15,10 @@ import sun.misc.Unsafe;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.Buffer;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
@@ -256,6 +258,45 @@ final class Uns {
         unsafe.copyMemory(null, address + offset, arr, Unsafe.ARRAY_BYTE_BASE_OFFSET + off, len);
     }
 
+    /**
+     * Copies len bytes into the buffer at its position, and advances the position.
+     */
+    static void copyMemory(long address, long offset, ByteBuffer buffer, int len) {
+        validate(address, offset, len);
+        if (buffer.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        if (buffer.remaining() < len) {
+            throw new BufferOverflowException();
+        }
+        if (buffer.hasArray()) {
+            unsafe.copyMemory(null, address + offset, buffer.array(), Unsafe.ARRAY_BYTE_BASE_OFFSET + buffer.arrayOffset() + buffer.position(), len);
+        } else {
+            long bufferAddress = unsafe.getLong(buffer, DIRECT_BYTE_BUFFER_ADDRESS_OFFSET);
+            unsafe.copyMemory(null, address + offset, null, bufferAddress + buffer.position(), len);
+        }
+        buffer.position(buffer.position() + len);
+    }
+
+    /**
+     * Copies the remaining bytes of the buffer to the address, without changing the position of the buffer.
+     */
+    static void copyMemory(ByteBuffer buffer, long address, long offset) {
+        int len = buffer.remaining();
+        validate(address, offset, len);
+        if (buffer.hasArray()) {
+            unsafe.copyMemory(buffer.array(), Unsafe.ARRAY_BYTE_BASE_OFFSET + buffer.arrayOffset() + buffer.position(), null, address + offset, len);
+        } else if (buffer.isDirect()) {
+            long bufferAddress = unsafe.getLong(buffer, DIRECT_BYTE_BUFFER_ADDRESS_OFFSET);
+            unsafe.copyMemory(null, bufferAddress + buffer.position(), null, address + offset, len);
+        } else {
+            // read only heap buffer.
+            byte[] bytes = new byte[len];
+            buffer.duplicate().get(bytes);
+            copyMemory(bytes, 0, address, offset, len);
+        }
+    }
+
     static void copyMemory(long src, long srcOffset, long dst, long dstOffset, long len) {
         validate(src, srcOffset, len);
         validate(dst, dstOffset, len);
@@ -391,6 +432,13 @@ final class Uns {
         unsafe.putLong(buffer, DIRECT_BYTE_BUFFER_ADDRESS_OFFSET, 0L);
     }
 
+    /**
+     * Address of the memory of a direct or mapped buffer.
+     */
+    static long address(ByteBuffer directBuffer) {
+        return unsafe.getLong(directBuffer, DIRECT_BYTE_BUFFER_ADDRESS_OFFSET);
+    }
+
     static ByteBuffer readOnlyBuffer(long hashEntryAdr, int length, long offset) {
         return Uns.directBufferFor(hashEntryAdr + offset, 0, length, true);
     }
@@ -5,6 +5,9 @@
 
 package com.oath.halodb;
 
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
 class Utils {
     static long roundUpToPowerOf2(long number) {
         return (number > 1) ? Long.highestOneBit((number - 1) << 1) : 1;
@@ -38,4 +41,15 @@ class Utils {
     static int toUnsignedByte(byte value) {
         return value & 0xFF;
     }
+
+    /**
+     * CRC32 of the bytes of buffer in the range [from, to). Doesn't change the position or limit of buffer.
+     */
+    static long computeCheckSum(ByteBuffer buffer, int from, int to) {
+        ByteBuffer range = buffer.duplicate();
+        range.limit(to).position(from);
+        CRC32 crc32 = new CRC32();
+        crc32.update(range);
+        return crc32.getValue();
+    }
 }
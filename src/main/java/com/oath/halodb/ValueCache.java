@@ -0,0 +1,345 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import com.google.common.primitives.Ints;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Size bounded off-heap cache of values read from data files, keyed by the file id and the offset
+ * of the value in the file. A record at a given location never changes, therefore entries never have
+ * to be invalidated: once compaction moves a record the index points to its new location and the old
+ * entry is no longer looked up, eventually it is evicted.
+ *
+ * The cache is divided into segments, each with its own lock and an equal share of the capacity, and
+ * values larger than the share of a segment are not cached. Each segment keeps its entries in an off-heap
+ * open addressing table, whose memory and a per value allocation overhead count against the capacity.
+ * Entries are evicted using CLOCK. New entries are not marked as referenced, so values read only once
+ * are evicted before values which have been hit since they were added.
+ */
+class ValueCache {
+
+    private final CacheSegment[] segments;
+    private final int segmentShift;
+
+    ValueCache(long capacity) {
+        int noOfSegments = Ints.checkedCast(Utils.roundUpToPowerOf2(Runtime.getRuntime().availableProcessors() * 2));
+        this.segments = new CacheSegment[noOfSegments];
+        for (int i = 0; i < noOfSegments; i++) {
+            segments[i] = new CacheSegment(capacity / noOfSegments);
+        }
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(noOfSegments);
+    }
+
+    /**
+     * Returns a copy of the value at the given location, or null if it is not cached.
+     */
+    byte[] get(int fileId, int valueOffset) {
+        long key = key(fileId, valueOffset);
+        return segment(key).get(key);
+    }
+
+    /**
+     * Copies the value at the given location into the buffer, at its position, and returns true,
+     * or returns false if it is not cached.
+     */
+    boolean get(int fileId, int valueOffset, ByteBuffer buffer) {
+        long key = key(fileId, valueOffset);
+        return segment(key).get(key, buffer);
+    }
+
+    void put(int fileId, int valueOffset, byte[] value) {
+        put(fileId, valueOffset, ByteBuffer.wrap(value));
+    }
+
+    /**
+     * Caches the remaining bytes of the buffer, the position of the buffer is not changed.
+     */
+    void put(int fileId, int valueOffset, ByteBuffer value) {
+        long key = key(fileId, valueOffset);
+        segment(key).put(key, value);
+    }
+
+    /**
+     * Frees the off-heap memory of all entries. The cache is empty afterwards and no longer admits values.
+     */
+    void close() {
+        for (CacheSegment segment : segments) {
+            segment.release();
+        }
+    }
+
+    long getHitCount() {
+        long count = 0;
+        for (CacheSegment segment : segments) {
+            count += segment.hitCount;
+        }
+        return count;
+    }
+
+    long getMissCount() {
+        long count = 0;
+        for (CacheSegment segment : segments) {
+            count += segment.missCount;
+        }
+        return count;
+    }
+
+    long getEvictionCount() {
+        long count = 0;
+        for (CacheSegment segment : segments) {
+            count += segment.evictionCount;
+        }
+        return count;
+    }
+
+    long getSize() {
+        long size = 0;
+        for (CacheSegment segment : segments) {
+            size += segment.usedBytes;
+        }
+        return size;
+    }
+
+    void resetStats() {
+        for (CacheSegment segment : segments) {
+            segment.resetStats();
+        }
+    }
+
+    private static long key(int fileId, int valueOffset) {
+        return ((long) fileId << 32) | (valueOffset & 0xFFFFFFFFL);
+    }
+
+    private CacheSegment segment(long key) {
+        // file ids and offsets are sequential, mix the bits before picking a segment.
+        return segments[(int) ((key * 0x9E3779B97F4A7C15L) >>> segmentShift) & (segments.length - 1)];
+    }
+
+    private static class CacheSegment {
+        // off-heap open addressing table with linear probing, an empty slot has no value address.
+        // slot layout: key - 8 bytes, value address - 8 bytes, value size - 4 bytes, referenced - 4 bytes.
+        private static final int SLOT_SIZE = 8 + 8 + 4 + 4;
+        private static final int KEY_OFFSET = 0;
+        private static final int ADDRESS_OFFSET = 8;
+        private static final int SIZE_OFFSET = 16;
+        private static final int REFERENCED_OFFSET = 20;
+
+        private static final int INITIAL_SLOTS = 16;
+
+        // approximate bookkeeping of the allocator for every value allocated.
+        private static final int ALLOCATION_OVERHEAD = 16;
+
+        private long capacity;
+        private long table = 0;
+        private int slots = 0;
+        private int count = 0;
+        // the clock hand, the slot of the next eviction candidate.
+        private int hand = 0;
+
+        // values, their allocation overhead and the table.
+        private volatile long usedBytes = 0;
+        private volatile long hitCount = 0;
+        private volatile long missCount = 0;
+        private volatile long evictionCount = 0;
+
+        CacheSegment(long capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized byte[] get(long key) {
+            int slot = find(key);
+            if (slot == -1) {
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            long slotAddress = slotAddress(slot);
+            Uns.putInt(slotAddress, REFERENCED_OFFSET, 1);
+            int size = Uns.getInt(slotAddress, SIZE_OFFSET);
+            byte[] value = new byte[size];
+            Uns.copyMemory(Uns.getLong(slotAddress, ADDRESS_OFFSET), 0, value, 0, size);
+            return value;
+        }
+
+        synchronized boolean get(long key, ByteBuffer buffer) {
+            int slot = find(key);
+            if (slot == -1) {
+                missCount++;
+                return false;
+            }
+            hitCount++;
+            long slotAddress = slotAddress(slot);
+            Uns.putInt(slotAddress, REFERENCED_OFFSET, 1);
+            Uns.copyMemory(Uns.getLong(slotAddress, ADDRESS_OFFSET), 0, buffer, Uns.getInt(slotAddress, SIZE_OFFSET));
+            return true;
+        }
+
+        synchronized void put(long key, ByteBuffer value) {
+            int size = value.remaining();
+            long entryBytes = (long) size + ALLOCATION_OVERHEAD;
+            if (capacity == 0 || entryBytes + (long) INITIAL_SLOTS * SLOT_SIZE > capacity || find(key) != -1) {
+                return;
+            }
+            if (table == 0 && !resize(INITIAL_SLOTS)) {
+                return;
+            }
+            while (count > 0 && usedBytes + entryBytes + growthBytes() > capacity) {
+                evict();
+            }
+            if (usedBytes + entryBytes + growthBytes() > capacity) {
+                // the table would take up too much of the capacity.
+                return;
+            }
+            if (growthBytes() > 0 && !resize(slots * 2)) {
+                return;
+            }
+
+            long address = Uns.allocate(Math.max(size, 1));
+            if (address == 0L) {
+                // out of off-heap memory, don't cache.
+                return;
+            }
+            Uns.copyMemory(value, address, 0);
+            insert(key, address, size, 0);
+            count++;
+            usedBytes += entryBytes;
+        }
+
+        private void evict() {
+            while (true) {
+                long slotAddress = slotAddress(hand);
+                if (Uns.getLong(slotAddress, ADDRESS_OFFSET) == 0) {
+                    hand = (hand + 1) & (slots - 1);
+                    continue;
+                }
+                if (Uns.getInt(slotAddress, REFERENCED_OFFSET) != 0) {
+                    Uns.putInt(slotAddress, REFERENCED_OFFSET, 0);
+                    hand = (hand + 1) & (slots - 1);
+                    continue;
+                }
+
+                // an entry shifted into the slot by the removal is looked at next.
+                Uns.free(Uns.getLong(slotAddress, ADDRESS_OFFSET));
+                usedBytes -= (long) Uns.getInt(slotAddress, SIZE_OFFSET) + ALLOCATION_OVERHEAD;
+                remove(hand);
+                count--;
+                evictionCount++;
+                return;
+            }
+        }
+
+        private int find(long key) {
+            if (table == 0) {
+                return -1;
+            }
+            int mask = slots - 1;
+            for (int slot = index(key); ; slot = (slot + 1) & mask) {
+                long slotAddress = slotAddress(slot);
+                if (Uns.getLong(slotAddress, ADDRESS_OFFSET) == 0) {
+                    return -1;
+                }
+                if (Uns.getLong(slotAddress, KEY_OFFSET) == key) {
+                    return slot;
+                }
+            }
+        }
+
+        private void insert(long key, long address, int size, int referenced) {
+            int mask = slots - 1;
+            int slot = index(key);
+            while (Uns.getLong(slotAddress(slot), ADDRESS_OFFSET) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            long slotAddress = slotAddress(slot);
+            Uns.putLong(slotAddress, KEY_OFFSET, key);
+            Uns.putLong(slotAddress, ADDRESS_OFFSET, address);
+            Uns.putInt(slotAddress, SIZE_OFFSET, size);
+            Uns.putInt(slotAddress, REFERENCED_OFFSET, referenced);
+        }
+
+        /**
+         * Empties the slot and shifts back the entries after it which would no longer be found.
+         */
+        private void remove(int slot) {
+            int mask = slots - 1;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                long nextAddress = slotAddress(next);
+                if (Uns.getLong(nextAddress, ADDRESS_OFFSET) == 0) {
+                    break;
+                }
+                int home = index(Uns.getLong(nextAddress, KEY_OFFSET));
+                // the entry can be moved if the empty slot lies between its home slot and its slot.
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    Uns.copyMemory(nextAddress, 0, slotAddress(slot), 0, SLOT_SIZE);
+                    slot = next;
+                }
+            }
+            Uns.setMemory(slotAddress(slot), 0, SLOT_SIZE, (byte) 0);
+        }
+
+        // bytes the table grows by if one more entry is added.
+        private long growthBytes() {
+            return count + 1 > slots / 4 * 3 ? (long) slots * SLOT_SIZE : 0;
+        }
+
+        private boolean resize(int newSlots) {
+            long newTable = Uns.allocate((long) newSlots * SLOT_SIZE);
+            if (newTable == 0L) {
+                return false;
+            }
+            Uns.setMemory(newTable, 0, (long) newSlots * SLOT_SIZE, (byte) 0);
+
+            long oldTable = table;
+            int oldSlots = slots;
+            table = newTable;
+            slots = newSlots;
+            hand = 0;
+            for (int i = 0; i < oldSlots; i++) {
+                long slotAddress = oldTable + (long) i * SLOT_SIZE;
+                long address = Uns.getLong(slotAddress, ADDRESS_OFFSET);
+                if (address != 0) {
+                    insert(Uns.getLong(slotAddress, KEY_OFFSET), address,
+                           Uns.getInt(slotAddress, SIZE_OFFSET), Uns.getInt(slotAddress, REFERENCED_OFFSET));
+                }
+            }
+            Uns.free(oldTable);
+            usedBytes += (long) (newSlots - oldSlots) * SLOT_SIZE;
+            return true;
+        }
+
+        private int index(long key) {
+            // the segment is picked with the high bits of the same hash.
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (slots - 1);
+        }
+
+        private long slotAddress(int slot) {
+            return table + (long) slot * SLOT_SIZE;
+        }
+
+        synchronized void release() {
+            for (int i = 0; i < slots; i++) {
+                Uns.free(Uns.getLong(slotAddress(i), ADDRESS_OFFSET));
+            }
+            Uns.free(table);
+            table = 0;
+            slots = 0;
+            count = 0;
+            hand = 0;
+            usedBytes = 0;
+            capacity = 0;
+        }
+
+        synchronized void resetStats() {
+            hitCount = 0;
+            missCount = 0;
+            evictionCount = 0;
+        }
+    }
+}
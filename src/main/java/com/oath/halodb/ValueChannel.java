@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Streams a value from the data file it is stored in, reading only as many bytes as the destination
+ * buffers can hold. The file is pinned until the channel is closed, so that the value can still be read
+ * after compaction has moved it, and the channel returns the value as it was when the channel was opened.
+ */
+class ValueChannel implements ReadableByteChannel {
+
+    private final HaloDBFile file;
+    private long position;
+    private int remaining;
+    private boolean open = true;
+
+    /**
+     * The file must have been pinned with {@link HaloDBFile#acquire()}, it is released on close.
+     */
+    ValueChannel(HaloDBFile file, InMemoryIndexMetaData metaData) {
+        this.file = file;
+        this.position = metaData.getValueOffset();
+        this.remaining = metaData.getValueSize();
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer destination) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        if (remaining == 0) {
+            return -1;
+        }
+
+        int length = Math.min(destination.remaining(), remaining);
+        int limit = destination.limit();
+        destination.limit(destination.position() + length);
+        int read;
+        try {
+            read = file.readFromFile(position, destination);
+        } finally {
+            destination.limit(limit);
+        }
+        position += read;
+        remaining -= read;
+        return read;
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (open) {
+            open = false;
+            file.release();
+        }
+    }
+}
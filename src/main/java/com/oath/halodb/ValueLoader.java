@@ -0,0 +1,18 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+/**
+ * Loads the value of a key which is not in the db, see {@link HaloDB#getOrLoad(byte[], ValueLoader)}.
+ */
+@FunctionalInterface
+public interface ValueLoader {
+
+    /**
+     * Returns the value of the key, or null if it has none.
+     */
+    byte[] load(byte[] key) throws Exception;
+}
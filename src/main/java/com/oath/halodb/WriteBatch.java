@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A list of put and delete operations which are applied with a single write to each file by
+ * {@link HaloDB#write(WriteBatch)}. Operations are applied in the order in which they were added to
+ * the batch, but not atomically.
+ *
+ * This class is not thread safe.
+ */
+public final class WriteBatch {
+
+    private final List<Operation> operations = new ArrayList<>();
+
+    public void put(byte[] key, byte[] value) {
+        Objects.requireNonNull(key, "key cannot be null");
+        Objects.requireNonNull(value, "value cannot be null");
+        operations.add(new Operation(key, value));
+    }
+
+    public void delete(byte[] key) {
+        Objects.requireNonNull(key, "key cannot be null");
+        operations.add(new Operation(key, null));
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    public void clear() {
+        operations.clear();
+    }
+
+    List<Operation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    static class Operation {
+        private final byte[] key;
+
+        // null for delete operations.
+        private final byte[] value;
+
+        private Operation(byte[] key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        byte[] getKey() {
+            return key;
+        }
+
+        byte[] getValue() {
+            return value;
+        }
+
+        boolean isDelete() {
+            return value == null;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Per thread direct buffer into which records and index entries are serialized before being
+ * written to a file with a single write call.
+ *
+ * Writing a heap buffer to a FileChannel makes the JDK copy it to a temporary direct buffer first,
+ * serializing into a reused direct buffer avoids both that copy and the allocations per record.
+ */
+class WriteBuffer {
+
+    static final int initialSize = 64 * 1024;
+
+    // direct buffers larger than this are not retained by the thread.
+    static final int maxRetainedSize = 4 * 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(initialSize));
+
+    /**
+     * Returns a cleared buffer with a capacity of at least size bytes. The buffer can be used until
+     * the next call to this method from the same thread.
+     */
+    static ByteBuffer get(int size) {
+        ByteBuffer buffer = buffers.get();
+        if (buffer.capacity() < size) {
+            if (size > maxRetainedSize) {
+                return ByteBuffer.allocate(size);
+            }
+            buffer = ByteBuffer.allocateDirect((int)Utils.roundUpToPowerOf2(size));
+            buffers.set(buffer);
+        }
+        buffer.clear();
+        return buffer;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Options of a single {@link HaloDB#put(byte[], byte[], WriteOptions)} or {@link HaloDB#delete(byte[], WriteOptions)}.
+ *
+ * Concurrent writes which request the same durability are made durable by a single flush of each file.
+ * If sync writes are enabled in {@link HaloDBOptions} every write is fsynced regardless of its options.
+ */
+public final class WriteOptions {
+
+    /**
+     * Writes are acknowledged once the data has been written to the file.
+     */
+    public static final WriteOptions DEFAULT = new WriteOptions(Durability.WRITTEN);
+
+    private final Durability durability;
+
+    public WriteOptions(Durability durability) {
+        if (durability == null) {
+            throw new IllegalArgumentException("durability cannot be null");
+        }
+        this.durability = durability;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper("")
+            .add("durability", durability)
+            .toString();
+    }
+}
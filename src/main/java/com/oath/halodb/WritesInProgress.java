@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Counts the writes in progress, so that a sync can wait for the writes which started before it without
+ * blocking writers. Writes are counted in the current one of two epochs. {@link #await()} switches the
+ * epoch and waits for the writes counted in the previous one, writes started meanwhile are counted in
+ * the new one and are not waited for.
+ */
+class WritesInProgress {
+
+    private final AtomicInteger[] writes = {new AtomicInteger(0), new AtomicInteger(0)};
+    private volatile int epoch = 0;
+
+    /**
+     * Counts a write and returns the epoch to pass to {@link #end(int)}. Must be called before the write
+     * takes its sequence number.
+     */
+    int begin() {
+        while (true) {
+            int current = epoch;
+            writes[current].incrementAndGet();
+            // await() switched the epoch and might have seen no writes, count the write in the new one.
+            if (epoch == current) {
+                return current;
+            }
+            writes[current].decrementAndGet();
+        }
+    }
+
+    void end(int epoch) {
+        writes[epoch].decrementAndGet();
+    }
+
+    /**
+     * Returns once all writes which began before this call have ended.
+     */
+    synchronized void await() {
+        int previous = epoch;
+        epoch = 1 - previous;
+        for (int spins = 0; writes[previous].get() != 0; spins++) {
+            if (spins < 100) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, 10_000);
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
+public class AsyncReadTest extends TestBase {
+
+    @Test
+    public void testReadsAreDoneOnReadThreads() throws HaloDBException, ExecutionException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("AsyncReadTest", "testReadsAreDoneOnReadThreads");
+
+        Set<String> readingThreads = ConcurrentHashMap.newKeySet();
+        new MockUp<HaloDBFile>() {
+            @Mock
+            int readFromFile(Invocation invocation, long position, ByteBuffer destinationBuffer) throws IOException {
+                readingThreads.add(Thread.currentThread().getName());
+                return invocation.proceed();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setNumberOfReadThreads(2);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecords(db, 500);
+        readingThreads.clear();
+
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        for (Record r : records) {
+            futures.add(db.getAsync(r.getKey()));
+        }
+        for (int i = 0; i < records.size(); i++) {
+            Assert.assertEquals(futures.get(i).get(), records.get(i).getValue());
+        }
+        Assert.assertNull(db.getAsync(TestUtils.generateRandomByteArray(200)).get());
+        while (db.stats().getNumberOfQueuedReads() < records.size()) {
+            Thread.sleep(1);
+        }
+
+        Assert.assertEquals(readingThreads.size(), 1);
+        Assert.assertTrue(readingThreads.contains("HaloDBReadThread"));
+
+        HaloDBStats stats = db.stats();
+        Assert.assertEquals(stats.getNumberOfQueuedReads(), records.size());
+        Assert.assertEquals(stats.getNumberOfRejectedReads(), 0);
+        Assert.assertEquals(stats.getReadQueueDepth(), 0);
+    }
+
+    @Test
+    public void testReadsWithoutReadThreads() throws HaloDBException, ExecutionException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("AsyncReadTest", "testReadsWithoutReadThreads");
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+
+        List<Record> records = TestUtils.insertRandomRecords(db, 100);
+        for (Record r : records) {
+            CompletableFuture<byte[]> future = db.getAsync(r.getKey());
+            Assert.assertTrue(future.isDone());
+            Assert.assertEquals(future.get(), r.getValue());
+        }
+        Assert.assertEquals(db.stats().getNumberOfQueuedReads(), 0);
+    }
+
+    @Test
+    public void testReadsAreRejectedWhenQueueIsFull() throws HaloDBException, InterruptedException, ExecutionException {
+        String directory = TestUtils.getTestDirectory("AsyncReadTest", "testReadsAreRejectedWhenQueueIsFull");
+
+        CountDownLatch readStarted = new CountDownLatch(1);
+        CountDownLatch releaseReads = new CountDownLatch(1);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            int readFromFile(Invocation invocation, long position, ByteBuffer destinationBuffer) throws IOException, InterruptedException {
+                if (Thread.currentThread().getName().equals("HaloDBReadThread")) {
+                    readStarted.countDown();
+                    releaseReads.await();
+                }
+                return invocation.proceed();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setNumberOfReadThreads(1);
+        options.setReadQueueSize(1);
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertRandomRecords(db, 3);
+
+        // first read blocks the only read thread, second is queued and third is rejected.
+        CompletableFuture<byte[]> first = db.getAsync(records.get(0).getKey());
+        readStarted.await();
+        CompletableFuture<byte[]> second = db.getAsync(records.get(1).getKey());
+        CompletableFuture<byte[]> third = db.getAsync(records.get(2).getKey());
+
+        Assert.assertTrue(third.isCompletedExceptionally());
+        try {
+            third.get();
+            Assert.fail("Read should have been rejected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof HaloDBException);
+        }
+        Assert.assertEquals(db.stats().getReadQueueDepth(), 1);
+        Assert.assertEquals(db.stats().getNumberOfRejectedReads(), 1);
+
+        releaseReads.countDown();
+        Assert.assertEquals(first.get(), records.get(0).getValue());
+        Assert.assertEquals(second.get(), records.get(1).getValue());
+        // stats are updated after the future completed.
+        while (db.stats().getNumberOfQueuedReads() < 2) {
+            Thread.sleep(1);
+        }
+        Assert.assertTrue(db.stats().getQueuedReadLatency99thPercentileMicros() > 0);
+    }
+
+    @Test
+    public void testQueuedReadsCompleteOnClose() throws HaloDBException, ExecutionException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("AsyncReadTest", "testQueuedReadsCompleteOnClose");
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setNumberOfReadThreads(1);
+        options.setReadQueueSize(10_000);
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertRandomRecords(db, 1000);
+
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        for (Record r : records) {
+            futures.add(db.getAsync(r.getKey()));
+        }
+        db.close();
+        for (int i = 0; i < records.size(); i++) {
+            Assert.assertEquals(futures.get(i).get(), records.get(i).getValue());
+        }
+    }
+
+    @Test
+    public void testReadsAreRejectedWhileClosing() throws Exception {
+        String directory = TestUtils.getTestDirectory("AsyncReadTest", "testReadsAreRejectedWhileClosing");
+
+        CountDownLatch readStarted = new CountDownLatch(1);
+        CountDownLatch releaseReads = new CountDownLatch(1);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            int readFromFile(Invocation invocation, long position, ByteBuffer destinationBuffer) throws IOException, InterruptedException {
+                if (Thread.currentThread().getName().equals("HaloDBReadThread")) {
+                    readStarted.countDown();
+                    releaseReads.await();
+                }
+                return invocation.proceed();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setNumberOfReadThreads(1);
+        options.setReadQueueSize(10_000);
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertRandomRecords(db, 2);
+
+        CompletableFuture<byte[]> first = db.getAsync(records.get(0).getKey());
+        readStarted.await();
+        // close waits for the blocked read, reads submitted meanwhile are rejected.
+        Thread closer = new Thread(() -> {
+            try {
+                db.close();
+            } catch (HaloDBException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        closer.start();
+
+        List<CompletableFuture<byte[]>> queued = new ArrayList<>();
+        CompletableFuture<byte[]> rejected;
+        while (!(rejected = db.getAsync(records.get(1).getKey())).isCompletedExceptionally()) {
+            queued.add(rejected);
+        }
+        try {
+            rejected.get();
+            Assert.fail("Read should have been rejected");
+        } catch (ExecutionException e) {
+            Assert.assertEquals(e.getCause().getMessage(), "DB is closed");
+        }
+        Assert.assertEquals(db.stats().getNumberOfRejectedReads(), 0);
+
+        releaseReads.countDown();
+        closer.join();
+        Assert.assertEquals(first.get(), records.get(0).getValue());
+        for (CompletableFuture<byte[]> future : queued) {
+            Assert.assertEquals(future.get(), records.get(1).getValue());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidReadQueueSize() {
+        new HaloDBOptions().setReadQueueSize(0);
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import com.google.common.primitives.Longs;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
+public class AsyncWriteTest extends TestBase {
+
+    @Test
+    public void testPutAndDeleteAsync() throws Exception {
+        String directory = TestUtils.getTestDirectory("AsyncWriteTest", "testPutAndDeleteAsync");
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(16 * 1024);
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.generateRandomData(2000);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Record r : records) {
+            futures.add(db.putAsync(r.getKey(), r.getValue()));
+        }
+        for (int i = 0; i < records.size(); i += 2) {
+            futures.add(db.deleteAsync(records.get(i).getKey()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+
+        verify(db, records);
+
+        db.close();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        verify(db, records);
+    }
+
+    @Test
+    public void testAsyncWritesFromManyThreads() throws Exception {
+        String directory = TestUtils.getTestDirectory("AsyncWriteTest", "testAsyncWritesFromManyThreads");
+        HaloDBOptions options = new HaloDBOptions();
+        // small queue so that producers have to wait for the writer thread.
+        options.setAsyncWriteQueueSize(16);
+        options.setMaxFileSize(16 * 1024);
+        options.setCompactionDisabled(true);
+        final HaloDB db = getTestDB(directory, options);
+
+        int noOfThreads = 8, recordsPerThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < noOfThreads; t++) {
+            final int threadId = t;
+            results.add(executor.submit(() -> {
+                List<CompletableFuture<Void>> futures = new ArrayList<>();
+                for (int i = 0; i < recordsPerThread; i++) {
+                    long key = (long)threadId * recordsPerThread + i;
+                    futures.add(db.putAsync(Longs.toByteArray(key), Longs.toByteArray(key)));
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        Assert.assertEquals(db.size(), noOfThreads * recordsPerThread);
+        for (long key = 0; key < noOfThreads * recordsPerThread; key++) {
+            Assert.assertEquals(db.get(Longs.toByteArray(key)), Longs.toByteArray(key));
+        }
+    }
+
+    @Test
+    public void testCloseAppliesQueuedWrites() throws Exception {
+        String directory = TestUtils.getTestDirectory("AsyncWriteTest", "testCloseAppliesQueuedWrites");
+        HaloDBOptions options = new HaloDBOptions();
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.generateRandomData(5000);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Record r : records) {
+            futures.add(db.putAsync(r.getKey(), r.getValue()));
+        }
+        db.close();
+        for (CompletableFuture<Void> future : futures) {
+            Assert.assertTrue(future.isDone());
+            Assert.assertFalse(future.isCompletedExceptionally());
+        }
+
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(db.size(), records.size());
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+    }
+
+    @Test
+    public void testFsyncedWritesAreFlushedOncePerBatch() throws Exception {
+        String directory = TestUtils.getTestDirectory("AsyncWriteTest", "testFsyncedWritesAreFlushedOncePerBatch");
+
+        AtomicInteger dataFileCount = new AtomicInteger(0);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                dataFileCount.incrementAndGet();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setAsyncWriteDurability(Durability.FSYNCED);
+        HaloDB db = getTestDB(directory, options);
+
+        int noOfRecords = 1000;
+        List<Record> records = TestUtils.generateRandomData(noOfRecords);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Record r : records) {
+            futures.add(db.putAsync(r.getKey(), r.getValue()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+
+        // each batch applied by the writer thread is flushed once.
+        Assert.assertTrue(dataFileCount.get() >= 1);
+        Assert.assertTrue(dataFileCount.get() <= noOfRecords);
+    }
+
+    @Test
+    public void testWrittenDurabilityDoesNotFlush() throws Exception {
+        String directory = TestUtils.getTestDirectory("AsyncWriteTest", "testWrittenDurabilityDoesNotFlush");
+
+        AtomicInteger dataFileCount = new AtomicInteger(0);
+        AtomicInteger tombstoneFileCount = new AtomicInteger(0);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                dataFileCount.incrementAndGet();
+            }
+        };
+        new MockUp<TombstoneFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                tombstoneFileCount.incrementAndGet();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setAsyncWriteDurability(Durability.WRITTEN);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.generateRandomData(100);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Record r : records) {
+            futures.add(db.putAsync(r.getKey(), r.getValue()));
+            futures.add(db.deleteAsync(r.getKey()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+
+        Assert.assertEquals(dataFileCount.get(), 0);
+        Assert.assertEquals(tombstoneFileCount.get(), 0);
+        Assert.assertEquals(db.size(), 0);
+    }
+
+    @Test
+    public void testAsyncWriteWithLargeKey() throws Exception {
+        String directory = TestUtils.getTestDirectory("AsyncWriteTest", "testAsyncWriteWithLargeKey");
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+
+        CompletableFuture<Void> future = db.putAsync(new byte[Byte.MAX_VALUE + 1], Longs.toByteArray(1));
+        assertFailedWithHaloDBException(future);
+
+        // the writer thread is not affected.
+        db.putAsync(Longs.toByteArray(1), Longs.toByteArray(1)).get();
+        Assert.assertEquals(db.get(Longs.toByteArray(1)), Longs.toByteArray(1));
+    }
+
+    @Test
+    public void testInvalidAsyncWriteDoesNotFailOtherWrites() throws Exception {
+        String directory = TestUtils.getTestDirectory("AsyncWriteTest", "testInvalidAsyncWriteDoesNotFailOtherWrites");
+        HaloDBOptions options = new HaloDBOptions();
+        // all writes below are queued within the linger time and applied as one batch.
+        options.setAsyncWriteLingerMicros(TimeUnit.SECONDS.toMicros(1));
+        HaloDB db = getTestDB(directory, options);
+        db.put(Longs.toByteArray(2), Longs.toByteArray(2));
+
+        CompletableFuture<Void> put = db.putAsync(Longs.toByteArray(1), Longs.toByteArray(1));
+        CompletableFuture<Void> invalid = db.deleteAsync(new byte[Byte.MAX_VALUE + 1]);
+        CompletableFuture<Void> delete = db.deleteAsync(Longs.toByteArray(2));
+
+        assertFailedWithHaloDBException(invalid);
+        put.get();
+        delete.get();
+        Assert.assertEquals(db.get(Longs.toByteArray(1)), Longs.toByteArray(1));
+        Assert.assertNull(db.get(Longs.toByteArray(2)));
+    }
+
+    @Test
+    public void testAsyncWriteAfterClose() throws Exception {
+        String directory = TestUtils.getTestDirectory("AsyncWriteTest", "testAsyncWriteAfterClose");
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+        db.putAsync(Longs.toByteArray(1), Longs.toByteArray(1)).get();
+        db.close();
+
+        assertFailedWithHaloDBException(db.putAsync(Longs.toByteArray(2), Longs.toByteArray(2)));
+        assertFailedWithHaloDBException(db.deleteAsync(Longs.toByteArray(1)));
+    }
+
+    private void assertFailedWithHaloDBException(CompletableFuture<Void> future) throws InterruptedException {
+        try {
+            future.get();
+            Assert.fail("Future should have completed exceptionally");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof HaloDBException);
+        }
+    }
+
+    private void verify(HaloDB db, List<Record> records) throws HaloDBException {
+        Assert.assertEquals(db.size(), records.size() / 2);
+        for (int i = 0; i < records.size(); i++) {
+            byte[] actual = db.get(records.get(i).getKey());
+            if (i % 2 == 0) {
+                Assert.assertNull(actual);
+            } else {
+                Assert.assertEquals(actual, records.get(i).getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testLingerCoalescesWritesIntoOneBatch() throws Exception {
+        String directory = TestUtils.getTestDirectory("AsyncWriteTest", "testLingerCoalescesWritesIntoOneBatch");
+
+        AtomicInteger dataFileCount = new AtomicInteger(0);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                dataFileCount.incrementAndGet();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setAsyncWriteDurability(Durability.FSYNCED);
+        options.setAsyncWriteLingerMicros(TimeUnit.SECONDS.toMicros(2));
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.generateRandomData(100);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Record r : records) {
+            futures.add(db.putAsync(r.getKey(), r.getValue()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+
+        // all writes were queued well within the linger time and are applied, and flushed, as one batch.
+        Assert.assertEquals(dataFileCount.get(), 1);
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+    }
+
+    @Test
+    public void testBatchSizeBytesLimitsLinger() throws Exception {
+        String directory = TestUtils.getTestDirectory("AsyncWriteTest", "testBatchSizeBytesLimitsLinger");
+        HaloDBOptions options = new HaloDBOptions();
+        // a batch is full after a single record, so nothing waits for the linger time.
+        options.setAsyncWriteBatchSizeBytes(1);
+        options.setAsyncWriteLingerMicros(TimeUnit.MINUTES.toMicros(10));
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.generateRandomData(100);
+        for (Record r : records) {
+            db.putAsync(r.getKey(), r.getValue()).get(1, TimeUnit.MINUTES);
+        }
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+    }
+}
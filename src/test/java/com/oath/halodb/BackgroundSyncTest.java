@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
+public class BackgroundSyncTest extends TestBase {
+
+    @Test
+    public void testFilesAreSyncedOffTheWritePath() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("BackgroundSyncTest", "testFilesAreSyncedOffTheWritePath");
+
+        Set<String> syncingThreads = ConcurrentHashMap.newKeySet();
+        new MockUp<HaloDBFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                syncingThreads.add(Thread.currentThread().getName());
+            }
+        };
+        new MockUp<TombstoneFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                syncingThreads.add(Thread.currentThread().getName());
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        // would flush inline after every write without the background syncer.
+        options.setFlushDataSizeBytes(1);
+        options.setBackgroundSyncIntervalMillis(10);
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecords(db, 1000);
+        for (int i = 0; i < records.size(); i += 2) {
+            db.delete(records.get(i).getKey());
+        }
+        db.awaitDurable();
+
+        Assert.assertTrue(syncingThreads.contains("BackgroundSyncerThread"));
+        Assert.assertFalse(syncingThreads.contains(Thread.currentThread().getName()));
+        // every put and delete took a sequence number.
+        Assert.assertTrue(db.getDurableSequenceNumber() >= records.size() * 3 / 2);
+
+        db.close();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(db.size(), records.size() / 2);
+        for (int i = 1; i < records.size(); i += 2) {
+            Assert.assertEquals(db.get(records.get(i).getKey()), records.get(i).getValue());
+        }
+    }
+
+    @Test
+    public void testDataSizeWakesUpSyncer() throws HaloDBException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("BackgroundSyncTest", "testDataSizeWakesUpSyncer");
+        HaloDBOptions options = new HaloDBOptions();
+        options.setFlushDataSizeBytes(1024);
+        options.setBackgroundSyncIntervalMillis(TimeUnit.HOURS.toMillis(1));
+        HaloDB db = getTestDB(directory, options);
+
+        Assert.assertEquals(db.getDurableSequenceNumber(), 0);
+        TestUtils.insertRandomRecords(db, 100);
+
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (db.getDurableSequenceNumber() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(db.getDurableSequenceNumber() > 0);
+    }
+
+    @Test
+    public void testAwaitDurableWithoutBackgroundSyncer() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("BackgroundSyncTest", "testAwaitDurableWithoutBackgroundSyncer");
+
+        AtomicInteger dataFileCount = new AtomicInteger(0);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                dataFileCount.incrementAndGet();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecords(db, 100);
+        Assert.assertEquals(dataFileCount.get(), 0);
+        Assert.assertEquals(db.getDurableSequenceNumber(), 0);
+
+        db.awaitDurable();
+        Assert.assertEquals(dataFileCount.get(), 1);
+        Assert.assertTrue(db.getDurableSequenceNumber() >= records.size());
+
+        // nothing written since.
+        db.awaitDurable();
+        Assert.assertEquals(dataFileCount.get(), 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeSyncInterval() {
+        new HaloDBOptions().setBackgroundSyncIntervalMillis(-1);
+    }
+}
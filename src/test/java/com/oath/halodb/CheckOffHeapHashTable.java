@@ -11,6 +11,8 @@ import com.oath.halodb.histo.EstimatedHistogram;
 
 import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 /**
  * This is a {@link OffHeapHashTable} implementation used to validate functionality of
@@ -89,6 +91,29 @@ final class CheckOffHeapHashTable<V> implements OffHeapHashTable<V>
         return segment.remove(keyBuffer);
     }
 
+    public V getAndPut(byte[] key, V value)
+    {
+        return getAndUpdate(key, current -> value);
+    }
+
+    public V getAndRemove(byte[] key)
+    {
+        return getAndUpdate(key, current -> null);
+    }
+
+    public V getAndUpdate(byte[] key, UnaryOperator<V> updateFunction)
+    {
+        KeyBuffer keyBuffer = keySource(key);
+        CheckSegment segment = segment(keyBuffer.hash());
+        byte[] existing = segment.getAndUpdate(keyBuffer, data -> {
+            V current = data != null ? valueSerializer.deserialize(ByteBuffer.wrap(data)) : null;
+            V value = updateFunction.apply(current);
+            return value == current ? data : value(value);
+        });
+
+        return existing != null ? valueSerializer.deserialize(ByteBuffer.wrap(existing)) : null;
+    }
+
     public void clear()
     {
         for (CheckSegment map : maps)
@@ -107,6 +132,12 @@ final class CheckOffHeapHashTable<V> implements OffHeapHashTable<V>
         return valueSerializer.deserialize(ByteBuffer.wrap(value));
     }
 
+    public void forEach(BiConsumer<ByteBuffer, V> consumer)
+    {
+        for (CheckSegment map : maps)
+            map.forEach((key, data) -> consumer.accept(ByteBuffer.wrap(key.buffer), valueSerializer.deserialize(ByteBuffer.wrap(data))));
+    }
+
     public boolean containsKey(byte[] key)
     {
         KeyBuffer keyBuffer = keySource(key);
@@ -12,6 +12,8 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 /**
  * On-heap test-only counterpart of {@link SegmentNonMemoryPool} for {@link CheckOffHeapHashTable}.
@@ -37,6 +39,11 @@ final class CheckSegment {
         lru.clear();
     }
 
+    synchronized void forEach(BiConsumer<KeyBuffer, byte[]> consumer)
+    {
+        map.forEach(consumer);
+    }
+
     synchronized byte[] get(KeyBuffer keyBuffer)
     {
         byte[] r = map.get(keyBuffer);
@@ -90,6 +97,22 @@ final class CheckSegment {
         return false;
     }
 
+    synchronized byte[] getAndUpdate(KeyBuffer keyBuffer, UnaryOperator<byte[]> updateFunction)
+    {
+        byte[] existing = map.get(keyBuffer);
+        byte[] data = updateFunction.apply(existing);
+
+        if (data == null)
+        {
+            if (existing != null)
+                remove(keyBuffer);
+        }
+        else if (data != existing)
+            put(keyBuffer, data, false, null);
+
+        return existing;
+    }
+
     synchronized long size()
     {
         return map.size();
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CompactIndexTest extends TestBase {
+    private static final Logger logger = LoggerFactory.getLogger(CompactIndexTest.class);
+
+    @Test
+    public void testSerializeCompactEntry() {
+        FileSlots fileSlots = new FileSlots();
+        ByteBuffer buffer = ByteBuffer.allocate(InMemoryIndexMetaData.serializedSize(0, true));
+        Assert.assertEquals(buffer.capacity(), InMemoryIndexMetaData.COMPACT_SERIALIZED_SIZE);
+
+        // file ids are timestamps, far larger than what 3 bytes hold.
+        int fileId = (int) (System.currentTimeMillis() / 1000);
+        new InMemoryIndexMetaData(fileId, Integer.MAX_VALUE, 1024, 1000).serialize(buffer, 0, fileSlots);
+        InMemoryIndexMetaData metaData = InMemoryIndexMetaData.deserialize(buffer, 0, fileSlots);
+        Assert.assertEquals(metaData.getFileId(), fileId);
+        Assert.assertEquals(metaData.getValueOffset(), Integer.MAX_VALUE);
+        Assert.assertEquals(metaData.getValueSize(), 1024);
+        Assert.assertEquals(metaData.getSequenceNumber(), InMemoryIndexMetaData.UNKNOWN_SEQUENCE_NUMBER);
+
+        byte[] value = TestUtils.generateRandomByteArray(20);
+        buffer = ByteBuffer.allocate(InMemoryIndexMetaData.serializedSize(32, true));
+        new InMemoryIndexMetaData(fileId + 1, 100, value.length, 1000, value).serialize(buffer, 32, fileSlots);
+        metaData = InMemoryIndexMetaData.deserialize(buffer, 32, fileSlots);
+        Assert.assertEquals(metaData.getFileId(), fileId + 1);
+        Assert.assertEquals(metaData.getInlineValue(), value);
+    }
+
+    @Test
+    public void testFileSlots() {
+        FileSlots fileSlots = new FileSlots();
+        for (int i = 0; i < 5000; i++) {
+            Assert.assertEquals(fileSlots.slotOf(1_000_000 + i), i);
+        }
+        Assert.assertEquals(fileSlots.slotOf(1_000_000), 0);
+        Assert.assertEquals(fileSlots.fileIdOf(4999), 1_004_999);
+
+        // a released slot is not handed out again while unused ones remain.
+        fileSlots.release(1_000_000);
+        Assert.assertEquals(fileSlots.slotOf(2_000_000), 5000);
+        Assert.assertEquals(fileSlots.slotOf(1_000_000), 5001);
+
+        FileSlots restored = new FileSlots();
+        restored.restore(fileSlots.getSlots());
+        Assert.assertEquals(restored.getSlots(), fileSlots.getSlots());
+        Assert.assertEquals(restored.fileIdOf(5000), 2_000_000);
+        Assert.assertEquals(restored.slotOf(3_000_000), 5002);
+    }
+
+    @Test
+    public void testIndexMemoryPerKey() {
+        double full = indexBytesPerKey(false);
+        double compact = indexBytesPerKey(true);
+        logger.info("Index memory per key of {} byte keys: {} bytes, compact {} bytes, {}% less",
+                    8, full, compact, Math.round(100 * (1 - compact / full)));
+        Assert.assertTrue(compact <= 0.75 * full);
+    }
+
+    // chunk memory of a memory pool index divided by the number of keys. Each segment gets enough keys
+    // for the unused space of its last chunk to be small.
+    private double indexBytesPerKey(boolean compact) {
+        int chunkSize = 16 * 1024;
+        InMemoryIndex index = new InMemoryIndex(100_000, true, 8, chunkSize, 0, compact ? new FileSlots() : null, null);
+        try {
+            int keys = 20_000 * index.getNoOfSegments();
+            for (int i = 0; i < keys; i++) {
+                index.put(TestUtils.generateRandomByteArray(8), new InMemoryIndexMetaData(i % 1000, i, i, i));
+            }
+            long chunks = 0;
+            for (SegmentStats stats : index.stats().getSegmentStats()) {
+                chunks += stats.getNumberOfChunks();
+            }
+            return (double) chunks * chunkSize / index.size();
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void testNewestVersionsAreIndexedOnOpen() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("CompactIndexTest", "testNewestVersionsAreIndexedOnOpen");
+
+        HaloDBOptions options = options();
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 500, 100);
+        List<Record> updated = TestUtils.updateRecordsWithSize(db, records.subList(0, 300), 200);
+        List<Record> deleted = updated.subList(0, 100);
+        TestUtils.deleteRecords(db, deleted);
+        // a deleted key which is written again.
+        Record rewritten = new Record(deleted.get(0).getKey(), TestUtils.generateRandomByteArray(100));
+        db.put(rewritten.getKey(), rewritten.getValue());
+        db.close();
+
+        List<Record> expected = new ArrayList<>(records.subList(300, records.size()));
+        expected.addAll(updated.subList(100, updated.size()));
+        expected.add(rewritten);
+
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(db.size(), expected.size());
+        for (Record r : expected) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+        for (Record r : deleted.subList(1, deleted.size())) {
+            Assert.assertNull(db.get(r.getKey()));
+        }
+    }
+
+    @Test
+    public void testCompactionWithCompactIndex() throws HaloDBException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("CompactIndexTest", "testCompactionWithCompactIndex");
+
+        HaloDBOptions options = options();
+        options.setCompactionThresholdPerFile(0.5);
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 500, 100);
+        List<Record> updated = TestUtils.updateRecordsWithSize(db, records, 200);
+        TestUtils.waitForCompactionToComplete(db);
+        Assert.assertTrue(db.stats().getSizeOfFilesDeleted() > 0);
+
+        db.close();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(db.size(), updated.size());
+        for (Record r : updated) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+    }
+
+    private HaloDBOptions options() {
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(10 * 1024);
+        options.setUseCompactIndex(true);
+        return options;
+    }
+}
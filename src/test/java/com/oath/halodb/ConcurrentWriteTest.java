@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrentWriteTest extends TestBase {
+
+    private static final int noOfThreads = 8;
+
+    @Test
+    public void testConcurrentPutsAndDeletes() throws Exception {
+        String directory = TestUtils.getTestDirectory("ConcurrentWriteTest", "testConcurrentPutsAndDeletes");
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(16 * 1024);
+        options.setMaxTombstoneFileSize(4 * 1024);
+        options.setCompactionThresholdPerFile(0.5);
+        final HaloDB db = getTestDB(directory, options);
+
+        int recordsPerThread = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+        List<Future<Map<Long, byte[]>>> futures = new ArrayList<>();
+        for (int t = 0; t < noOfThreads; t++) {
+            final int threadId = t;
+            futures.add(executor.submit(() -> {
+                // each thread writes to its own keys so that the expected final state is known.
+                Map<Long, byte[]> expected = new HashMap<>();
+                Random random = new Random(threadId);
+                for (int i = 0; i < recordsPerThread; i++) {
+                    long key = (long)threadId * recordsPerThread + i;
+                    byte[] value = TestUtils.generateRandomByteArray(random.nextInt(100) + 1);
+                    db.put(Longs.toByteArray(key), value);
+                    expected.put(key, value);
+
+                    if (i % 3 == 0) {
+                        long toDelete = (long)threadId * recordsPerThread + random.nextInt(i + 1);
+                        db.delete(Longs.toByteArray(toDelete));
+                        expected.remove(toDelete);
+                    }
+                }
+                return expected;
+            }));
+        }
+
+        Map<Long, byte[]> expected = new HashMap<>();
+        for (Future<Map<Long, byte[]>> future : futures) {
+            expected.putAll(future.get());
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        verify(db, expected);
+        TestUtils.waitForCompactionToComplete(db);
+        verify(db, expected);
+
+        db.close();
+        HaloDB reopened = getTestDBWithoutDeletingFiles(directory, options);
+        verify(reopened, expected);
+    }
+
+    @Test
+    public void testConcurrentUpdatesToSameKeys() throws Exception {
+        String directory = TestUtils.getTestDirectory("ConcurrentWriteTest", "testConcurrentUpdatesToSameKeys");
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(8 * 1024);
+        options.setCompactionDisabled(true);
+        final HaloDB db = getTestDB(directory, options);
+
+        int noOfKeys = 100, updatesPerThread = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < noOfThreads; t++) {
+            final int threadId = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(threadId);
+                for (int i = 0; i < updatesPerThread; i++) {
+                    byte[] key = Ints.toByteArray(random.nextInt(noOfKeys));
+                    db.put(key, Longs.toByteArray((long)threadId << 32 | i));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        Assert.assertEquals(db.size(), noOfKeys);
+        Map<Integer, byte[]> beforeClose = new HashMap<>();
+        for (int k = 0; k < noOfKeys; k++) {
+            byte[] value = db.get(Ints.toByteArray(k));
+            Assert.assertNotNull(value);
+            beforeClose.put(k, value);
+        }
+
+        // the version in the index must be the one with the highest sequence number, which is what we load on open.
+        db.close();
+        HaloDB reopened = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(reopened.size(), noOfKeys);
+        for (int k = 0; k < noOfKeys; k++) {
+            Assert.assertEquals(reopened.get(Ints.toByteArray(k)), beforeClose.get(k));
+        }
+    }
+
+    @Test
+    public void testConcurrentBatches() throws Exception {
+        String directory = TestUtils.getTestDirectory("ConcurrentWriteTest", "testConcurrentBatches");
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(8 * 1024);
+        options.setCompactionDisabled(true);
+        final HaloDB db = getTestDB(directory, options);
+
+        int batchesPerThread = 200, batchSize = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < noOfThreads; t++) {
+            final int threadId = t;
+            futures.add(executor.submit(() -> {
+                for (int b = 0; b < batchesPerThread; b++) {
+                    WriteBatch batch = new WriteBatch();
+                    for (int i = 0; i < batchSize; i++) {
+                        long key = ((long)threadId * batchesPerThread + b) * batchSize + i;
+                        batch.put(Longs.toByteArray(key), Longs.toByteArray(key));
+                    }
+                    db.write(batch);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        long total = (long)noOfThreads * batchesPerThread * batchSize;
+        Assert.assertEquals(db.size(), total);
+        db.close();
+        HaloDB reopened = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(reopened.size(), total);
+        for (long key = 0; key < total; key++) {
+            Assert.assertEquals(reopened.get(Longs.toByteArray(key)), Longs.toByteArray(key));
+        }
+    }
+
+    private void verify(HaloDB db, Map<Long, byte[]> expected) throws HaloDBException {
+        Assert.assertEquals(db.size(), expected.size());
+        for (Map.Entry<Long, byte[]> e : expected.entrySet()) {
+            Assert.assertEquals(db.get(Longs.toByteArray(e.getKey())), e.getValue());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
+public class ContainsTest extends TestBase {
+
+    @Test
+    public void testContainsDoesNotReadValues() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("ContainsTest", "testContainsDoesNotReadValues");
+
+        AtomicInteger reads = new AtomicInteger(0);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            int readFromFile(Invocation invocation, long position, ByteBuffer destinationBuffer) throws IOException {
+                reads.incrementAndGet();
+                return invocation.proceed();
+            }
+        };
+
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 100, 1024);
+        List<Record> deleted = records.subList(0, 10);
+        TestUtils.deleteRecords(db, deleted);
+
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> existing = new ArrayList<>();
+        for (Record r : records) {
+            keys.add(r.getKey());
+            if (!deleted.contains(r)) {
+                existing.add(r.getKey());
+            }
+        }
+        keys.add(TestUtils.generateRandomByteArray(20));
+
+        reads.set(0);
+        for (Record r : records) {
+            Assert.assertEquals(db.contains(r.getKey()), !deleted.contains(r));
+        }
+        Assert.assertFalse(db.contains(TestUtils.generateRandomByteArray(20)));
+        Assert.assertEquals(db.filterExisting(keys), existing);
+        Assert.assertTrue(db.containsAll(existing));
+        Assert.assertFalse(db.containsAll(keys));
+        Assert.assertTrue(db.containsAll(Collections.emptyList()));
+        Assert.assertEquals(reads.get(), 0);
+    }
+}
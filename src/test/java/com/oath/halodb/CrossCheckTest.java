@@ -361,6 +361,80 @@ public class CrossCheckTest
         }
     }
 
+    @Test(dataProvider = "hashAlgorithms")
+    public void testGetAndPutAndRemove(HashAlgorithm hashAlgorithm, boolean useMemoryPool) throws Exception
+    {
+        try (OffHeapHashTable<byte[]> cache = cache(hashAlgorithm, useMemoryPool))
+        {
+            HashTableTestUtils.fillMany(cache, fixedValueSize);
+
+            byte[] key = Longs.toByteArray(HashTableTestUtils.manyCount + 100);
+            byte[] value = HashTableTestUtils.randomBytes(fixedValueSize);
+            Assert.assertNull(cache.getAndPut(key, value));
+            Assert.assertEquals(cache.get(key), value);
+
+            byte[] update = HashTableTestUtils.randomBytes(fixedValueSize);
+            Assert.assertEquals(cache.getAndPut(key, update), value);
+            Assert.assertEquals(cache.get(key), update);
+
+            Assert.assertEquals(cache.getAndRemove(key), update);
+            Assert.assertNull(cache.get(key));
+            Assert.assertNull(cache.getAndRemove(key));
+
+            Random r = new Random();
+            for (int i = 0; i < HashTableTestUtils.manyCount; i++) {
+                byte[] k = Longs.toByteArray(r.nextInt(HashTableTestUtils.manyCount));
+                if (r.nextBoolean())
+                    cache.getAndRemove(k);
+                else
+                    cache.getAndPut(k, HashTableTestUtils.randomBytes(fixedValueSize));
+            }
+
+            // implicitly compares stats
+            cache.stats();
+        }
+    }
+
+    @Test(dataProvider = "hashAlgorithms")
+    public void testGetAndUpdate(HashAlgorithm hashAlgorithm, boolean useMemoryPool) throws Exception
+    {
+        try (OffHeapHashTable<byte[]> cache = cache(hashAlgorithm, useMemoryPool))
+        {
+            byte[] key = Longs.toByteArray(42);
+            byte[] value = HashTableTestUtils.randomBytes(fixedValueSize);
+
+            // returning null for an absent key doesn't add it.
+            Assert.assertNull(cache.getAndUpdate(key, current -> null));
+            Assert.assertFalse(cache.containsKey(key));
+
+            Assert.assertNull(cache.getAndUpdate(key, current -> current == null ? value : null));
+            Assert.assertEquals(cache.get(key), value);
+
+            // returning the current value leaves the entry unchanged.
+            Assert.assertEquals(cache.getAndUpdate(key, current -> current), value);
+            Assert.assertEquals(cache.get(key), value);
+
+            byte[] update = HashTableTestUtils.randomBytes(fixedValueSize);
+            Assert.assertEquals(cache.getAndUpdate(key, current -> update), value);
+            Assert.assertEquals(cache.get(key), update);
+
+            Assert.assertEquals(cache.getAndUpdate(key, current -> null), update);
+            Assert.assertFalse(cache.containsKey(key));
+            assertEquals(cache.size(), 0);
+
+            cache.stats();
+        }
+    }
+
+    @Test(dataProvider = "hashAlgorithms", expectedExceptions = IllegalArgumentException.class)
+    public void testGetAndUpdateWithWrongValueSize(HashAlgorithm hashAlgorithm, boolean useMemoryPool) throws Exception
+    {
+        try (OffHeapHashTable<byte[]> cache = cache(hashAlgorithm, useMemoryPool))
+        {
+            cache.getAndUpdate(Longs.toByteArray(42), current -> new byte[fixedValueSize + 1]);
+        }
+    }
+
     @Test(dataProvider = "hashAlgorithms")
     public void testClear(HashAlgorithm hashAlgorithm, boolean useMemoryPool) throws Exception
     {
@@ -10,9 +10,18 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -196,4 +205,111 @@ public class DBRepairTest extends TestBase {
             Assert.assertNull(db.get(records.get(i).getKey()));
         }
     }
+
+    @Test
+    public void testRepairTruncatedIndexFile() throws HaloDBException, IOException {
+        String directory = TestUtils.getTestDirectory("DBRepairTest", "testRepairTruncatedIndexFile");
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(1024 * 1024);
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+
+        int noOfRecords = 5 * 1024 + 512;
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, noOfRecords, 1024-Record.Header.HEADER_SIZE);
+        db.close();
+
+        // index entries are buffered, therefore a crash can leave the index file of an older data file
+        // without the entries of its last records.
+        File oldestDataFile = TestUtils.getDataFiles(directory).stream().min(Comparator.comparing(File::getName)).get();
+        File indexFile = new File(directory, HaloDBFile.getFileTimeStamp(oldestDataFile) + IndexFile.INDEX_FILE_NAME);
+        long indexFileSize = indexFile.length();
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(indexFileSize / 2);
+        }
+
+        // trick the db to think that there was an unclean shutdown.
+        DBMetaData dbMetaData = new DBMetaData(dbDirectory);
+        dbMetaData.setOpen(true);
+        dbMetaData.storeToFile();
+
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(indexFile.length(), indexFileSize);
+
+        Assert.assertEquals(db.size(), noOfRecords);
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+    }
+
+    @Test
+    public void testRepairIndexFileWithEntriesOutOfOrder() throws HaloDBException, IOException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("DBRepairTest", "testRepairIndexFileWithEntriesOutOfOrder");
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(1024 * 1024);
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+
+        // interleaved writers publish index entries in the order in which their writes complete.
+        List<Record> records = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            writers.add(new Thread(() -> {
+                for (int j = 0; j < 1024; j++) {
+                    byte[] key = TestUtils.generateRandomByteArray(8);
+                    byte[] value = TestUtils.generateRandomByteArray(1024 - Record.Header.HEADER_SIZE - key.length);
+                    try {
+                        db.put(key, value);
+                    } catch (HaloDBException e) {
+                        throw new RuntimeException(e);
+                    }
+                    records.add(new Record(key, value));
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        db.close();
+
+        // as left behind by a crash while the buffer held the entries of some of the last records,
+        // which precede records whose entries were written.
+        File oldestDataFile = TestUtils.getDataFiles(directory).stream().min(Comparator.comparing(File::getName)).get();
+        File indexFile = new File(directory, HaloDBFile.getFileTimeStamp(oldestDataFile) + IndexFile.INDEX_FILE_NAME);
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()));
+        List<IndexFileEntry> entries = new ArrayList<>();
+        while (content.hasRemaining()) {
+            entries.add(IndexFileEntry.deserialize(content));
+        }
+        List<IndexFileEntry> last = entries.stream()
+            .sorted(Comparator.comparingInt(IndexFileEntry::getRecordOffset))
+            .skip(entries.size() - 200)
+            .collect(Collectors.toList());
+        Collections.shuffle(last, new Random(0));
+        Set<IndexFileEntry> lost = new HashSet<>(last.subList(0, 100));
+        int maxOffset = entries.stream().mapToInt(IndexFileEntry::getRecordOffset).max().getAsInt();
+        Assert.assertTrue(lost.stream().anyMatch(e -> e.getRecordOffset() < maxOffset));
+
+        ByteBuffer crashed = ByteBuffer.allocate(content.capacity());
+        entries.stream().filter(e -> !lost.contains(e)).forEach(e -> e.serialize(crashed));
+        crashed.flip();
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(crashed);
+        }
+
+        // trick the db to think that there was an unclean shutdown.
+        DBMetaData dbMetaData = new DBMetaData(dbDirectory);
+        dbMetaData.setOpen(true);
+        dbMetaData.storeToFile();
+
+        HaloDB repaired = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(repaired.size(), records.size());
+        for (Record r : records) {
+            Assert.assertEquals(repaired.get(r.getKey()), r.getValue());
+        }
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
+public class DataFileFactoryTest extends TestBase {
+
+    @Test
+    public void testNextFileIsPreCreated() throws IOException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("DataFileFactoryTest", "testNextFileIsPreCreated");
+        TestUtils.deleteDirectory(new File(directory));
+        DBDirectory dbDirectory = DBDirectory.open(new File(directory));
+        try {
+            AtomicInteger fileIds = new AtomicInteger(100);
+            DataFileFactory factory = new DataFileFactory(dbDirectory, new HaloDBOptions(), fileIds::incrementAndGet);
+
+            HaloDBFile first = factory.next();
+            Assert.assertEquals(first.getFileId(), 101);
+
+            // the next file is created in the background, under a name which isn't that of a data file.
+            File next = new File(directory, "102" + HaloDBFile.DATA_FILE_NAME + HaloDBFile.NEXT_FILE_SUFFIX);
+            while (!next.exists()) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(TestUtils.getDataFiles(directory).size(), 1);
+            HaloDBFile second = factory.next();
+            Assert.assertEquals(second.getFileId(), 102);
+            Assert.assertFalse(next.exists());
+            Assert.assertTrue(new File(directory, "102" + HaloDBFile.DATA_FILE_NAME).exists());
+            Assert.assertTrue(new File(directory, "102" + IndexFile.INDEX_FILE_NAME).exists());
+
+            // unused pre-created file is deleted on close.
+            factory.close();
+            List<File> dataFiles = TestUtils.getDataFiles(directory);
+            Assert.assertEquals(dataFiles.size(), 2);
+            Assert.assertFalse(new File(directory, "103" + HaloDBFile.DATA_FILE_NAME + HaloDBFile.NEXT_FILE_SUFFIX).exists());
+            Assert.assertFalse(new File(directory, "103" + IndexFile.INDEX_FILE_NAME + HaloDBFile.NEXT_FILE_SUFFIX).exists());
+
+            first.close();
+            second.close();
+        } finally {
+            dbDirectory.close();
+            TestUtils.deleteDirectory(new File(directory));
+        }
+    }
+
+    @Test
+    public void testSealedFilesAreFlushedInBackground() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("DataFileFactoryTest", "testSealedFilesAreFlushedInBackground");
+
+        Set<String> flushingThreads = ConcurrentHashMap.newKeySet();
+        new MockUp<HaloDBFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                flushingThreads.add(Thread.currentThread().getName());
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(1024);
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecords(db, 100);
+        Assert.assertTrue(TestUtils.getDataFiles(directory).size() > 1);
+        db.close();
+
+        Assert.assertTrue(flushingThreads.contains("DataFileFactoryThread"));
+
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+    }
+
+    @Test
+    public void testUnusedNextFileIsDeletedOnOpen() throws HaloDBException, IOException {
+        String directory = TestUtils.getTestDirectory("DataFileFactoryTest", "testUnusedNextFileIsDeletedOnOpen");
+        HaloDBOptions options = new HaloDBOptions();
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertRandomRecords(db, 100);
+        db.close();
+
+        // as left behind by a crash after the next file was pre-created.
+        DBDirectory dir = DBDirectory.open(new File(directory));
+        int nextFileId = TestUtils.getLatestDataFile(directory).map(HaloDBFile::getFileTimeStamp).get() + 1;
+        HaloDBFile.createNext(dir, nextFileId, options).close();
+        dir.close();
+
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertFalse(new File(directory, nextFileId + HaloDBFile.DATA_FILE_NAME + HaloDBFile.NEXT_FILE_SUFFIX).exists());
+        Assert.assertFalse(new File(directory, nextFileId + IndexFile.INDEX_FILE_NAME + HaloDBFile.NEXT_FILE_SUFFIX).exists());
+        Assert.assertFalse(new File(directory, nextFileId + HaloDBFile.DATA_FILE_NAME).exists());
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+    }
+
+    @Test
+    public void testUsedNextFileIsRenamedOnOpen() throws HaloDBException, IOException {
+        String directory = TestUtils.getTestDirectory("DataFileFactoryTest", "testUsedNextFileIsRenamedOnOpen");
+        HaloDBOptions options = new HaloDBOptions();
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertRandomRecords(db, 100);
+        db.close();
+
+        // as left behind by a crash after records were written to a file whose rename wasn't synced.
+        File latest = TestUtils.getLatestDataFile(directory).get();
+        File index = new File(directory, HaloDBFile.getFileTimeStamp(latest) + IndexFile.INDEX_FILE_NAME);
+        Files.move(latest.toPath(), new File(latest.getPath() + HaloDBFile.NEXT_FILE_SUFFIX).toPath());
+        Files.move(index.toPath(), new File(index.getPath() + HaloDBFile.NEXT_FILE_SUFFIX).toPath());
+
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertTrue(latest.exists());
+        Assert.assertTrue(index.exists());
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+    }
+}
@@ -13,6 +13,9 @@ import com.oath.halodb.histo.EstimatedHistogram;
 import org.testng.Assert;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 /**
  * Test code that contains an instance of the production and check {@link OffHeapHashTable}
@@ -72,6 +75,30 @@ public class DoubleCheckOffHeapHashTableImpl<V> implements OffHeapHashTable<V>
         return rProd;
     }
 
+    public V getAndPut(byte[] key, V value)
+    {
+        V rProd = prod.getAndPut(key, value);
+        V rCheck = check.getAndPut(key, value);
+        Assert.assertEquals(rProd, rCheck, "for key='" + key + '\'');
+        return rProd;
+    }
+
+    public V getAndRemove(byte[] key)
+    {
+        V rProd = prod.getAndRemove(key);
+        V rCheck = check.getAndRemove(key);
+        Assert.assertEquals(rProd, rCheck, "for key='" + key + '\'');
+        return rProd;
+    }
+
+    public V getAndUpdate(byte[] key, UnaryOperator<V> updateFunction)
+    {
+        V rProd = prod.getAndUpdate(key, updateFunction);
+        V rCheck = check.getAndUpdate(key, updateFunction);
+        Assert.assertEquals(rProd, rCheck, "for key='" + key + '\'');
+        return rProd;
+    }
+
     public void clear()
     {
         prod.clear();
@@ -86,6 +113,11 @@ public class DoubleCheckOffHeapHashTableImpl<V> implements OffHeapHashTable<V>
         return rProd;
     }
 
+    public void forEach(BiConsumer<ByteBuffer, V> consumer)
+    {
+        prod.forEach(consumer);
+    }
+
     public boolean containsKey(byte[] key)
     {
         boolean rProd = prod.containsKey(key);
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import com.sun.jna.Platform;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
+public class FileAdvisorTest extends TestBase {
+
+    @Test
+    public void testAdvise() throws IOException {
+        Assert.assertEquals(FileAdvisor.isAvailable(), Platform.isLinux());
+        if (!FileAdvisor.isAvailable()) {
+            return;
+        }
+
+        File directory = new File(TestUtils.getTestDirectory("FileAdvisorTest", "testAdvise"));
+        TestUtils.deleteDirectory(directory);
+        directory.mkdirs();
+        File file = new File(directory, "file");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        FileChannel channel = randomAccessFile.getChannel();
+        try {
+            channel.write(ByteBuffer.wrap(TestUtils.generateRandomByteArray(64 * 1024)));
+            for (FileAdvisor.Advice advice : FileAdvisor.Advice.values()) {
+                Assert.assertTrue(FileAdvisor.advise(channel, 0, 0, advice));
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Assert.assertTrue(FileAdvisor.advise(mapped, FileAdvisor.Advice.RANDOM));
+            Assert.assertTrue(FileAdvisor.advise(mapped, FileAdvisor.Advice.SEQUENTIAL));
+        } finally {
+            channel.close();
+            randomAccessFile.close();
+        }
+
+        // the file descriptor of a closed channel is no longer valid.
+        Assert.assertFalse(FileAdvisor.advise(channel, 0, 0, FileAdvisor.Advice.RANDOM));
+        TestUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testScansAreAdvised() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("FileAdvisorTest", "testScansAreAdvised");
+
+        Map<FileAdvisor.Advice, AtomicInteger> advised = new ConcurrentHashMap<>();
+        new MockUp<FileAdvisor>() {
+            @Mock
+            boolean advise(Invocation invocation, FileChannel channel, long offset, long length, FileAdvisor.Advice advice) {
+                advised.computeIfAbsent(advice, a -> new AtomicInteger()).incrementAndGet();
+                return invocation.proceed();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(10 * 1024);
+        options.setCompactionThresholdPerFile(0.5);
+        options.setUseFileAdvice(true);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 100, 1024);
+        Assert.assertTrue(count(advised, FileAdvisor.Advice.RANDOM) > 0);
+        Assert.assertEquals(count(advised, FileAdvisor.Advice.SEQUENTIAL), 0);
+
+        records = TestUtils.updateRecordsWithSize(db, records, 1024);
+        TestUtils.waitForCompactionToComplete(db);
+        Assert.assertTrue(count(advised, FileAdvisor.Advice.SEQUENTIAL) > 0);
+        Assert.assertTrue(count(advised, FileAdvisor.Advice.DONTNEED) > 0);
+
+        // each file is advised SEQUENTIAL while being iterated over and RANDOM afterwards.
+        advised.clear();
+        HaloDBIterator iterator = db.newIterator();
+        int recordCount = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            recordCount++;
+        }
+        Assert.assertEquals(recordCount, records.size());
+        Assert.assertTrue(count(advised, FileAdvisor.Advice.SEQUENTIAL) > 0);
+        Assert.assertEquals(count(advised, FileAdvisor.Advice.RANDOM), count(advised, FileAdvisor.Advice.SEQUENTIAL));
+
+        db.close();
+        advised.clear();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertTrue(count(advised, FileAdvisor.Advice.WILLNEED) > 0);
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+    }
+
+    @Test
+    public void testNoAdviceByDefault() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("FileAdvisorTest", "testNoAdviceByDefault");
+
+        AtomicInteger advised = new AtomicInteger(0);
+        new MockUp<FileAdvisor>() {
+            @Mock
+            boolean advise(FileChannel channel, long offset, long length, FileAdvisor.Advice advice) {
+                advised.incrementAndGet();
+                return true;
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(10 * 1024);
+        options.setCompactionThresholdPerFile(0.5);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 100, 1024);
+        TestUtils.updateRecordsWithSize(db, records, 1024);
+        TestUtils.waitForCompactionToComplete(db);
+        db.newIterator().forEachRemaining(record -> {});
+        Assert.assertEquals(advised.get(), 0);
+    }
+
+    private static int count(Map<FileAdvisor.Advice, AtomicInteger> advised, FileAdvisor.Advice advice) {
+        AtomicInteger count = advised.get(advice);
+        return count != null ? count.get() : 0;
+    }
+}
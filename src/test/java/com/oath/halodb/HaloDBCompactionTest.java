@@ -11,11 +11,21 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
 public class HaloDBCompactionTest extends TestBase {
 
     private final int recordSize = 1024;
@@ -43,6 +53,59 @@ public class HaloDBCompactionTest extends TestBase {
         }
     }
 
+    @Test
+    public void testReadsDuringCompactionAreNotRetried() throws HaloDBException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("HaloDBCompactionTest", "testReadsDuringCompactionAreNotRetried");
+
+        AtomicInteger closedReads = new AtomicInteger(0);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            int readFromFile(Invocation invocation, long position, ByteBuffer destinationBuffer) throws IOException {
+                try {
+                    return invocation.proceed();
+                } catch (Throwable t) {
+                    if (t instanceof ClosedChannelException) {
+                        closedReads.incrementAndGet();
+                    }
+                    throw t;
+                }
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(10 * 1024);
+        options.setCompactionThresholdPerFile(0.1);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 100, 1024);
+        AtomicBoolean stop = new AtomicBoolean(false);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (!stop.get()) {
+                    for (Record r : records) {
+                        Assert.assertNotNull(db.get(r.getKey()));
+                    }
+                }
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        reader.start();
+
+        for (int i = 0; i < 10; i++) {
+            TestUtils.updateRecordsWithSize(db, records, 1024);
+        }
+        TestUtils.waitForCompactionToComplete(db);
+        stop.set(true);
+        reader.join();
+
+        Assert.assertNull(error.get());
+        // files being read from are closed and deleted only after the reads are done.
+        Assert.assertEquals(closedReads.get(), 0);
+        Assert.assertTrue(db.stats().getNumberOfRecordsCopied() > 0 || db.stats().getSizeOfFilesDeleted() > 0);
+    }
+
     @Test(dataProvider = "Options")
     public void testReOpenDBAfterCompaction(HaloDBOptions options) throws HaloDBException {
         String directory = TestUtils.getTestDirectory("HaloDBCompactionTest", "testReOpenDBAfterCompaction");
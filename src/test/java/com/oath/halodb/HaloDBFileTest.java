@@ -14,6 +14,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
@@ -57,6 +58,12 @@ public class HaloDBFileTest {
     public void testIndexFile() throws IOException {
         List<Record> list = insertTestRecords();
 
+        // index file entries are buffered until the index file is flushed.
+        indexFile.open();
+        Assert.assertFalse(indexFile.newIterator().hasNext());
+        indexFile.close();
+        file.getIndexFile().flush();
+
         indexFile.open();
         verifyIndexFile(indexFile, list);
     }
@@ -212,6 +219,36 @@ public class HaloDBFileTest {
         verifyIndexFile(repairedFile.getIndexFile(), list);
     }
 
+    @Test
+    public void testRepairDataFileWithHole() throws IOException {
+        List<Record> list = insertTestRecords();
+
+        // a writer reserved space but crashed before writing the record, while writers after it completed.
+        int holeOffset = (int)file.getWriteOffset();
+        int holeSize = 1000;
+        file.getChannel().write(ByteBuffer.allocate(holeSize), holeOffset);
+        file.setWriteOffset(holeOffset + holeSize);
+
+        List<Record> afterHole = insertTestRecords();
+        list.addAll(afterHole);
+
+        HaloDBFile repairedFile = file.repairFile(dbDirectory);
+        Assert.assertEquals(repairedFile.getPath(), file.getPath());
+        verifyDataFile(list, repairedFile);
+
+        IndexFile.IndexFileIterator indexFileIterator = repairedFile.getIndexFile().newIterator();
+        int count = 0, offset = 0;
+        while (indexFileIterator.hasNext()) {
+            IndexFileEntry e = indexFileIterator.next();
+            Record r = list.get(count++);
+            Assert.assertEquals(e.getKey(), r.getKey());
+            Assert.assertEquals(e.getRecordOffset(), offset);
+            offset += r.getRecordSize();
+        }
+        Assert.assertEquals(count, list.size());
+        Assert.assertEquals(repairedFile.getSize(), offset);
+    }
+
     private void verifyIndexFile(IndexFile file, List<Record> recordList) throws IOException {
         IndexFile.IndexFileIterator indexFileIterator = file.newIterator();
         int count = 0;
@@ -228,11 +265,51 @@ public class HaloDBFileTest {
         Assert.assertEquals(count, recordList.size());
     }
 
+    @Test
+    public void testPinnedFileIsDeletedOnRelease() throws IOException {
+        List<Record> list = insertTestRecords();
+        file.getIndexFile().flush();
+        Path indexPath = file.getIndexFile().getPath();
+
+        Assert.assertTrue(file.acquire());
+        Assert.assertTrue(file.acquire());
+        file.deleteWhenReleased();
+
+        // still pinned by two readers.
+        Assert.assertTrue(backingFile.exists());
+        Record record = list.get(0);
+        Assert.assertEquals(file.readFromFile(record.getRecordMetaData().getValueOffset(), record.getValue().length), record.getValue());
+        file.release();
+        Assert.assertTrue(backingFile.exists());
+        Assert.assertTrue(file.acquire());
+        file.release();
+
+        file.release();
+        Assert.assertFalse(backingFile.exists());
+        Assert.assertFalse(indexPath.toFile().exists());
+        Assert.assertFalse(file.acquire());
+        file = null;
+    }
+
+    @Test
+    public void testUnpinnedFileIsDeletedRightAway() throws IOException {
+        insertTestRecords();
+        Assert.assertTrue(file.acquire());
+        file.release();
+        Assert.assertTrue(backingFile.exists());
+
+        file.deleteWhenReleased();
+        Assert.assertFalse(backingFile.exists());
+        Assert.assertFalse(file.acquire());
+        file = null;
+    }
+
     private List<Record> insertTestRecords() throws IOException {
         List<Record> list = TestUtils.generateRandomData(100);
         for (Record record : list) {
             record.setSequenceNumber(100);
             InMemoryIndexMetaData meta = file.writeRecord(record);
+            file.completeWrite();
             record.setRecordMetaData(meta);
         }
         return list;
@@ -209,7 +209,7 @@ public class HaloDBStatsTest extends TestBase {
 
         HaloDBStats stats = db.stats();
         Map<String, String> map = stats.toStringMap();
-        Assert.assertEquals(map.size(), 22);
+        Assert.assertEquals(map.size(), 31);
         Assert.assertNotNull(map.get("statsResetTime"));
         Assert.assertNotNull(map.get("size"));
         Assert.assertNotNull(map.get("Options"));
@@ -232,6 +232,15 @@ public class HaloDBStatsTest extends TestBase {
         Assert.assertNotNull(map.get("segmentStats"));
         Assert.assertNotNull(map.get("numberOfSegments"));
         Assert.assertNotNull(map.get("staleDataPercentPerFile"));
+        Assert.assertNotNull(map.get("valueCacheHitCount"));
+        Assert.assertNotNull(map.get("valueCacheMissCount"));
+        Assert.assertNotNull(map.get("valueCacheEvictionCount"));
+        Assert.assertNotNull(map.get("valueCacheSize"));
+        Assert.assertNotNull(map.get("readQueueDepth"));
+        Assert.assertNotNull(map.get("numberOfQueuedReads"));
+        Assert.assertNotNull(map.get("numberOfRejectedReads"));
+        Assert.assertNotNull(map.get("queuedReadLatencyMeanMicros"));
+        Assert.assertNotNull(map.get("queuedReadLatency99thPercentileMicros"));
     }
 
 }
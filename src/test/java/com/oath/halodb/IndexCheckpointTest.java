@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IndexCheckpointTest extends TestBase {
+
+    @Test
+    public void testIndexIsLoadedFromCheckpoint() throws HaloDBException, IOException {
+        testIndexIsLoadedFromCheckpoint("testIndexIsLoadedFromCheckpoint", false);
+    }
+
+    @Test
+    public void testIndexIsLoadedFromCheckpointWithMemoryPool() throws HaloDBException, IOException {
+        testIndexIsLoadedFromCheckpoint("testIndexIsLoadedFromCheckpointWithMemoryPool", true);
+    }
+
+    private void testIndexIsLoadedFromCheckpoint(String name, boolean useMemoryPool) throws HaloDBException, IOException {
+        String directory = TestUtils.getTestDirectory("IndexCheckpointTest", name);
+        Path checkpoint = new File(directory).toPath().resolve(IndexCheckpoint.CHECKPOINT_FILE_NAME);
+
+        HaloDBOptions options = options();
+        if (useMemoryPool) {
+            options.setUseMemoryPool(true);
+            options.setFixedKeySize(8);
+            options.setMemoryPoolChunkSize(64 * 1024);
+        }
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertAndDeleteRecords(db, 500, 100);
+        db.close();
+        Assert.assertTrue(Files.exists(checkpoint));
+
+        AtomicInteger scans = TestUtils.countIndexFileScans();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(scans.get(), 0);
+        Assert.assertFalse(Files.exists(checkpoint));
+        TestUtils.verifyRecords(db, records);
+
+        // new writes get larger sequence numbers than those in the checkpoint.
+        Record record = records.get(0);
+        byte[] value = TestUtils.generateRandomByteArray(100);
+        db.put(record.getKey(), value);
+        db.close();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(db.get(record.getKey()), value);
+    }
+
+    @Test
+    public void testChangedFilesAreScanned() throws HaloDBException, IOException {
+        String directory = TestUtils.getTestDirectory("IndexCheckpointTest", "testChangedFilesAreScanned");
+        Path checkpoint = new File(directory).toPath().resolve(IndexCheckpoint.CHECKPOINT_FILE_NAME);
+        Path oldCheckpoint = new File(directory).toPath().resolve("old");
+
+        HaloDBOptions options = options();
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertAndDeleteRecords(db, 500, 100);
+        db.close();
+        Files.copy(checkpoint, oldCheckpoint);
+
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        List<Record> updated = TestUtils.updateRecordsWithSize(db, records, 100);
+        db.close();
+        // the old checkpoint misses the updates.
+        Files.move(oldCheckpoint, checkpoint, StandardCopyOption.REPLACE_EXISTING);
+
+        AtomicInteger scans = TestUtils.countIndexFileScans();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertTrue(scans.get() > 0);
+        TestUtils.verifyRecords(db, updated);
+    }
+
+    @Test
+    public void testCorruptedCheckpointIsIgnored() throws HaloDBException, IOException {
+        String directory = TestUtils.getTestDirectory("IndexCheckpointTest", "testCorruptedCheckpointIsIgnored");
+        Path checkpoint = new File(directory).toPath().resolve(IndexCheckpoint.CHECKPOINT_FILE_NAME);
+
+        HaloDBOptions options = options();
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertAndDeleteRecords(db, 500, 100);
+        db.close();
+
+        byte[] data = Files.readAllBytes(checkpoint);
+        data[data.length / 2]++;
+        Files.write(checkpoint, data);
+
+        AtomicInteger scans = TestUtils.countIndexFileScans();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertTrue(scans.get() > 0);
+        TestUtils.verifyRecords(db, records);
+    }
+
+    @Test
+    public void testCheckpointIsIgnoredAfterUncleanShutdown() throws HaloDBException, IOException {
+        String directory = TestUtils.getTestDirectory("IndexCheckpointTest", "testCheckpointIsIgnoredAfterUncleanShutdown");
+
+        HaloDBOptions options = options();
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertAndDeleteRecords(db, 500, 100);
+        db.close();
+
+        DBDirectory dbDirectory = DBDirectory.open(new File(directory));
+        DBMetaData metaData = new DBMetaData(dbDirectory);
+        metaData.loadFromFileIfExists();
+        metaData.setOpen(true);
+        metaData.storeToFile();
+        dbDirectory.close();
+
+        AtomicInteger scans = TestUtils.countIndexFileScans();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertTrue(scans.get() > 0);
+        TestUtils.verifyRecords(db, records);
+    }
+
+    @Test
+    public void testStaleDataIsCompactedAfterLoadingCheckpoint() throws HaloDBException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("IndexCheckpointTest", "testStaleDataIsCompactedAfterLoadingCheckpoint");
+
+        HaloDBOptions options = options();
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 100, 1024);
+        List<Record> updated = TestUtils.updateRecordsWithSize(db, records, 1024);
+        db.close();
+
+        options.setCompactionDisabled(false);
+        options.setCompactionThresholdPerFile(0.5);
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        TestUtils.waitForCompactionToComplete(db);
+        Assert.assertTrue(db.stats().getSizeOfFilesDeleted() > 0);
+        TestUtils.verifyRecords(db, updated);
+    }
+
+    private HaloDBOptions options() {
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(10 * 1024);
+        options.setUseIndexCheckpoint(true);
+        return options;
+    }
+}
@@ -73,4 +73,25 @@ public class IndexFileEntryTest {
         Assert.assertEquals(entry.getSequenceNumber(), sequenceNumber);
         Assert.assertEquals(entry.getKey(), key);
     }
+
+    @Test
+    public void serializeIndexFileEntryIntoBuffer() {
+        byte[] key = TestUtils.generateRandomByteArray(8);
+        IndexFileEntry entry = new IndexFileEntry(key, 1024, 10240, 100, 200, -1);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(128);
+        buffer.position(3);
+        entry.serialize(buffer);
+        Assert.assertEquals(buffer.position(), 3 + entry.size());
+
+        buffer.flip().position(3);
+        IndexFileEntry deserialized = IndexFileEntry.deserializeIfNotCorrupted(buffer);
+        Assert.assertNotNull(deserialized);
+        Assert.assertEquals(deserialized.getKey(), key);
+        Assert.assertEquals(deserialized.getRecordSize(), 1024);
+        Assert.assertEquals(deserialized.getRecordOffset(), 10240);
+        Assert.assertEquals(deserialized.getSequenceNumber(), 100);
+        Assert.assertEquals(deserialized.getVersion(), 200);
+        Assert.assertEquals(deserialized.getCheckSum(), entry.computeCheckSum());
+    }
 }
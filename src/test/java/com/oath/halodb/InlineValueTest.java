@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
+public class InlineValueTest extends TestBase {
+
+    private final int inlineValueSize = 32;
+
+    @Test
+    public void testSerializeInlineValue() {
+        ByteBuffer buffer = ByteBuffer.allocate(InMemoryIndexMetaData.serializedSize(inlineValueSize));
+        Assert.assertEquals(buffer.capacity(), InMemoryIndexMetaData.SERIALIZED_SIZE + 1 + inlineValueSize);
+        byte[] value = TestUtils.generateRandomByteArray(20);
+
+        new InMemoryIndexMetaData(1, 100, value.length, 1000, value).serialize(buffer, inlineValueSize);
+        InMemoryIndexMetaData metaData = InMemoryIndexMetaData.deserialize(buffer, inlineValueSize);
+        Assert.assertEquals(metaData.getFileId(), 1);
+        Assert.assertEquals(metaData.getValueOffset(), 100);
+        Assert.assertEquals(metaData.getValueSize(), value.length);
+        Assert.assertEquals(metaData.getSequenceNumber(), 1000);
+        Assert.assertEquals(metaData.getInlineValue(), value);
+
+        buffer.clear();
+        new InMemoryIndexMetaData(1, 100, 1024, 1000).serialize(buffer, inlineValueSize);
+        Assert.assertFalse(InMemoryIndexMetaData.deserialize(buffer, inlineValueSize).hasInlineValue());
+        Assert.assertEquals(InMemoryIndexMetaData.serializedSize(0), InMemoryIndexMetaData.SERIALIZED_SIZE);
+    }
+
+    @Test
+    public void testSmallValuesAreReadFromIndex() throws HaloDBException, ExecutionException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("InlineValueTest", "testSmallValuesAreReadFromIndex");
+
+        AtomicInteger reads = countReads();
+        HaloDBOptions options = new HaloDBOptions();
+        options.setInlineValueSize(inlineValueSize);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> small = insertRecords(db, 100, inlineValueSize);
+        List<Record> large = insertRecords(db, 100, inlineValueSize + 1);
+        db.put("empty".getBytes(), new byte[0]);
+
+        reads.set(0);
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        List<byte[]> keys = new ArrayList<>();
+        for (Record r : small) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+            Assert.assertEquals(db.get(r.getKey(), buffer), r.getValue().length);
+            Assert.assertEquals(buffer, ByteBuffer.wrap(r.getValue()));
+            Assert.assertEquals(db.getRange(r.getKey(), 1, 2), Arrays.copyOfRange(r.getValue(), 1, 3));
+            Assert.assertEquals(db.getAsync(r.getKey()).get(), r.getValue());
+            keys.add(r.getKey());
+        }
+        List<byte[]> values = db.multiGet(keys);
+        for (int i = 0; i < small.size(); i++) {
+            Assert.assertEquals(values.get(i), small.get(i).getValue());
+        }
+        Assert.assertEquals(db.get("empty".getBytes()), new byte[0]);
+        Assert.assertEquals(reads.get(), 0);
+
+        for (Record r : large) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+        Assert.assertEquals(reads.get(), large.size());
+    }
+
+    @Test
+    public void testInlineValuesAfterCompactionAndReopen() throws HaloDBException {
+        testInlineValuesAfterCompactionAndReopen("testInlineValuesAfterCompactionAndReopen", false);
+    }
+
+    @Test
+    public void testInlineValuesWithMemoryPool() throws HaloDBException {
+        testInlineValuesAfterCompactionAndReopen("testInlineValuesWithMemoryPool", true);
+    }
+
+    private void testInlineValuesAfterCompactionAndReopen(String name, boolean useMemoryPool) throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("InlineValueTest", name);
+
+        AtomicInteger reads = countReads();
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(10 * 1024);
+        options.setCompactionThresholdPerFile(0.1);
+        options.setInlineValueSize(inlineValueSize);
+        if (useMemoryPool) {
+            options.setUseMemoryPool(true);
+            options.setFixedKeySize(8);
+            options.setMemoryPoolChunkSize(64 * 1024);
+        }
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = insertRecords(db, 1000, 16);
+        List<Record> updated = new ArrayList<>();
+        for (Record r : records.subList(0, 500)) {
+            byte[] value = TestUtils.generateRandomByteArray(16);
+            db.put(r.getKey(), value);
+            updated.add(new Record(r.getKey(), value));
+        }
+        updated.addAll(records.subList(500, records.size()));
+        TestUtils.waitForCompactionToComplete(db);
+        Assert.assertTrue(db.stats().getNumberOfRecordsCopied() > 0);
+
+        reads.set(0);
+        for (Record r : updated) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+        Assert.assertEquals(reads.get(), 0);
+
+        // index files don't hold values, open doesn't read them and the first get inlines them.
+        db.close();
+        reads.set(0);
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(reads.get(), 0);
+        for (Record r : updated) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+        Assert.assertEquals(reads.get(), updated.size());
+
+        reads.set(0);
+        for (Record r : updated) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+        Assert.assertEquals(reads.get(), 0);
+
+        // reads into a buffer inline values too.
+        db.close();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        reads.set(0);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        for (Record r : updated) {
+            Assert.assertEquals(db.get(r.getKey(), buffer), r.getValue().length);
+            Assert.assertEquals(buffer, ByteBuffer.wrap(r.getValue()));
+        }
+        Assert.assertEquals(reads.get(), updated.size());
+
+        reads.set(0);
+        for (Record r : updated) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+        Assert.assertEquals(reads.get(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidInlineValueSize() {
+        new HaloDBOptions().setInlineValueSize(-1);
+    }
+
+    private List<Record> insertRecords(HaloDB db, int count, int valueSize) throws HaloDBException {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] key = TestUtils.generateRandomByteArray(8);
+            byte[] value = TestUtils.generateRandomByteArray(valueSize);
+            db.put(key, value);
+            records.add(new Record(key, value));
+        }
+        return records;
+    }
+
+    private AtomicInteger countReads() {
+        AtomicInteger reads = new AtomicInteger(0);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            int readFromFile(Invocation invocation, long position, ByteBuffer destinationBuffer) throws IOException {
+                reads.incrementAndGet();
+                return invocation.proceed();
+            }
+        };
+        return reads;
+    }
+}
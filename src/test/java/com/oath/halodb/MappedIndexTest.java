@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MappedIndexTest extends TestBase {
+
+    @Test
+    public void testIndexIsReusedAfterCleanClose() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("MappedIndexTest", "testIndexIsReusedAfterCleanClose");
+        Path manifest = new File(directory).toPath().resolve(MappedIndex.MANIFEST_FILE_NAME);
+
+        HaloDBOptions options = options();
+        HaloDB db = getTestDB(directory, options);
+        // enough records to rehash the segments and fill several chunks.
+        List<Record> records = TestUtils.insertAndDeleteRecords(db, 20_000, 20);
+        db.close();
+        Assert.assertTrue(Files.exists(manifest));
+
+        AtomicInteger scans = TestUtils.countIndexFileScans();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(scans.get(), 0);
+        Assert.assertFalse(Files.exists(manifest));
+        TestUtils.verifyRecords(db, records);
+
+        // new writes reuse the free slots of deleted keys and get larger sequence numbers.
+        List<Record> updated = TestUtils.updateRecordsWithSize(db, records.subList(0, 1000), 100);
+        records.subList(0, 1000).clear();
+        records.addAll(updated);
+        records.addAll(TestUtils.insertRecordsWithKeySize(db, 1000, 8, 100));
+        db.close();
+
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(scans.get(), 0);
+        TestUtils.verifyRecords(db, records);
+    }
+
+    @Test
+    public void testIndexIsRebuiltAfterUncleanShutdown() throws HaloDBException, IOException {
+        String directory = TestUtils.getTestDirectory("MappedIndexTest", "testIndexIsRebuiltAfterUncleanShutdown");
+
+        HaloDBOptions options = options();
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertAndDeleteRecords(db, 1000, 20);
+        db.close();
+
+        DBDirectory dbDirectory = DBDirectory.open(new File(directory));
+        DBMetaData metaData = new DBMetaData(dbDirectory);
+        metaData.loadFromFileIfExists();
+        metaData.setOpen(true);
+        metaData.storeToFile();
+        dbDirectory.close();
+
+        AtomicInteger scans = TestUtils.countIndexFileScans();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertTrue(scans.get() > 0);
+        TestUtils.verifyRecords(db, records);
+    }
+
+    @Test
+    public void testIndexIsRebuiltWhenLayoutChanges() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("MappedIndexTest", "testIndexIsRebuiltWhenLayoutChanges");
+
+        HaloDBOptions options = options();
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertAndDeleteRecords(db, 1000, 20);
+        db.close();
+
+        options.setMemoryPoolChunkSize(16 * 1024);
+        AtomicInteger scans = TestUtils.countIndexFileScans();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertTrue(scans.get() > 0);
+        TestUtils.verifyRecords(db, records);
+    }
+
+    @Test
+    public void testIndexIsRebuiltWhenEncodingChanges() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("MappedIndexTest", "testIndexIsRebuiltWhenEncodingChanges");
+
+        // full entries without inline values have the size of compact entries with 8 byte inline values.
+        Assert.assertEquals(InMemoryIndexMetaData.serializedSize(0, false), InMemoryIndexMetaData.serializedSize(8, true));
+
+        HaloDBOptions options = options();
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertAndDeleteRecords(db, 1000, 20);
+        db.close();
+
+        options.setUseCompactIndex(true);
+        options.setInlineValueSize(8);
+        AtomicInteger scans = TestUtils.countIndexFileScans();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertTrue(scans.get() > 0);
+        TestUtils.verifyRecords(db, records);
+        db.close();
+
+        options.setUseCompactIndex(false);
+        options.setInlineValueSize(0);
+        scans.set(0);
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertTrue(scans.get() > 0);
+        TestUtils.verifyRecords(db, records);
+    }
+
+    @Test
+    public void testStaleDataIsCompactedAfterReusingIndex() throws HaloDBException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("MappedIndexTest", "testStaleDataIsCompactedAfterReusingIndex");
+
+        HaloDBOptions options = options();
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertRecordsWithKeySize(db, 100, 8, 1024);
+        List<Record> updated = TestUtils.updateRecordsWithSize(db, records, 1024);
+        db.close();
+
+        options.setCompactionDisabled(false);
+        options.setCompactionThresholdPerFile(0.5);
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        TestUtils.waitForCompactionToComplete(db);
+        Assert.assertTrue(db.stats().getSizeOfFilesDeleted() > 0);
+        TestUtils.verifyRecords(db, updated);
+    }
+
+    @Test
+    public void testCompactIndexIsReusedAfterCleanClose() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("MappedIndexTest", "testCompactIndexIsReusedAfterCleanClose");
+
+        HaloDBOptions options = options();
+        options.setUseCompactIndex(true);
+        options.setMaxFileSize(16 * 1024);
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+        // entries refer to many files, which keep their slots across the restart.
+        List<Record> records = TestUtils.insertAndDeleteRecords(db, 2000, 20);
+        db.close();
+
+        AtomicInteger scans = TestUtils.countIndexFileScans();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(scans.get(), 0);
+        TestUtils.verifyRecords(db, records);
+
+        List<Record> updated = TestUtils.updateRecordsWithSize(db, records.subList(0, 500), 100);
+        records.subList(0, 500).clear();
+        records.addAll(updated);
+        db.close();
+
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(scans.get(), 0);
+        TestUtils.verifyRecords(db, records);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMappedIndexRequiresMemoryPool() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("MappedIndexTest", "testMappedIndexRequiresMemoryPool");
+        HaloDBOptions options = new HaloDBOptions();
+        options.setUseMappedIndex(true);
+        getTestDB(directory, options);
+    }
+
+    private HaloDBOptions options() {
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(1024 * 1024);
+        options.setUseMemoryPool(true);
+        options.setFixedKeySize(8);
+        options.setMemoryPoolChunkSize(8 * 1024);
+        options.setNumberOfRecords(1000);
+        options.setUseMappedIndex(true);
+        return options;
+    }
+}
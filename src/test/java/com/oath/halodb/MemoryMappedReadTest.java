@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
+public class MemoryMappedReadTest extends TestBase {
+
+    @Test
+    public void testReadsFromSealedFiles() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("MemoryMappedReadTest", "testReadsFromSealedFiles");
+
+        AtomicInteger mappedFiles = new AtomicInteger(0);
+        AtomicInteger mappedReads = new AtomicInteger(0);
+        new MockUp<MappedFile>() {
+            @Mock
+            MappedFile map(Invocation invocation, FileChannel channel, long size) {
+                mappedFiles.incrementAndGet();
+                return invocation.proceed();
+            }
+
+            @Mock
+            int read(Invocation invocation, long position, ByteBuffer destination) {
+                mappedReads.incrementAndGet();
+                return invocation.proceed();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(10 * 1024);
+        options.setCompactionDisabled(true);
+        options.setUseMemoryMappedReads(true);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 100, 1024);
+        // ten files, all but the current write file are sealed.
+        waitForMappedFiles(mappedFiles, 9);
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+        Assert.assertTrue(mappedReads.get() > 0);
+
+        db.close();
+        mappedFiles.set(0);
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        // files of the previous run are mapped when opened.
+        Assert.assertTrue(mappedFiles.get() >= 9);
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+    }
+
+    @Test
+    public void testFilesAreNotMappedByDefault() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("MemoryMappedReadTest", "testFilesAreNotMappedByDefault");
+
+        AtomicInteger mappedFiles = new AtomicInteger(0);
+        new MockUp<MappedFile>() {
+            @Mock
+            MappedFile map(Invocation invocation, FileChannel channel, long size) {
+                mappedFiles.incrementAndGet();
+                return invocation.proceed();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(10 * 1024);
+        HaloDB db = getTestDB(directory, options);
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 50, 1024);
+        db.close();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+        Assert.assertEquals(mappedFiles.get(), 0);
+    }
+
+    @Test
+    public void testReadsDuringCompaction() throws HaloDBException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("MemoryMappedReadTest", "testReadsDuringCompaction");
+
+        AtomicInteger unmappedFiles = new AtomicInteger(0);
+        new MockUp<MappedFile>() {
+            @Mock
+            void unmap(Invocation invocation) {
+                unmappedFiles.incrementAndGet();
+                invocation.proceed();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(10 * 1024);
+        options.setCompactionThresholdPerFile(0.5);
+        options.setUseMemoryMappedReads(true);
+        HaloDB db = getTestDB(directory, options);
+        HaloDB readDB = db;
+
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 200, 1024);
+
+        AtomicBoolean stop = new AtomicBoolean(false);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            List<Record> snapshot = new ArrayList<>(records);
+            Thread reader = new Thread(() -> {
+                try {
+                    while (!stop.get()) {
+                        for (Record r : snapshot) {
+                            // the value is either the original or the updated one, never garbage.
+                            byte[] value = readDB.get(r.getKey());
+                            Assert.assertNotNull(value);
+                            Assert.assertEquals(value.length, r.getValue().length);
+                        }
+                    }
+                } catch (Throwable t) {
+                    error.compareAndSet(null, t);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        // stale files are compacted and deleted while being read from.
+        // values of the same size as the inserted ones.
+        List<Record> updated = TestUtils.updateRecordsWithSize(db, records, 1024 + Record.Header.HEADER_SIZE);
+        TestUtils.waitForCompactionToComplete(db);
+        stop.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        Assert.assertNull(error.get());
+        Assert.assertTrue(unmappedFiles.get() > 0);
+        for (Record r : updated) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+
+        db.close();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(db.size(), updated.size());
+        for (Record r : updated) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+    }
+
+    private void waitForMappedFiles(AtomicInteger mappedFiles, int count) {
+        // sealed files are mapped by the data file factory thread.
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (mappedFiles.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        Assert.assertTrue(mappedFiles.get() >= count);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MpscRingBufferTest {
+
+    @Test
+    public void testCapacityIsRoundedToPowerOfTwo() {
+        Assert.assertEquals(new MpscRingBuffer<Integer>(1).capacity(), 1);
+        Assert.assertEquals(new MpscRingBuffer<Integer>(5).capacity(), 8);
+        Assert.assertEquals(new MpscRingBuffer<Integer>(1024).capacity(), 1024);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new MpscRingBuffer<Integer>(0);
+    }
+
+    @Test
+    public void testOfferAndPoll() {
+        MpscRingBuffer<Integer> queue = new MpscRingBuffer<>(4);
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.poll());
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                Assert.assertTrue(queue.offer(i));
+            }
+            // queue is full.
+            Assert.assertFalse(queue.offer(4));
+            Assert.assertFalse(queue.isEmpty());
+
+            for (int i = 0; i < 4; i++) {
+                Assert.assertEquals(queue.poll().intValue(), i);
+            }
+            Assert.assertNull(queue.poll());
+            Assert.assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void testMultipleProducers() throws InterruptedException {
+        MpscRingBuffer<Integer> queue = new MpscRingBuffer<>(64);
+        int noOfProducers = 4, elementsPerProducer = 100_000;
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < noOfProducers; p++) {
+            final int producerId = p;
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < elementsPerProducer; i++) {
+                    while (!queue.offer(producerId * elementsPerProducer + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+
+        // elements of each producer must be polled in the order in which they were offered.
+        int[] lastSeen = new int[noOfProducers];
+        for (int p = 0; p < noOfProducers; p++) {
+            lastSeen[p] = -1;
+        }
+        int polled = 0;
+        while (polled < noOfProducers * elementsPerProducer) {
+            Integer element = queue.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            int producerId = element / elementsPerProducer;
+            int sequence = element % elementsPerProducer;
+            Assert.assertEquals(sequence, lastSeen[producerId] + 1);
+            lastSeen[producerId] = sequence;
+            polled++;
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        Assert.assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
+public class MultiGetTest extends TestBase {
+
+    @Test
+    public void testMultiGet() throws HaloDBException {
+        testMultiGet("testMultiGet", 0);
+    }
+
+    @Test
+    public void testMultiGetWithReadThreads() throws HaloDBException {
+        testMultiGet("testMultiGetWithReadThreads", 2);
+    }
+
+    private void testMultiGet(String name, int readThreads) throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("MultiGetTest", name);
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(10 * 1024);
+        options.setCompactionDisabled(true);
+        options.setNumberOfReadThreads(readThreads);
+        HaloDB db = getTestDB(directory, options);
+
+        // spread over ten files.
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 100, 1024);
+        List<Record> deleted = records.subList(0, 10);
+        TestUtils.deleteRecords(db, deleted);
+
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> expected = new ArrayList<>();
+        for (Record r : records) {
+            keys.add(r.getKey());
+            expected.add(deleted.contains(r) ? null : r.getValue());
+        }
+        // duplicates and keys which were never inserted.
+        keys.add(records.get(50).getKey());
+        expected.add(records.get(50).getValue());
+        keys.add(TestUtils.generateRandomByteArray(200));
+        expected.add(null);
+
+        List<byte[]> values = db.multiGet(keys);
+        Assert.assertEquals(values.size(), keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            Assert.assertEquals(values.get(i), expected.get(i));
+        }
+
+        Assert.assertTrue(db.multiGet(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testNearbyValuesAreReadTogether() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("MultiGetTest", "testNearbyValuesAreReadTogether");
+
+        AtomicInteger reads = new AtomicInteger(0);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            int readFromFile(Invocation invocation, long position, ByteBuffer destinationBuffer) throws IOException {
+                reads.incrementAndGet();
+                return invocation.proceed();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 100, 128);
+        List<byte[]> keys = new ArrayList<>();
+        // reverse the order in which the records were written.
+        for (int i = records.size() - 1; i >= 0; i--) {
+            keys.add(records.get(i).getKey());
+        }
+
+        reads.set(0);
+        List<byte[]> values = db.multiGet(keys);
+        Assert.assertEquals(reads.get(), 1);
+        for (int i = 0; i < keys.size(); i++) {
+            Assert.assertEquals(values.get(i), records.get(records.size() - 1 - i).getValue());
+        }
+    }
+
+    @Test
+    public void testMultiGetDuringCompaction() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("MultiGetTest", "testMultiGetDuringCompaction");
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(10 * 1024);
+        options.setCompactionThresholdPerFile(0.1);
+        options.setNumberOfReadThreads(2);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 200, 1024);
+        List<byte[]> keys = new ArrayList<>();
+        for (Record r : records) {
+            keys.add(r.getKey());
+        }
+
+        for (int round = 0; round < 5; round++) {
+            records = TestUtils.updateRecordsWithSize(db, records, 1024);
+            List<byte[]> values = db.multiGet(keys);
+            for (int i = 0; i < records.size(); i++) {
+                Assert.assertEquals(values.get(i), records.get(i).getValue());
+            }
+        }
+
+        TestUtils.waitForCompactionToComplete(db);
+        List<byte[]> values = db.multiGet(keys);
+        for (int i = 0; i < records.size(); i++) {
+            Assert.assertEquals(values.get(i), records.get(i).getValue());
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PageCacheWarmupTest extends TestBase {
+
+    @Test
+    public void testStoreAndLoadHotReads() throws IOException {
+        File directory = new File(TestUtils.getTestDirectory("PageCacheWarmupTest", "testStoreAndLoadHotReads"));
+        TestUtils.deleteDirectory(directory);
+        DBDirectory dbDirectory = DBDirectory.open(directory);
+        try {
+            Assert.assertTrue(HotReadLog.loadFromFile(dbDirectory).isEmpty());
+
+            HotReadLog log = new HotReadLog(10);
+            // reads are sampled, the same ones are recorded once.
+            for (int i = 0; i < 1000; i++) {
+                log.record(1, 100, 10);
+                log.record(2, 200, 20);
+            }
+            List<HotReadLog.HotRead> reads = log.getHotReads();
+            Assert.assertEquals(reads.size(), 2);
+            Assert.assertTrue(reads.contains(new HotReadLog.HotRead(1, 100, 10)));
+            Assert.assertTrue(reads.contains(new HotReadLog.HotRead(2, 200, 20)));
+
+            // only the most recent reads are kept.
+            for (int i = 0; i < 10_000; i++) {
+                log.record(3, i, 30);
+            }
+            reads = log.getHotReads();
+            Assert.assertEquals(reads.size(), 10);
+
+            log.storeToFile(dbDirectory);
+            Assert.assertEquals(HotReadLog.loadFromFile(dbDirectory), reads);
+
+            Path file = directory.toPath().resolve(HotReadLog.HOT_READS_FILE_NAME);
+            byte[] data = Files.readAllBytes(file);
+            data[data.length - 1]++;
+            Files.write(file, data);
+            Assert.assertTrue(HotReadLog.loadFromFile(dbDirectory).isEmpty());
+        } finally {
+            dbDirectory.close();
+            TestUtils.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void testPageCacheIsWarmedUpOnOpen() throws HaloDBException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("PageCacheWarmupTest", "testPageCacheIsWarmedUpOnOpen");
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setCompactionDisabled(true);
+        options.setHotReadLogSize(1000);
+        HaloDB db = getTestDB(directory, options);
+        Assert.assertTrue(db.isPageCacheWarmupComplete());
+
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 200, 1024);
+        // hot values are too far apart to be read together.
+        List<Record> hot = new ArrayList<>();
+        for (int i = 0; i < records.size(); i += 10) {
+            hot.add(records.get(i));
+        }
+        int hotBytes = 0;
+        for (Record r : hot) {
+            for (int i = 0; i < 200; i++) {
+                Assert.assertEquals(db.get(r.getKey()), r.getValue());
+            }
+            hotBytes += r.getValue().length;
+        }
+
+        db.close();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        while (!db.isPageCacheWarmupComplete()) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(db.getPageCacheWarmupBytes(), hotBytes);
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+
+        // without the option the recorded reads are not used.
+        db.close();
+        options.setHotReadLogSize(0);
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertTrue(db.isPageCacheWarmupComplete());
+        Assert.assertEquals(db.getPageCacheWarmupBytes(), 0);
+    }
+
+    @Test
+    public void testRangeReadsAreWarmedUp() throws HaloDBException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("PageCacheWarmupTest", "testRangeReadsAreWarmedUp");
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setCompactionDisabled(true);
+        options.setHotReadLogSize(1000);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 200, 1024);
+        List<Record> hot = new ArrayList<>();
+        for (int i = 0; i < records.size(); i += 10) {
+            hot.add(records.get(i));
+        }
+        for (Record r : hot) {
+            for (int i = 0; i < 200; i++) {
+                Assert.assertEquals(db.getRange(r.getKey(), 100, 200), Arrays.copyOfRange(r.getValue(), 100, 300));
+            }
+        }
+
+        db.close();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        while (!db.isPageCacheWarmupComplete()) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(db.getPageCacheWarmupBytes(), hot.size() * 200);
+    }
+
+    @Test
+    public void testHotReadsAreStoredWhileOpen() throws HaloDBException, InterruptedException, IOException {
+        String directory = TestUtils.getTestDirectory("PageCacheWarmupTest", "testHotReadsAreStoredWhileOpen");
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setCompactionDisabled(true);
+        options.setHotReadLogSize(1000);
+        options.setHotReadLogStoreIntervalMillis(100);
+        HaloDB db = getTestDB(directory, options);
+        DBDirectory dbDirectory = DBDirectory.open(new File(directory));
+
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 200, 1024);
+        List<Record> hot = new ArrayList<>();
+        for (int i = 0; i < records.size(); i += 10) {
+            hot.add(records.get(i));
+        }
+        int hotBytes = 0;
+        for (Record r : hot) {
+            for (int i = 0; i < 200; i++) {
+                Assert.assertEquals(db.get(r.getKey()), r.getValue());
+            }
+            hotBytes += r.getValue().length;
+        }
+
+        // stored by the background thread without closing the db.
+        while (HotReadLog.loadFromFile(dbDirectory).size() != hot.size()) {
+            Thread.sleep(10);
+        }
+        Path file = new File(directory).toPath().resolve(HotReadLog.HOT_READS_FILE_NAME);
+        byte[] storedWhileOpen = Files.readAllBytes(file);
+
+        // the db crashed, what was stored on close is lost.
+        db.close();
+        Files.write(file, storedWhileOpen);
+        DBMetaData dbMetaData = new DBMetaData(dbDirectory);
+        dbMetaData.setOpen(true);
+        dbMetaData.storeToFile();
+        dbDirectory.close();
+
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        while (!db.isPageCacheWarmupComplete()) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(db.getPageCacheWarmupBytes(), hotBytes);
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidHotReadLogStoreInterval() {
+        new HaloDBOptions().setHotReadLogStoreIntervalMillis(-1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidWarmupRate() {
+        new HaloDBOptions().setPageCacheWarmupRate(0);
+    }
+}
@@ -82,4 +82,33 @@ public class RecordTest {
         Assert.assertEquals(ByteBuffer.wrap(key), buffers[1]);
         Assert.assertEquals(ByteBuffer.wrap(value), buffers[2]);
     }
+
+    @Test
+    public void testSerializeIntoBuffer() {
+        byte[] key = TestUtils.generateRandomByteArray(20);
+        byte[] value = TestUtils.generateRandomByteArray(200);
+        Record record = new Record(key, value);
+        record.setSequenceNumber(192);
+        record.setVersion(5);
+
+        ByteBuffer expected = ByteBuffer.allocate(record.getRecordSize());
+        for (ByteBuffer b : record.serialize()) {
+            expected.put(b);
+        }
+        expected.flip();
+
+        // serialize at a non-zero position of a direct buffer.
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        buffer.position(7);
+        record.serialize(buffer);
+        Assert.assertEquals(buffer.position(), 7 + record.getRecordSize());
+
+        buffer.flip().position(7);
+        Assert.assertEquals(buffer, expected);
+
+        Record.Header header = Record.Header.deserialize(expected);
+        Record deserialized = new Record(key, value);
+        deserialized.setHeader(header);
+        Assert.assertTrue(deserialized.verifyChecksum());
+    }
 }
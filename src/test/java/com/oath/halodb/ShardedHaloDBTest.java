@@ -0,0 +1,185 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+public class ShardedHaloDBTest {
+
+    private ShardedHaloDB db;
+    private File directory;
+
+    @AfterMethod(alwaysRun = true)
+    public void closeDB() throws HaloDBException, IOException {
+        if (db != null) {
+            db.close();
+            db = null;
+        }
+        if (directory != null) {
+            TestUtils.deleteDirectory(directory);
+            directory = null;
+        }
+    }
+
+    @Test
+    public void testPutGetAndDeleteAcrossShards() throws HaloDBException, IOException {
+        HaloDBOptions options = new HaloDBOptions();
+        options.setCompactionDisabled(true);
+        db = openTestDB("testPutGetAndDeleteAcrossShards", options, 4);
+
+        List<Record> records = TestUtils.generateRandomData(2000);
+        for (Record r : records) {
+            db.put(r.getKey(), r.getValue());
+        }
+        for (int i = 0; i < records.size(); i += 2) {
+            db.delete(records.get(i).getKey());
+        }
+        verify(records);
+
+        // keys are spread over all shards.
+        for (int i = 0; i < db.getNumberOfShards(); i++) {
+            Assert.assertTrue(db.getShard(i).size() > 0);
+        }
+
+        db.close();
+        db = ShardedHaloDB.open(directory, options, 4);
+        verify(records);
+    }
+
+    @Test
+    public void testMultiGetAcrossShards() throws HaloDBException, IOException {
+        db = openTestDB("testMultiGetAcrossShards", new HaloDBOptions(), 4);
+
+        List<Record> records = TestUtils.generateRandomData(500);
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            if (i % 2 == 1) {
+                db.put(records.get(i).getKey(), records.get(i).getValue());
+            }
+            keys.add(records.get(i).getKey());
+        }
+
+        List<byte[]> values = db.multiGet(keys);
+        for (int i = 0; i < records.size(); i++) {
+            Assert.assertEquals(values.get(i), i % 2 == 1 ? records.get(i).getValue() : null);
+        }
+    }
+
+    @Test
+    public void testContainsAcrossShards() throws HaloDBException, IOException {
+        db = openTestDB("testContainsAcrossShards", new HaloDBOptions(), 4);
+
+        List<Record> records = TestUtils.generateRandomData(500);
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> present = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            if (i % 2 == 1) {
+                db.put(records.get(i).getKey(), records.get(i).getValue());
+                present.add(records.get(i).getKey());
+            }
+            keys.add(records.get(i).getKey());
+        }
+
+        for (int i = 0; i < records.size(); i++) {
+            Assert.assertEquals(db.contains(keys.get(i)), i % 2 == 1);
+        }
+        Assert.assertEquals(db.filterExisting(keys), present);
+        Assert.assertTrue(db.containsAll(present));
+        Assert.assertFalse(db.containsAll(keys));
+    }
+
+    @Test
+    public void testNumberOfShardsCannotBeChanged() throws HaloDBException, IOException {
+        db = openTestDB("testNumberOfShardsCannotBeChanged", new HaloDBOptions(), 2);
+        db.close();
+        db = null;
+
+        try {
+            ShardedHaloDB.open(directory, new HaloDBOptions(), 3);
+            Assert.fail("Opening with a different number of shards should fail");
+        } catch (IllegalArgumentException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testIteratorCoversAllShards() throws HaloDBException, IOException {
+        HaloDBOptions options = new HaloDBOptions();
+        options.setCompactionDisabled(true);
+        db = openTestDB("testIteratorCoversAllShards", options, 3);
+
+        List<Record> records = TestUtils.generateRandomData(1000);
+        Set<ByteBuffer> keys = new HashSet<>();
+        for (Record r : records) {
+            db.put(r.getKey(), r.getValue());
+            keys.add(ByteBuffer.wrap(r.getKey()));
+        }
+
+        Iterator<Record> iterator = db.newIterator();
+        int count = 0;
+        while (iterator.hasNext()) {
+            Assert.assertTrue(keys.contains(ByteBuffer.wrap(iterator.next().getKey())));
+            count++;
+        }
+        Assert.assertEquals(count, records.size());
+        Assert.assertEquals(db.newIterators().size(), 3);
+    }
+
+    @Test
+    public void testStatsAndSnapshotOfAllShards() throws HaloDBException, IOException {
+        db = openTestDB("testStatsAndSnapshotOfAllShards", new HaloDBOptions(), 4);
+        List<Record> records = TestUtils.generateRandomData(500);
+        for (Record r : records) {
+            db.put(r.getKey(), r.getValue());
+        }
+
+        List<HaloDBStats> stats = db.stats();
+        Assert.assertEquals(stats.size(), 4);
+        Assert.assertEquals(stats.stream().mapToLong(HaloDBStats::getSize).sum(), records.size());
+
+        Assert.assertTrue(db.snapshot());
+        for (int i = 0; i < 4; i++) {
+            File snapshot = db.getShard(i).getSnapshotDirectory();
+            Assert.assertTrue(snapshot.exists());
+            Assert.assertTrue(snapshot.getParentFile().getName().startsWith(ShardedHaloDB.SHARD_DIRECTORY_PREFIX));
+        }
+        Assert.assertTrue(db.clearSnapshot());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidNumberOfShards() throws HaloDBException {
+        ShardedHaloDB.open(TestUtils.getTestDirectory("ShardedHaloDBTest", "testInvalidNumberOfShards"), new HaloDBOptions(), 0);
+    }
+
+    private ShardedHaloDB openTestDB(String name, HaloDBOptions options, int noOfShards) throws HaloDBException, IOException {
+        directory = new File(TestUtils.getTestDirectory("ShardedHaloDBTest", name));
+        TestUtils.deleteDirectory(directory);
+        return ShardedHaloDB.open(directory, options, noOfShards);
+    }
+
+    private void verify(List<Record> records) throws HaloDBException {
+        Assert.assertEquals(db.size(), records.size() / 2);
+        for (int i = 0; i < records.size(); i++) {
+            byte[] actual = db.get(records.get(i).getKey());
+            if (i % 2 == 0) {
+                Assert.assertNull(actual);
+            } else {
+                Assert.assertEquals(actual, records.get(i).getValue());
+            }
+        }
+    }
+}
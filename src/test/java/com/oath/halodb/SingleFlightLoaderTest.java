@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightLoaderTest extends TestBase {
+
+    @Test
+    public void testMissingKeysAreLoadedAndStored() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("SingleFlightLoaderTest", "testMissingKeysAreLoadedAndStored");
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+
+        AtomicInteger loads = new AtomicInteger(0);
+        byte[] key = "key".getBytes();
+        byte[] value = "value".getBytes();
+        ValueLoader loader = k -> {
+            loads.incrementAndGet();
+            return value;
+        };
+
+        Assert.assertEquals(db.getOrLoad(key, loader), value);
+        Assert.assertEquals(db.getOrLoad(key, loader), value);
+        Assert.assertEquals(db.get(key), value);
+        Assert.assertEquals(loads.get(), 1);
+
+        // keys which are present are not loaded.
+        db.put("present".getBytes(), value);
+        Assert.assertEquals(db.getOrLoad("present".getBytes(), loader), value);
+        Assert.assertEquals(loads.get(), 1);
+    }
+
+    @Test
+    public void testConcurrentLoadsOfKeyAreDeduplicated() throws Exception {
+        String directory = TestUtils.getTestDirectory("SingleFlightLoaderTest", "testConcurrentLoadsOfKeyAreDeduplicated");
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+
+        AtomicInteger loads = new AtomicInteger(0);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        byte[] key = "key".getBytes();
+        byte[] value = TestUtils.generateRandomByteArray(100);
+        ValueLoader loader = k -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return value;
+        };
+
+        int noOfThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < noOfThreads; i++) {
+                results.add(executor.submit(() -> db.getOrLoad(key.clone(), loader)));
+            }
+            loading.await();
+            // give the other threads time to find the load in progress.
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<byte[]> result : results) {
+                Assert.assertEquals(result.get(), value);
+            }
+            Assert.assertEquals(loads.get(), 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLoaderFailureIsRethrown() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("SingleFlightLoaderTest", "testLoaderFailureIsRethrown");
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+
+        IOException failure = new IOException("backend is down");
+        try {
+            db.getOrLoad("key".getBytes(), k -> {
+                throw failure;
+            });
+            Assert.fail("Loader failure was not rethrown");
+        } catch (HaloDBException e) {
+            Assert.assertSame(e.getCause(), failure);
+        }
+
+        // failures are not remembered.
+        Assert.assertEquals(db.getOrLoad("key".getBytes(), k -> "value".getBytes()), "value".getBytes());
+    }
+
+    @Test
+    public void testMissingKeysAreRemembered() throws HaloDBException, InterruptedException {
+        String directory = TestUtils.getTestDirectory("SingleFlightLoaderTest", "testMissingKeysAreRemembered");
+        HaloDBOptions options = new HaloDBOptions();
+        options.setLoaderMissingKeyExpiryMillis(200);
+        HaloDB db = getTestDB(directory, options);
+
+        AtomicInteger loads = new AtomicInteger(0);
+        ValueLoader loader = k -> {
+            loads.incrementAndGet();
+            return null;
+        };
+
+        byte[] key = "key".getBytes();
+        Assert.assertNull(db.getOrLoad(key, loader));
+        Assert.assertNull(db.getOrLoad(key, loader));
+        Assert.assertNull(db.get(key));
+        Assert.assertEquals(loads.get(), 1);
+
+        Thread.sleep(300);
+        Assert.assertNull(db.getOrLoad(key, loader));
+        Assert.assertEquals(loads.get(), 2);
+
+        // a put is seen before the remembered miss.
+        db.put(key, "value".getBytes());
+        Assert.assertEquals(db.getOrLoad(key, loader), "value".getBytes());
+        Assert.assertEquals(loads.get(), 2);
+    }
+
+    @Test
+    public void testMissingKeysAreNotRememberedByDefault() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("SingleFlightLoaderTest", "testMissingKeysAreNotRememberedByDefault");
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+
+        AtomicInteger loads = new AtomicInteger(0);
+        ValueLoader loader = k -> {
+            loads.incrementAndGet();
+            return null;
+        };
+
+        Assert.assertNull(db.getOrLoad("key".getBytes(), loader));
+        Assert.assertNull(db.getOrLoad("key".getBytes(), loader));
+        Assert.assertEquals(loads.get(), 2);
+    }
+
+    @Test
+    public void testPutDuringLoadIsNotOverwritten() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("SingleFlightLoaderTest", "testPutDuringLoadIsNotOverwritten");
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+
+        byte[] key = "key".getBytes();
+        byte[] loaded = db.getOrLoad(key, k -> {
+            db.put(k, "put".getBytes());
+            return "loaded".getBytes();
+        });
+        // the stored value is returned, not the loaded one.
+        Assert.assertEquals(loaded, "put".getBytes());
+        Assert.assertEquals(db.get(key), "put".getBytes());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidMissingKeyExpiry() {
+        new HaloDBOptions().setLoaderMissingKeyExpiryMillis(-1);
+    }
+}
@@ -7,6 +7,7 @@ package com.oath.halodb;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.testng.Assert;
 
 import java.io.File;
 import java.io.IOException;
@@ -26,8 +27,13 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
 public class TestUtils {
     private static final Logger logger = LoggerFactory.getLogger(TestUtils.class);
 
@@ -97,6 +103,54 @@ public class TestUtils {
 
     }
 
+    /**
+     * Inserts records with keys of the given size, such as the fixed key size of the memory pool.
+     */
+    static List<Record> insertRecordsWithKeySize(HaloDB db, int noOfRecords, int keySize, int valueSize) throws HaloDBException {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < noOfRecords; i++) {
+            byte[] key = generateRandomByteArray(keySize);
+            byte[] value = generateRandomByteArray(valueSize);
+            db.put(key, value);
+            records.add(new Record(key, value));
+        }
+        return records;
+    }
+
+    /**
+     * Inserts records with 8 byte keys, deletes a fifth of them and returns the remaining ones.
+     */
+    static List<Record> insertAndDeleteRecords(HaloDB db, int noOfRecords, int valueSize) throws HaloDBException {
+        List<Record> records = insertRecordsWithKeySize(db, noOfRecords, 8, valueSize);
+        deleteRecords(db, records.subList(0, noOfRecords / 5));
+        return new ArrayList<>(records.subList(noOfRecords / 5, records.size()));
+    }
+
+    /**
+     * Asserts that the db holds exactly the given records.
+     */
+    static void verifyRecords(HaloDB db, List<Record> records) throws HaloDBException {
+        Assert.assertEquals(db.size(), records.size());
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+    }
+
+    /**
+     * Counts the scans of index files from now on, which rebuilding the index does.
+     */
+    static AtomicInteger countIndexFileScans() {
+        AtomicInteger scans = new AtomicInteger(0);
+        new MockUp<IndexFile>() {
+            @Mock
+            IndexFile.IndexFileIterator newIterator(Invocation invocation) throws IOException {
+                scans.incrementAndGet();
+                return invocation.proceed();
+            }
+        };
+        return scans;
+    }
+
     static List<Record> updateRecords(HaloDB db, List<Record> records) {
         List<Record> updated = new ArrayList<>();
 
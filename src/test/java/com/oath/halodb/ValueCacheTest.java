@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+public class ValueCacheTest extends TestBase {
+
+    @Test
+    public void testGetAndPut() {
+        ValueCache cache = new ValueCache(1024 * 1024);
+        try {
+            byte[] value = TestUtils.generateRandomByteArray(100);
+            Assert.assertNull(cache.get(1, 10));
+            cache.put(1, 10, value);
+            Assert.assertEquals(cache.get(1, 10), value);
+            // same offset in another file.
+            Assert.assertNull(cache.get(2, 10));
+
+            Assert.assertEquals(cache.getHitCount(), 1);
+            Assert.assertEquals(cache.getMissCount(), 2);
+            // the value, its allocation overhead and the table of the segment.
+            Assert.assertTrue(cache.getSize() > 100 && cache.getSize() < 1024);
+
+            cache.resetStats();
+            Assert.assertEquals(cache.getHitCount(), 0);
+            Assert.assertEquals(cache.getMissCount(), 0);
+        } finally {
+            cache.close();
+        }
+        Assert.assertEquals(cache.getSize(), 0);
+        cache.put(1, 10, new byte[10]);
+        Assert.assertNull(cache.get(1, 10));
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        long capacity = 64 * 1024;
+        ValueCache cache = new ValueCache(capacity);
+        try {
+            for (int i = 0; i < 10_000; i++) {
+                cache.put(1, i * 100, TestUtils.generateRandomByteArray(100));
+                Assert.assertTrue(cache.getSize() <= capacity);
+            }
+            Assert.assertTrue(cache.getEvictionCount() > 0);
+
+            // larger than the capacity of a segment.
+            cache.put(2, 0, new byte[(int) capacity]);
+            Assert.assertNull(cache.get(2, 0));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testEntryOverheadCountsAgainstCapacity() {
+        int noOfSegments = (int) Utils.roundUpToPowerOf2(Runtime.getRuntime().availableProcessors() * 2);
+        long capacity = noOfSegments * 4096L;
+        ValueCache cache = new ValueCache(capacity);
+        try {
+            int noOfValues = 100_000;
+            for (int i = 0; i < noOfValues; i++) {
+                cache.put(1, i, new byte[] {(byte) i});
+                Assert.assertTrue(cache.getSize() <= capacity);
+            }
+
+            // values surviving the evictions are still found, with the right contents.
+            int cached = 0;
+            for (int i = 0; i < noOfValues; i++) {
+                byte[] value = cache.get(1, i);
+                if (value != null) {
+                    Assert.assertEquals(value, new byte[] {(byte) i});
+                    cached++;
+                }
+            }
+            Assert.assertTrue(cached > 0);
+            // each one byte value takes up at least a slot in the table.
+            Assert.assertTrue(cached < capacity / 24);
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testReferencedValuesAreNotEvictedFirst() {
+        // ten values fit in each segment.
+        int noOfSegments = (int) Utils.roundUpToPowerOf2(Runtime.getRuntime().availableProcessors() * 2);
+        ValueCache cache = new ValueCache(noOfSegments * 10 * 1024L);
+        try {
+            int hot = 2;
+            for (int i = 0; i < hot; i++) {
+                cache.put(0, i, new byte[1024]);
+            }
+            for (int i = 0; i < 10_000; i++) {
+                for (int j = 0; j < hot; j++) {
+                    Assert.assertNotNull(cache.get(0, j));
+                }
+                // values read only once.
+                cache.put(1, i, new byte[1024]);
+            }
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testValuesAreServedFromCache() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("ValueCacheTest", "testValuesAreServedFromCache");
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(10 * 1024);
+        options.setCompactionThresholdPerFile(0.5);
+        options.setValueCacheSize(1024 * 1024);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 100, 512);
+        for (int i = 0; i < 2; i++) {
+            for (Record r : records) {
+                Assert.assertEquals(db.get(r.getKey()), r.getValue());
+            }
+        }
+        HaloDBStats stats = db.stats();
+        Assert.assertEquals(stats.getValueCacheMissCount(), records.size());
+        Assert.assertEquals(stats.getValueCacheHitCount(), records.size());
+        Assert.assertTrue(stats.getValueCacheSize() > 0);
+
+        // records are moved by compaction, the new locations are read from the files again.
+        List<Record> updated = TestUtils.updateRecordsWithSize(db, records.subList(0, 50), 512);
+        TestUtils.waitForCompactionToComplete(db);
+        for (Record r : updated) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+        for (Record r : records.subList(50, records.size())) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+
+        db.resetStats();
+        Assert.assertEquals(db.stats().getValueCacheHitCount(), 0);
+        Assert.assertEquals(db.stats().getValueCacheMissCount(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeCacheSize() {
+        new HaloDBOptions().setValueCacheSize(-1);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
+public class ValueRangeTest extends TestBase {
+
+    @Test
+    public void testGetRange() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("ValueRangeTest", "testGetRange");
+
+        AtomicLong bytesRead = new AtomicLong(0);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            int readFromFile(Invocation invocation, long position, ByteBuffer destinationBuffer) throws IOException {
+                int read = invocation.proceed();
+                bytesRead.addAndGet(read);
+                return read;
+            }
+        };
+
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 10, 100 * 1024);
+
+        bytesRead.set(0);
+        for (Record r : records) {
+            byte[] value = r.getValue();
+            Assert.assertEquals(db.getRange(r.getKey(), 0, 64), Arrays.copyOfRange(value, 0, 64));
+            Assert.assertEquals(db.getRange(r.getKey(), 1000, 64), Arrays.copyOfRange(value, 1000, 1064));
+            // ranges are cut at the end of the value.
+            Assert.assertEquals(db.getRange(r.getKey(), value.length - 10, 64), Arrays.copyOfRange(value, value.length - 10, value.length));
+            Assert.assertEquals(db.getRange(r.getKey(), value.length, 64), new byte[0]);
+            Assert.assertEquals(db.getRange(r.getKey(), 0, value.length), value);
+            Assert.assertEquals(db.getRange(r.getKey(), 0, 0), new byte[0]);
+        }
+        long expected = 0;
+        for (Record r : records) {
+            expected += 64 + 64 + 10 + r.getValue().length;
+        }
+        Assert.assertEquals(bytesRead.get(), expected);
+
+        Assert.assertNull(db.getRange(TestUtils.generateRandomByteArray(20), 0, 64));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeOffset() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("ValueRangeTest", "testNegativeOffset");
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+        db.put("key".getBytes(), "value".getBytes());
+        db.getRange("key".getBytes(), -1, 2);
+    }
+
+    @Test
+    public void testValueChannel() throws HaloDBException, IOException {
+        String directory = TestUtils.getTestDirectory("ValueRangeTest", "testValueChannel");
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 10, 100 * 1024);
+        for (Record r : records) {
+            ReadableByteChannel channel = db.newValueChannel(r.getKey());
+            Assert.assertEquals(readFully(channel, 1000), r.getValue());
+            Assert.assertEquals(channel.read(ByteBuffer.allocate(10)), -1);
+            channel.close();
+            Assert.assertFalse(channel.isOpen());
+            try {
+                channel.read(ByteBuffer.allocate(10));
+                Assert.fail("Read from closed channel");
+            } catch (ClosedChannelException e) {
+                // expected.
+            }
+            // closing again doesn't release the file twice.
+            channel.close();
+        }
+
+        Assert.assertNull(db.newValueChannel(TestUtils.generateRandomByteArray(20)));
+    }
+
+    @Test
+    public void testValueChannelPinsFile() throws HaloDBException, IOException {
+        String directory = TestUtils.getTestDirectory("ValueRangeTest", "testValueChannelPinsFile");
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setMaxFileSize(10 * 1024);
+        options.setCompactionThresholdPerFile(0.1);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecordsOfSize(db, 50, 1024);
+        Record record = records.get(0);
+        ReadableByteChannel channel = db.newValueChannel(record.getKey());
+        // the record is in the first data file.
+        File dataFile = Arrays.stream(FileUtils.listDataFiles(new File(directory)))
+            .min(Comparator.comparingInt(HaloDBFile::getFileTimeStamp)).get();
+
+        // the file is compacted but deleted only once the channel is closed.
+        List<Record> updated = TestUtils.updateRecordsWithSize(db, records, 1024);
+        TestUtils.waitForCompactionToComplete(db);
+        Assert.assertTrue(db.stats().getSizeOfFilesDeleted() > 0);
+        Assert.assertTrue(dataFile.exists());
+
+        Assert.assertEquals(readFully(channel, 100), record.getValue());
+        Assert.assertEquals(db.get(record.getKey()), updated.get(0).getValue());
+        channel.close();
+        Assert.assertFalse(dataFile.exists());
+    }
+
+    private byte[] readFully(ReadableByteChannel channel, int bufferSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            out.write(buffer.array(), 0, buffer.limit());
+            buffer.clear();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import com.google.common.primitives.Longs;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
+public class WriteBatchTest extends TestBase {
+
+    @Test(dataProvider = "Options")
+    public void testPutsAndDeletes(HaloDBOptions options) throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("WriteBatchTest", "testPutsAndDeletes");
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.generateRandomData(1000);
+        WriteBatch batch = new WriteBatch();
+        records.forEach(r -> batch.put(r.getKey(), r.getValue()));
+        db.write(batch);
+
+        Assert.assertEquals(db.size(), records.size());
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+
+        batch.clear();
+        Assert.assertTrue(batch.isEmpty());
+        for (int i = 0; i < records.size(); i++) {
+            if (i % 2 == 0) {
+                batch.delete(records.get(i).getKey());
+            }
+        }
+        db.write(batch);
+
+        Assert.assertEquals(db.size(), records.size() / 2);
+        for (int i = 0; i < records.size(); i++) {
+            byte[] actual = db.get(records.get(i).getKey());
+            if (i % 2 == 0) {
+                Assert.assertNull(actual);
+            } else {
+                Assert.assertEquals(actual, records.get(i).getValue());
+            }
+        }
+    }
+
+    @Test(dataProvider = "Options")
+    public void testOperationsOnSameKeyAreAppliedInOrder(HaloDBOptions options) throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("WriteBatchTest", "testOperationsOnSameKeyAreAppliedInOrder");
+        options.setCompactionDisabled(true);
+        HaloDB db = getTestDB(directory, options);
+
+        byte[] k1 = Longs.toByteArray(1), k2 = Longs.toByteArray(2), k3 = Longs.toByteArray(3);
+
+        WriteBatch batch = new WriteBatch();
+        batch.put(k1, Longs.toByteArray(10));
+        batch.put(k1, Longs.toByteArray(11));
+        batch.put(k2, Longs.toByteArray(20));
+        batch.delete(k2);
+        batch.delete(k3);
+        batch.put(k3, Longs.toByteArray(30));
+        Assert.assertEquals(batch.size(), 6);
+        db.write(batch);
+
+        Assert.assertEquals(db.get(k1), Longs.toByteArray(11));
+        Assert.assertNull(db.get(k2));
+        Assert.assertEquals(db.get(k3), Longs.toByteArray(30));
+        Assert.assertEquals(db.size(), 2);
+
+        // make sure the same state is recovered from the files.
+        db.close();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(db.get(k1), Longs.toByteArray(11));
+        Assert.assertNull(db.get(k2));
+        Assert.assertEquals(db.get(k3), Longs.toByteArray(30));
+        Assert.assertEquals(db.size(), 2);
+    }
+
+    @Test
+    public void testBatchSpanningMultipleFiles() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("WriteBatchTest", "testBatchSpanningMultipleFiles");
+        HaloDBOptions options = new HaloDBOptions();
+        options.setCompactionDisabled(true);
+        options.setMaxFileSize(10 * 1024);
+        options.setMaxTombstoneFileSize(1024);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.generateRandomData(500);
+        WriteBatch batch = new WriteBatch();
+        records.forEach(r -> batch.put(r.getKey(), r.getValue()));
+        db.write(batch);
+
+        batch.clear();
+        records.subList(0, 250).forEach(r -> batch.delete(r.getKey()));
+        db.write(batch);
+
+        Assert.assertTrue(TestUtils.getDataFiles(directory).size() > 1);
+        Assert.assertTrue(dbDirectory.listTombstoneFiles().length > 1);
+
+        db.close();
+        db = getTestDBWithoutDeletingFiles(directory, options);
+        Assert.assertEquals(db.size(), 250);
+        for (int i = 0; i < records.size(); i++) {
+            byte[] actual = db.get(records.get(i).getKey());
+            if (i < 250) {
+                Assert.assertNull(actual);
+            } else {
+                Assert.assertEquals(actual, records.get(i).getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testSyncWritesFlushOncePerBatch() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("WriteBatchTest", "testSyncWritesFlushOncePerBatch");
+
+        AtomicInteger dataFileCount = new AtomicInteger(0);
+        AtomicInteger tombstoneFileCount = new AtomicInteger(0);
+
+        new MockUp<HaloDBFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                dataFileCount.incrementAndGet();
+            }
+        };
+
+        new MockUp<TombstoneFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                tombstoneFileCount.incrementAndGet();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.enableSyncWrites(true);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.generateRandomData(100);
+        WriteBatch batch = new WriteBatch();
+        records.forEach(r -> batch.put(r.getKey(), r.getValue()));
+        db.write(batch);
+
+        batch.clear();
+        records.forEach(r -> batch.delete(r.getKey()));
+        db.write(batch);
+
+        Assert.assertEquals(dataFileCount.get(), 1);
+        Assert.assertEquals(tombstoneFileCount.get(), 1);
+        Assert.assertEquals(db.size(), 0);
+    }
+
+    @Test(expectedExceptions = HaloDBException.class)
+    public void testBatchWithLargeKeyIsRejected() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("WriteBatchTest", "testBatchWithLargeKeyIsRejected");
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+
+        WriteBatch batch = new WriteBatch();
+        batch.put(Longs.toByteArray(1), Longs.toByteArray(1));
+        batch.put(new byte[Byte.MAX_VALUE + 1], Longs.toByteArray(2));
+        try {
+            db.write(batch);
+        } finally {
+            // none of the operations should have been applied.
+            Assert.assertEquals(db.size(), 0);
+        }
+    }
+}
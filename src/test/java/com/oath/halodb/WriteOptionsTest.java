@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import com.google.common.primitives.Longs;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+
+public class WriteOptionsTest extends TestBase {
+
+    @Test
+    public void testFsyncedWritesAreFlushed() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("WriteOptionsTest", "testFsyncedWritesAreFlushed");
+
+        AtomicInteger dataFileCount = new AtomicInteger(0);
+        AtomicInteger tombstoneFileCount = new AtomicInteger(0);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                dataFileCount.incrementAndGet();
+            }
+        };
+        new MockUp<TombstoneFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                tombstoneFileCount.incrementAndGet();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setFlushDataSizeBytes(-1);
+        HaloDB db = getTestDB(directory, options);
+
+        WriteOptions fsynced = new WriteOptions(Durability.FSYNCED);
+        List<Record> records = TestUtils.generateRandomData(20);
+        for (int i = 0; i < records.size(); i++) {
+            Record r = records.get(i);
+            // only every other write is fsynced.
+            db.put(r.getKey(), r.getValue(), i % 2 == 0 ? fsynced : WriteOptions.DEFAULT);
+        }
+        for (int i = 0; i < records.size(); i++) {
+            db.delete(records.get(i).getKey(), i % 2 == 0 ? fsynced : WriteOptions.DEFAULT);
+        }
+
+        Assert.assertEquals(dataFileCount.get(), records.size() / 2);
+        Assert.assertEquals(tombstoneFileCount.get(), records.size() / 2);
+        Assert.assertEquals(db.size(), 0);
+    }
+
+    @Test
+    public void testSyncWritesOverrideWriteOptions() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("WriteOptionsTest", "testSyncWritesOverrideWriteOptions");
+
+        AtomicInteger dataFileCount = new AtomicInteger(0);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                dataFileCount.incrementAndGet();
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.enableSyncWrites(true);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.generateRandomData(10);
+        for (Record r : records) {
+            db.put(r.getKey(), r.getValue(), new WriteOptions(Durability.WRITTEN));
+        }
+
+        Assert.assertEquals(dataFileCount.get(), records.size());
+    }
+
+    @Test
+    public void testConcurrentFsyncsAreMerged() throws Exception {
+        String directory = TestUtils.getTestDirectory("WriteOptionsTest", "testConcurrentFsyncsAreMerged");
+
+        AtomicInteger dataFileCount = new AtomicInteger(0);
+        new MockUp<HaloDBFile>() {
+            @Mock
+            public void flushToDisk(Invocation invocation) throws IOException {
+                dataFileCount.incrementAndGet();
+                try {
+                    // a slow fsync, writers arriving in the meantime should share the next one.
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+
+        HaloDBOptions options = new HaloDBOptions();
+        options.setFlushDataSizeBytes(-1);
+        options.setCompactionDisabled(true);
+        final HaloDB db = getTestDB(directory, options);
+
+        WriteOptions fsynced = new WriteOptions(Durability.FSYNCED);
+        int noOfThreads = 8, recordsPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < noOfThreads; t++) {
+            final int threadId = t;
+            results.add(executor.submit(() -> {
+                for (int i = 0; i < recordsPerThread; i++) {
+                    long key = (long)threadId * recordsPerThread + i;
+                    db.put(Longs.toByteArray(key), Longs.toByteArray(key), fsynced);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        int noOfRecords = noOfThreads * recordsPerThread;
+        Assert.assertTrue(dataFileCount.get() < noOfRecords, "Expected fewer than " + noOfRecords + " flushes but got " + dataFileCount.get());
+        Assert.assertEquals(db.size(), noOfRecords);
+        for (long key = 0; key < noOfRecords; key++) {
+            Assert.assertEquals(db.get(Longs.toByteArray(key)), Longs.toByteArray(key));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNullDurability() {
+        new WriteOptions(null);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class WritesInProgressTest {
+
+    @Test
+    public void testAwaitWaitsForWritesWhichBeganBefore() throws InterruptedException {
+        WritesInProgress writes = new WritesInProgress();
+        writes.await();
+
+        int first = writes.begin();
+        Thread syncer = new Thread(writes::await);
+        syncer.start();
+
+        // once the epoch has been switched new writes are counted in the other one.
+        int second;
+        while ((second = writes.begin()) == first) {
+            writes.end(second);
+            Thread.sleep(1);
+        }
+        Thread.sleep(100);
+        Assert.assertTrue(syncer.isAlive());
+
+        // the write which began after the sync is not waited for.
+        writes.end(first);
+        syncer.join(10_000);
+        Assert.assertFalse(syncer.isAlive());
+
+        writes.end(second);
+        writes.await();
+    }
+}
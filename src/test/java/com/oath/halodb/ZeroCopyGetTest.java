@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018, Oath Inc
+ * Licensed under the terms of the Apache License 2.0. Please refer to accompanying LICENSE file for terms.
+ */
+
+package com.oath.halodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ZeroCopyGetTest extends TestBase {
+
+    @Test
+    public void testGetIntoBuffer() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("ZeroCopyGetTest", "testGetIntoBuffer");
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+
+        List<Record> records = TestUtils.insertRandomRecords(db, 500);
+        ByteBuffer heap = ByteBuffer.allocate(1024);
+        ByteBuffer direct = ByteBuffer.allocateDirect(1024);
+        for (Record r : records) {
+            Assert.assertEquals(db.get(r.getKey(), heap), r.getValue().length);
+            Assert.assertEquals(heap, ByteBuffer.wrap(r.getValue()));
+            Assert.assertEquals(db.get(r.getKey(), direct), r.getValue().length);
+            Assert.assertEquals(direct, ByteBuffer.wrap(r.getValue()));
+            Assert.assertEquals(db.valueSize(r.getKey()), r.getValue().length);
+        }
+
+        byte[] missing = TestUtils.generateRandomByteArray(200);
+        Assert.assertEquals(db.get(missing, heap), -1);
+        Assert.assertEquals(db.valueSize(missing), -1);
+
+        // value doesn't fit, buffer is not modified.
+        Record r = records.get(0);
+        ByteBuffer small = ByteBuffer.allocate(r.getValue().length - 1);
+        small.position(1);
+        Assert.assertEquals(db.get(r.getKey(), small), r.getValue().length);
+        Assert.assertEquals(small.position(), 1);
+        Assert.assertEquals(small.limit(), small.capacity());
+    }
+
+    @Test
+    public void testGetWithConsumer() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("ZeroCopyGetTest", "testGetWithConsumer");
+        HaloDB db = getTestDB(directory, new HaloDBOptions());
+
+        byte[] small = TestUtils.generateRandomByteArray(100);
+        // larger than the initial and than the largest pooled buffer.
+        byte[] medium = TestUtils.generateRandomByteArray(64 * 1024);
+        byte[] large = TestUtils.generateRandomByteArray(2 * 1024 * 1024);
+        db.put("small".getBytes(), small);
+        db.put("medium".getBytes(), medium);
+        db.put("large".getBytes(), large);
+
+        for (int i = 0; i < 2; i++) {
+            assertConsumedValue(db, "small", small);
+            assertConsumedValue(db, "medium", medium);
+            assertConsumedValue(db, "large", large);
+        }
+
+        Assert.assertFalse(db.get("missing".getBytes(), buffer -> Assert.fail("consumer called for missing key")));
+    }
+
+    @Test
+    public void testGetIntoBufferFromValueCache() throws HaloDBException {
+        String directory = TestUtils.getTestDirectory("ZeroCopyGetTest", "testGetIntoBufferFromValueCache");
+        HaloDBOptions options = new HaloDBOptions();
+        options.setValueCacheSize(1024 * 1024);
+        HaloDB db = getTestDB(directory, options);
+
+        List<Record> records = TestUtils.insertRandomRecords(db, 100);
+        ByteBuffer heap = ByteBuffer.allocate(1024);
+        ByteBuffer direct = ByteBuffer.allocateDirect(1024);
+        for (Record r : records) {
+            // first read fills the cache.
+            Assert.assertEquals(db.get(r.getKey(), heap), r.getValue().length);
+            Assert.assertEquals(heap, ByteBuffer.wrap(r.getValue()));
+            Assert.assertEquals(db.get(r.getKey(), direct), r.getValue().length);
+            Assert.assertEquals(direct, ByteBuffer.wrap(r.getValue()));
+            Assert.assertEquals(db.get(r.getKey()), r.getValue());
+        }
+        Assert.assertEquals(db.stats().getValueCacheMissCount(), records.size());
+        Assert.assertEquals(db.stats().getValueCacheHitCount(), 2 * records.size());
+    }
+
+    private void assertConsumedValue(HaloDB db, String key, byte[] expected) throws HaloDBException {
+        AtomicReference<ByteBuffer> consumed = new AtomicReference<>();
+        Assert.assertTrue(db.get(key.getBytes(), buffer -> {
+            byte[] copy = new byte[buffer.remaining()];
+            buffer.get(copy);
+            consumed.set(ByteBuffer.wrap(copy));
+        }));
+        Assert.assertEquals(consumed.get(), ByteBuffer.wrap(expected));
+    }
+}